@@ -1,12 +1,22 @@
 package GamaGTFSUtils;
 
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
 import gama.core.metamodel.shape.GamaPoint;
 import gama.core.metamodel.shape.IShape;
+import gama.core.metamodel.topology.projection.IProjection;
 import gama.core.runtime.IScope;
+import gama.extension.GTFS.GTFSLog;
 import gama.gaml.operators.spatial.SpatialProjections;
 
 public class SpatialUtils {
 
+    private static final String GTFS_CRS = "EPSG:4326";
+    private static final GeometryFactory FACTORY = new GeometryFactory();
+    private static final int CHUNK_SIZE = 8192;              // points transformed per call
+
     /**
      * Converts latitude and longitude to GAMA CRS.
      *
@@ -17,12 +27,60 @@ public class SpatialUtils {
      */
     public static GamaPoint toGamaCRS(IScope scope, double lat, double lon) {
         // Create a GamaPoint for the original location
-        GamaPoint rawLocation = new GamaPoint(lon, lat, 0.0); // Longitude (X), Latitude (Y), Altitude (Z)  
+        GamaPoint rawLocation = new GamaPoint(lon, lat, 0.0); // Longitude (X), Latitude (Y), Altitude (Z)
 
         // Transform the point to the GAMA CRS using "to_GAMA_CRS"
-        IShape transformedShape = SpatialProjections.to_GAMA_CRS(scope, rawLocation, "EPSG:4326");
+        IShape transformedShape = SpatialProjections.to_GAMA_CRS(scope, rawLocation, GTFS_CRS);
 
         // Return the location as a GamaPoint
         return (GamaPoint) transformedShape.getLocation();
     }
-}
\ No newline at end of file
+
+    /**
+     * Converts arrays of latitudes and longitudes to GAMA CRS. The transformation from EPSG:4326 is
+     * resolved once, then applied to chunks of points instead of one to_GAMA_CRS call per point. The
+     * chunks are transformed one after the other: the transformer of the projection keeps a buffer and
+     * is not thread-safe. Without a simulation, falls back to {@link #toGamaCRS(IScope, double, double)}.
+     *
+     * @param scope - The GAMA simulation scope.
+     * @param lats - Latitudes in EPSG:4326.
+     * @param lons - Longitudes in EPSG:4326 (same length).
+     * @return Transformed GamaPoints in the GAMA CRS, in the order of the arrays.
+     */
+    public static GamaPoint[] toGamaCRS(IScope scope, double[] lats, double[] lons) {
+        int count = lats.length;
+        GamaPoint[] points = new GamaPoint[count];
+        IProjection projection = wgs84Projection(scope);
+        if (projection == null) {
+            for (int i = 0; i < count; i++) points[i] = toGamaCRS(scope, lats[i], lons[i]);
+            return points;
+        }
+        for (int from = 0; from < count; from += CHUNK_SIZE) {
+            int to = Math.min(from + CHUNK_SIZE, count);
+            Coordinate[] raw = new Coordinate[to - from];
+            for (int i = from; i < to; i++) raw[i - from] = new Coordinate(lons[i], lats[i], 0.0);
+            Geometry transformed = projection.inverseTransform(FACTORY.createMultiPointFromCoords(raw));
+            Coordinate[] coordinates = transformed.getCoordinates();
+            for (int i = from; i < to; i++) {
+                Coordinate p = coordinates[i - from];
+                points[i] = new GamaPoint(p.x, p.y, 0.0);
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Transformation between EPSG:4326 and the CRS of the simulation (the one used by to_GAMA_CRS).
+     *
+     * @return The projection, or null if there is no simulation or if it cannot be resolved
+     */
+    private static IProjection wgs84Projection(IScope scope) {
+        if (scope == null || scope.getSimulation() == null) return null;
+        try {
+            return scope.getSimulation().getProjectionFactory().forSavingWith(scope, GTFS_CRS);
+        } catch (Exception e) {
+            GTFSLog.warning("[WARNING] Could not resolve the " + GTFS_CRS + " projection, points are projected one by one: " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package gama.extension.GTFS;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+
+/**
+ * Two-path checks of the optimised loading paths of a feed against straightforward ones, run by the
+ * gtfs_check_* operators (see models/GTFS/models/TestCoherence). Each check returns the differences
+ * found, as readable messages: an empty list means both paths agree.
+ * <ul>
+ * <li>{@link #compareReaders}: the memory-mapped byte reader against the streaming reader, field by field;</li>
+ * <li>{@link #compareSnapshot}: a feed against the same feed written to and read back from a snapshot;</li>
+ * <li>{@link #compareCalendar}: the service calendar index against a row by row reading of
+ * calendar.txt and calendar_dates.txt for each date, as done before the index.</li>
+ * </ul>
+ */
+public final class GTFSChecks {
+
+    private static final int MAX_DIFFERENCES = 50;
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private GTFSChecks() {}
+
+    /**
+     * Reads every table of a feed directory with GTFSTableReader and GTFSMappedTableReader and compares the
+     * headers, the number of rows and, for each field, the raw value, the id, the blank test and the int,
+     * decimal and time values (or the failure to parse them). The tables of a zip archive are not
+     * memory-mapped and are not compared.
+     */
+    public static List<String> compareReaders(File feedPath) throws IOException {
+        List<String> differences = new ArrayList<>();
+        try (GTFSSource source = GTFSSource.open(feedPath)) {
+            for (String tableName : new TreeSet<>(source.tableNames())) {
+                File table = source.file(tableName);
+                if (table != null) compareReaders(table, differences);
+            }
+        }
+        return differences;
+    }
+
+    private static void compareReaders(File table, List<String> differences) throws IOException {
+        String name = table.getName();
+        try (GTFSTableReader streaming = new GTFSTableReader(table);
+             GTFSMappedTableReader mapped = new GTFSMappedTableReader(table)) {
+            if (!streaming.getHeader().equals(mapped.getHeader())) {
+                add(differences, name + ": header " + streaming.getHeader() + " <> " + mapped.getHeader());
+                return;
+            }
+            if (streaming.getSeparator() != mapped.getSeparator()) {
+                add(differences, name + ": separator '" + streaming.getSeparator() + "' <> '" + mapped.getSeparator() + "'");
+            }
+            int columns = streaming.getHeader().size();
+            while (true) {
+                boolean hasRow = streaming.next();
+                if (hasRow != mapped.next()) {
+                    add(differences, name + ": " + streaming.getRowCount() + " rows <> " + mapped.getRowCount() + " rows");
+                    return;
+                }
+                if (!hasRow) return;
+                for (int i = 0; i < columns; i++) {
+                    final int column = i;
+                    compare(differences, name, streaming.getRowCount(), column, "value",
+                        () -> streaming.get(column), () -> mapped.get(column));
+                    compare(differences, name, streaming.getRowCount(), column, "id",
+                        () -> streaming.id(column), () -> mapped.id(column));
+                    compare(differences, name, streaming.getRowCount(), column, "blank",
+                        () -> streaming.isBlank(column), () -> mapped.isBlank(column));
+                    compare(differences, name, streaming.getRowCount(), column, "int",
+                        () -> streaming.getInt(column), () -> mapped.getInt(column));
+                    compare(differences, name, streaming.getRowCount(), column, "double",
+                        () -> streaming.getDouble(column), () -> mapped.getDouble(column));
+                    compare(differences, name, streaming.getRowCount(), column, "time",
+                        () -> streaming.getTimeSeconds(column), () -> mapped.getTimeSeconds(column));
+                }
+            }
+        }
+    }
+
+    private static void compare(List<String> differences, String table, long row, int column, String what,
+            Callable<Object> expected, Callable<Object> actual) {
+        String expectedValue = outcome(expected);
+        String actualValue = outcome(actual);
+        if (!expectedValue.equals(actualValue)) {
+            add(differences, table + " row " + row + " column " + column + " (" + what + "): " + expectedValue + " <> " + actualValue);
+        }
+    }
+
+    /** The value, or the type of the exception thrown: both readers must fail on the same fields. */
+    private static String outcome(Callable<Object> value) {
+        try {
+            return "'" + value.call() + "'";
+        } catch (Exception e) {
+            return e.getClass().getSimpleName();
+        }
+    }
+
+    /**
+     * Writes a feed to a snapshot in a temporary directory, reads it back and compares both models: stops,
+     * routes, trips, stop_times, journey patterns and shape points.
+     */
+    public static List<String> compareSnapshot(GTFSFeed feed) throws IOException {
+        List<String> differences = new ArrayList<>();
+        File dir = Files.createTempDirectory("gtfs-check").toFile();
+        File snapshot = new File(dir, "feed.snapshot");
+        try {
+            GTFSSnapshot.write(snapshot, "check", feed);
+            GTFSFeed copy = GTFSSnapshot.read(snapshot, "check");
+            if (copy == null) {
+                add(differences, "snapshot could not be written or read back");
+                return differences;
+            }
+            compareFeeds(feed, copy, differences);
+        } finally {
+            snapshot.delete();
+            dir.delete();
+        }
+        return differences;
+    }
+
+    private static void compareFeeds(GTFSFeed a, GTFSFeed b, List<String> differences) {
+        check(differences, "stops", a.getStopCount(), b.getStopCount());
+        check(differences, "defined stops", a.getDefinedStopCount(), b.getDefinedStopCount());
+        check(differences, "stops.txt rows", a.getStopRowCount(), b.getStopRowCount());
+        check(differences, "routes", a.getRouteCount(), b.getRouteCount());
+        check(differences, "trips", a.getTripCount(), b.getTripCount());
+        check(differences, "stop_times loaded", a.hasStopTimes(), b.hasStopTimes());
+        check(differences, "shapes.txt", a.hasShapesTable(), b.hasShapesTable());
+        check(differences, "shape points loaded", a.hasShapePoints(), b.hasShapePoints());
+        if (!differences.isEmpty()) return;
+
+        for (int s = 0; s < a.getStopCount(); s++) {
+            String stop = "stop " + a.getStopId(s);
+            check(differences, stop + " id", a.getStopId(s), b.getStopId(s));
+            check(differences, stop + " name", a.getStopName(s), b.getStopName(s));
+            check(differences, stop + " lat", a.getStopLat(s), b.getStopLat(s));
+            check(differences, stop + " lon", a.getStopLon(s), b.getStopLon(s));
+        }
+        for (int r = 0; r < a.getRouteCount(); r++) {
+            String route = "route " + a.getRouteIds().get(r);
+            check(differences, route + " id", a.getRouteIds().get(r), b.getRouteIds().get(r));
+            check(differences, route + " type", a.getRouteType(r), b.getRouteType(r));
+            check(differences, route + " short name", a.getRouteShortName(r), b.getRouteShortName(r));
+            check(differences, route + " long name", a.getRouteLongName(r), b.getRouteLongName(r));
+            check(differences, route + " color", a.getRouteColor(r), b.getRouteColor(r));
+        }
+        for (int t = 0; t < a.getTripCount(); t++) {
+            String trip = "trip " + a.getTripId(t);
+            check(differences, trip + " id", a.getTripId(t), b.getTripId(t));
+            check(differences, trip + " route", a.getRouteIds().get(a.getTripRoute(t)), b.getRouteIds().get(b.getTripRoute(t)));
+            check(differences, trip + " service", a.getServiceIds().get(a.getTripService(t)), b.getServiceIds().get(b.getTripService(t)));
+            check(differences, trip + " shape", a.getShapeIds().get(a.getTripShape(t)), b.getShapeIds().get(b.getTripShape(t)));
+            check(differences, trip + " route_type", a.getTripRouteType(t), b.getTripRouteType(t));
+            if (!a.hasStopTimes()) continue;
+            check(differences, trip + " pattern", a.getTripPattern(t), b.getTripPattern(t));
+            check(differences, trip + " stop_times", a.getStopTimeCount(t), b.getStopTimeCount(t));
+            if (a.getStopTimeCount(t) != b.getStopTimeCount(t)) continue;
+            for (int i = 0; i < a.getStopTimeCount(t); i++) {
+                int rowA = a.getStopTimesStart(t) + i;
+                int rowB = b.getStopTimesStart(t) + i;
+                String row = trip + " stop_time " + i;
+                check(differences, row + " stop", a.getStopId(a.getStopTimeStop(rowA)), b.getStopId(b.getStopTimeStop(rowB)));
+                check(differences, row + " departure", a.getStopTimeDeparture(rowA), b.getStopTimeDeparture(rowB));
+                check(differences, row + " arrival", a.getStopTimeArrival(rowA), b.getStopTimeArrival(rowB));
+                check(differences, row + " distance", a.getStopTimeDistance(rowA), b.getStopTimeDistance(rowB));
+                check(differences, row + " sequence", a.getStopTimeSequence(rowA), b.getStopTimeSequence(rowB));
+            }
+        }
+        if (!a.hasShapePoints()) return;
+        check(differences, "shapes", a.getShapeTableCount(), b.getShapeTableCount());
+        check(differences, "shape points", a.getShapeRowCount(), b.getShapeRowCount());
+        for (int sh = 0; sh < Math.min(a.getShapeTableCount(), b.getShapeTableCount()); sh++) {
+            String shape = "shape " + a.getShapeIds().get(a.getShapeTableShape(sh));
+            check(differences, shape + " id", a.getShapeIds().get(a.getShapeTableShape(sh)), b.getShapeIds().get(b.getShapeTableShape(sh)));
+            int count = a.getShapePointsEnd(sh) - a.getShapePointsStart(sh);
+            check(differences, shape + " points", count, b.getShapePointsEnd(sh) - b.getShapePointsStart(sh));
+            if (count != b.getShapePointsEnd(sh) - b.getShapePointsStart(sh)) continue;
+            for (int i = 0; i < count; i++) {
+                int pointA = a.getShapePointsStart(sh) + i;
+                int pointB = b.getShapePointsStart(sh) + i;
+                check(differences, shape + " point " + i + " lat", a.getShapePointLat(pointA), b.getShapePointLat(pointB));
+                check(differences, shape + " point " + i + " lon", a.getShapePointLon(pointA), b.getShapePointLon(pointB));
+            }
+        }
+    }
+
+    private static void check(List<String> differences, String what, Object expected, Object actual) {
+        if (!Objects.equals(expected, actual)) add(differences, what + ": " + expected + " <> " + actual);
+    }
+
+    /**
+     * Compares, for each date from the day before the feed span to the day after it, the trips whose
+     * service runs that day according to the calendar index and according to a row by row reading of
+     * calendar.txt and calendar_dates.txt (each period, then each exception of that date in file order).
+     * The same weekday fallback of the departures is not part of the comparison.
+     */
+    public static List<String> compareCalendar(File feedPath, GTFSFeed feed, GTFSServiceCalendar calendar) throws IOException {
+        List<String> differences = new ArrayList<>();
+        if (calendar.getStartingDate() == null) return differences;
+        List<String[]> periods;
+        List<String[]> exceptions;
+        try (GTFSSource source = GTFSSource.open(feedPath)) {
+            periods = readRows(source, "calendar.txt",
+                "service_id", "start_date", "end_date", "monday", "tuesday", "wednesday", "thursday", "friday", "saturday", "sunday");
+            exceptions = readRows(source, "calendar_dates.txt", "service_id", "date", "exception_type");
+        }
+
+        LocalDate last = calendar.getEndingDate().plusDays(1);
+        for (LocalDate date = calendar.getStartingDate().minusDays(1); !date.isAfter(last); date = date.plusDays(1)) {
+            Set<String> services = activeServices(periods, exceptions, date);
+            Set<String> expected = new HashSet<>();
+            Set<String> actual = new HashSet<>();
+            for (int t = 0; t < feed.getTripCount(); t++) {
+                String serviceId = feed.getServiceIds().get(feed.getTripService(t));
+                if (services.contains(serviceId)) expected.add(feed.getTripId(t));
+                if (calendar.isActive(serviceId, date)) actual.add(feed.getTripId(t));
+            }
+            if (!expected.equals(actual)) {
+                Set<String> missing = new TreeSet<>(expected);
+                missing.removeAll(actual);
+                Set<String> extra = new TreeSet<>(actual);
+                extra.removeAll(expected);
+                add(differences, date + ": trips missing from the index " + missing + ", trips only in the index " + extra);
+            }
+        }
+        return differences;
+    }
+
+    /** Raw rows of a table restricted to the given columns (null for an absent column), none if the table is absent. */
+    private static List<String[]> readRows(GTFSSource source, String tableName, String... columns) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        if (!source.has(tableName)) return rows;
+        try (GTFSTableReader table = new GTFSTableReader(tableName, source.open(tableName))) {
+            Integer[] indexes = new Integer[columns.length];
+            for (int i = 0; i < columns.length; i++) indexes[i] = table.column(columns[i]);
+            while (table.next()) {
+                String[] row = new String[columns.length];
+                for (int i = 0; i < columns.length; i++) row[i] = indexes[i] == null ? null : table.get(indexes[i]);
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private static Set<String> activeServices(List<String[]> periods, List<String[]> exceptions, LocalDate date) {
+        Set<String> services = new HashSet<>();
+        int day = date.getDayOfWeek().getValue();   // 1 = monday, column 3 of the period rows
+        for (String[] period : periods) {
+            try {
+                LocalDate start = LocalDate.parse(period[1], FORMATTER);
+                LocalDate end = LocalDate.parse(period[2], FORMATTER);
+                if ("1".equals(period[2 + day]) && !date.isBefore(start) && !date.isAfter(end)) {
+                    services.add(period[0].trim().replace("\"", ""));
+                }
+            } catch (RuntimeException e) {
+                // Ligne ignorée, comme par l'index
+            }
+        }
+        for (String[] exception : exceptions) {
+            try {
+                if (!LocalDate.parse(exception[1], FORMATTER).equals(date)) continue;
+                int type = Integer.parseInt(exception[2]);
+                String serviceId = exception[0].trim().replace("\"", "");
+                if (type == 1) services.add(serviceId);
+                else if (type == 2) services.remove(serviceId);
+            } catch (RuntimeException e) {
+                // Ligne ignorée, comme par l'index
+            }
+        }
+        return services;
+    }
+
+    private static void add(List<String> differences, String message) {
+        if (differences.size() < MAX_DIFFERENCES) differences.add(message);
+        else if (differences.size() == MAX_DIFFERENCES) differences.add("... (further differences not listed)");
+    }
+}
@@ -0,0 +1,854 @@
+package gama.extension.GTFS;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Columnar, dictionary-encoded in-memory model of a GTFS feed.
+ *
+ * Stop, trip, route, shape and service ids are interned to dense int surrogates (see {@link Dictionary}).
+ * Stop coordinates are kept in double arrays, and stop_times rows are stored as struct-of-arrays grouped
+ * by trip: the rows of trip t are [tripOffset[t], tripOffset[t + 1]), in stop_sequence order. The points of
+ * shapes.txt are grouped by shape the same way; they are optional and can be added after the trips,
+ * when shapes are first requested. TransportStop and TransportTrip are thin views over this store.
+ *
+ * A feed holds no projected coordinate nor date dependent state other than the active trip flags, so it
+ * can be saved as is in a {@link GTFSSnapshot}.
+ */
+public class GTFSFeed {
+
+    /** Value of a missing or unreadable time (departure_time, arrival_time). */
+    public static final int NO_TIME = -1;
+
+    /** Value of a missing reference (shape of a trip, route of a trip...). */
+    public static final int NONE = -1;
+
+    private final Dictionary stopIds;
+    private final Dictionary tripIds;
+    private final Dictionary routeIds;
+    private final Dictionary shapeIds;
+    private final Dictionary serviceIds;
+
+    // Stops (indexed by stop int)
+    private String[] stopNames;
+    private double[] stopLats;
+    private double[] stopLons;
+    private int[] stopOrder;        // stops defined in stops.txt, in file order
+    private int definedStopCount = 0;
+    private long stopRowCount = 0;  // rows read in stops.txt
+
+    // Routes (indexed by route int)
+    private int[] routeTypes = new int[0];
+    private String[] routeShortNames = new String[0];
+    private String[] routeLongNames = new String[0];
+    private String[] routeColors = new String[0];   // route_color (hexadecimal, without '#'), null if missing
+    private int[] routeTripOffsets;                 // route -> trips incidence, built on first use
+    private int[] routeTrips;
+
+    // Trips (indexed by trip int)
+    private int tripCount = 0;
+    private int[] tripRoutes = new int[256];
+    private int[] tripServices = new int[256];
+    private int[] tripShapes = new int[256];
+    private int[] tripRouteTypes = new int[256];
+    private final BitSet activeTrips = new BitSet();
+
+    // Stop times grouped by trip, sorted by stop_sequence inside each trip
+    private int[] tripOffsets = { 0 };
+    private int[] stopTimeStops = new int[0];
+    private int[] stopTimeDepartures = new int[0];
+    private int[] stopTimeArrivals = new int[0];
+    private double[] stopTimeDistances = new double[0];   // shape_dist_traveled, NaN if missing
+    private int[] stopTimeSequences = new int[0];
+    private boolean stopTimesLoaded = false;
+    private int unknownTripRows = 0;
+    private int invalidSequenceRows = 0;
+    private int maxDeparture = NO_TIME;  // computed on first use
+
+    // Journey patterns: trips with the same stop sequence share one pattern (NONE for a trip without stop_times)
+    private int[] tripPatterns = new int[0];
+    private int[] patternOffsets = { 0 };
+    private int[] patternStops = new int[0];
+    private int[] patternTrips = new int[0];   // first trip of each pattern (in trips.txt order)
+
+    // Stop -> trips incidence, in order of first visit in stop_times.txt
+    private int[] stopTripOffsets = { 0 };
+    private int[] stopTrips = new int[0];
+
+    // Points of shapes.txt grouped by shape (i-th shape of shapes.txt = shape shapeTableShapes[i])
+    private boolean shapesTable = false;    // shapes.txt has rows: trips reference its shapes
+    private boolean shapePointsLoaded = false;
+    private int shapeTableCount = 0;
+    private int[] shapeTableShapes = new int[0];
+    private int[] shapePointOffsets = { 0 };
+    private double[] shapeLats = new double[0];
+    private double[] shapeLons = new double[0];
+    private long shapeRowCount = 0;  // rows read in shapes.txt
+
+    /**
+     * @param stopIds The stops used by stop_times.txt: only these stops are part of the feed
+     */
+    public GTFSFeed(Dictionary stopIds) {
+        this(stopIds, new Dictionary(), new Dictionary(), new Dictionary(), new Dictionary());
+        this.stopNames = new String[stopIds.size()];
+        this.stopLats = new double[stopIds.size()];
+        this.stopLons = new double[stopIds.size()];
+        this.stopOrder = new int[stopIds.size()];
+        Arrays.fill(stopLats, Double.NaN);
+        Arrays.fill(stopLons, Double.NaN);
+    }
+
+    private GTFSFeed(Dictionary stopIds, Dictionary tripIds, Dictionary routeIds, Dictionary shapeIds, Dictionary serviceIds) {
+        this.stopIds = stopIds;
+        this.tripIds = tripIds;
+        this.routeIds = routeIds;
+        this.shapeIds = shapeIds;
+        this.serviceIds = serviceIds;
+    }
+
+    // ---------------------------------------------------------------- loading
+
+    /**
+     * Sets the attributes of a stop of stops.txt.
+     *
+     * @return The stop int, or NONE if the stop is not used by any trip
+     */
+    public int defineStop(String stopId, String stopName, double lat, double lon) {
+        int stop = stopIds.indexOf(stopId);
+        if (stop == NONE) return NONE;
+        if (stopNames[stop] == null) stopOrder[definedStopCount++] = stop;
+        stopNames[stop] = stopName;
+        stopLats[stop] = lat;
+        stopLons[stop] = lon;
+        return stop;
+    }
+
+    /** Declares a route of routes.txt (names and colour may be null). */
+    public void defineRoute(String routeId, String shortName, String longName, int routeType, String color) {
+        int route = routeIds.intern(routeId);
+        ensureRouteCapacity(route + 1);
+        routeTypes[route] = routeType;
+        routeShortNames[route] = shortName;
+        routeLongNames[route] = longName;
+        routeColors[route] = color;
+    }
+
+    private void ensureRouteCapacity(int size) {
+        if (routeTypes.length < size) {
+            int old = routeTypes.length;
+            int capacity = Math.max(size, old * 2 + 16);
+            routeTypes = Arrays.copyOf(routeTypes, capacity);
+            Arrays.fill(routeTypes, old, routeTypes.length, NONE);
+            routeShortNames = Arrays.copyOf(routeShortNames, capacity);
+            routeLongNames = Arrays.copyOf(routeLongNames, capacity);
+            routeColors = Arrays.copyOf(routeColors, capacity);
+        }
+    }
+
+    /**
+     * Groups the points of shapes.txt by shape (stable, so points keep their file order). The shapes of
+     * shapes.txt are numbered in order of first appearance; they can be loaded before or after the trips.
+     */
+    public void setShapePoints(ShapePointColumns points) {
+        shapeTableCount = points.shapeIds.size();
+        shapeTableShapes = new int[shapeTableCount];
+        for (int i = 0; i < shapeTableCount; i++) shapeTableShapes[i] = shapeIds.intern(points.shapeIds.get(i));
+        shapeRowCount = points.rowCount;
+        shapePointsLoaded = true;
+        shapePointOffsets = new int[shapeTableCount + 1];
+        for (int p = 0; p < points.size; p++) shapePointOffsets[points.shapes[p] + 1]++;
+        for (int sh = 0; sh < shapeTableCount; sh++) shapePointOffsets[sh + 1] += shapePointOffsets[sh];
+        shapeLats = new double[points.size];
+        shapeLons = new double[points.size];
+        int[] cursor = Arrays.copyOf(shapePointOffsets, shapeTableCount);
+        for (int p = 0; p < points.size; p++) {
+            int i = cursor[points.shapes[p]]++;
+            shapeLats[i] = points.lats[p];
+            shapeLons[i] = points.lons[p];
+        }
+    }
+
+    /**
+     * Adds a trip of trips.txt. Trips must be added in file order, before {@link #setStopTimes}.
+     *
+     * @return The trip int, or the int of the existing trip if the trip_id was already added
+     */
+    public int addTrip(String tripId, String routeId, String serviceId, String shapeId) {
+        int existing = tripIds.indexOf(tripId);
+        if (existing != NONE) return existing;
+        int trip = tripIds.intern(tripId);
+        if (trip == tripRoutes.length) {
+            int capacity = trip * 2;
+            tripRoutes = Arrays.copyOf(tripRoutes, capacity);
+            tripServices = Arrays.copyOf(tripServices, capacity);
+            tripShapes = Arrays.copyOf(tripShapes, capacity);
+            tripRouteTypes = Arrays.copyOf(tripRouteTypes, capacity);
+        }
+        int route = routeIds.intern(routeId);
+        ensureRouteCapacity(route + 1);
+        tripRoutes[trip] = route;
+        tripServices[trip] = serviceIds.intern(serviceId);
+        tripShapes[trip] = shapeId == null || shapeId.isEmpty() ? NONE : shapeIds.intern(shapeId);
+        tripRouteTypes[trip] = NONE;
+        tripCount++;
+        routeTripOffsets = null;
+        return trip;
+    }
+
+    /**
+     * Groups the parsed stop_times.txt rows by trip, sorts the rows of each trip by stop_sequence (file
+     * order for equal sequences) and builds the stop -> trips incidence. Rows of unknown trips or without
+     * a valid stop_sequence are dropped.
+     *
+     * @param rows The parsed rows, whose stop ints come from the dictionary given to the constructor
+     */
+    public void setStopTimes(StopTimeColumns rows) {
+        // local trip int (stop_times.txt dictionary) -> feed trip int
+        int[] tripOf = new int[rows.tripIds.size()];
+        for (int i = 0; i < tripOf.length; i++) tripOf[i] = tripIds.indexOf(rows.tripIds.get(i));
+
+        tripOffsets = new int[tripCount + 1];
+        unknownTripRows = 0;
+        invalidSequenceRows = 0;
+        for (int r = 0; r < rows.size; r++) {
+            int trip = tripOf[rows.trips[r]];
+            if (rows.sequences[r] == StopTimeColumns.NO_SEQUENCE) invalidSequenceRows++;
+            else if (trip == NONE) unknownTripRows++;
+            else tripOffsets[trip + 1]++;
+        }
+        for (int t = 0; t < tripCount; t++) tripOffsets[t + 1] += tripOffsets[t];
+        int total = tripOffsets[tripCount];
+        stopTimeStops = new int[total];
+        stopTimeDepartures = new int[total];
+        stopTimeArrivals = new int[total];
+        stopTimeDistances = new double[total];
+        stopTimeSequences = new int[total];
+        int[] fileRows = new int[total];
+        int[] cursor = Arrays.copyOf(tripOffsets, tripCount);
+        for (int r = 0; r < rows.size; r++) {
+            int trip = tripOf[rows.trips[r]];
+            if (trip == NONE || rows.sequences[r] == StopTimeColumns.NO_SEQUENCE) continue;
+            int i = cursor[trip]++;
+            stopTimeStops[i] = rows.stops[r];
+            stopTimeDepartures[i] = rows.departures[r];
+            stopTimeArrivals[i] = rows.arrivals[r];
+            stopTimeDistances[i] = rows.distances[r];
+            stopTimeSequences[i] = rows.sequences[r];
+            fileRows[i] = r;
+        }
+        sortBySequence(fileRows);
+        buildStopTrips(fileRows);
+        buildPatterns();
+        maxDeparture = NO_TIME;
+        stopTimesLoaded = true;
+    }
+
+    /**
+     * Sorts the rows of each trip by stop_sequence. Most feeds are already ordered: a trip is only sorted
+     * when one of its rows is out of order.
+     */
+    private void sortBySequence(int[] fileRows) {
+        long[] keys = new long[0];
+        for (int t = 0; t < tripCount; t++) {
+            int start = tripOffsets[t];
+            int end = tripOffsets[t + 1];
+            boolean sorted = true;
+            for (int i = start + 1; i < end && sorted; i++) sorted = stopTimeSequences[i - 1] <= stopTimeSequences[i];
+            if (sorted) continue;
+
+            // sequence << 32 | position in the trip: stable for equal sequences
+            int count = end - start;
+            if (keys.length < count) keys = new long[count];
+            for (int i = 0; i < count; i++) keys[i] = (long) stopTimeSequences[start + i] << 32 | i;
+            Arrays.sort(keys, 0, count);
+            int[] stops = Arrays.copyOfRange(stopTimeStops, start, end);
+            int[] departures = Arrays.copyOfRange(stopTimeDepartures, start, end);
+            int[] arrivals = Arrays.copyOfRange(stopTimeArrivals, start, end);
+            double[] distances = Arrays.copyOfRange(stopTimeDistances, start, end);
+            int[] sequences = Arrays.copyOfRange(stopTimeSequences, start, end);
+            int[] rows = Arrays.copyOfRange(fileRows, start, end);
+            for (int i = 0; i < count; i++) {
+                int from = (int) keys[i];
+                stopTimeStops[start + i] = stops[from];
+                stopTimeDepartures[start + i] = departures[from];
+                stopTimeArrivals[start + i] = arrivals[from];
+                stopTimeDistances[start + i] = distances[from];
+                stopTimeSequences[start + i] = sequences[from];
+                fileRows[start + i] = rows[from];
+            }
+        }
+    }
+
+    /**
+     * Groups the trips into journey patterns: one pattern per distinct stop sequence, numbered in order of
+     * first trip (trips.txt order).
+     */
+    private void buildPatterns() {
+        tripPatterns = new int[tripCount];
+        Map<StopSequence, Integer> patterns = new HashMap<>();
+        int[] offsets = new int[tripCount + 1];
+        int[] firstTrips = new int[tripCount];
+        int stopsLength = 0;
+        for (int t = 0; t < tripCount; t++) {
+            int start = tripOffsets[t];
+            int end = tripOffsets[t + 1];
+            if (start == end) {
+                tripPatterns[t] = NONE;
+                continue;
+            }
+            StopSequence sequence = new StopSequence(Arrays.copyOfRange(stopTimeStops, start, end));
+            Integer pattern = patterns.get(sequence);
+            if (pattern == null) {
+                pattern = patterns.size();
+                patterns.put(sequence, pattern);
+                firstTrips[pattern] = t;
+                stopsLength += end - start;
+                offsets[pattern + 1] = stopsLength;
+            }
+            tripPatterns[t] = pattern;
+        }
+        int patternCount = patterns.size();
+        patternOffsets = Arrays.copyOf(offsets, patternCount + 1);
+        patternTrips = Arrays.copyOf(firstTrips, patternCount);
+        patternStops = new int[stopsLength];
+        for (int p = 0; p < patternCount; p++) {
+            System.arraycopy(stopTimeStops, tripOffsets[patternTrips[p]], patternStops, patternOffsets[p], patternOffsets[p + 1] - patternOffsets[p]);
+        }
+    }
+
+    /**
+     * Stop -> trips incidence. A trip is listed once per stop, at the position of its first visit of that
+     * stop in stop_times.txt.
+     */
+    private void buildStopTrips(int[] fileRows) {
+        int stopCount = stopIds.size();
+        int[] lastTrip = new int[stopCount];
+        int[] lastVisit = new int[stopCount];
+        Arrays.fill(lastTrip, NONE);
+        stopTripOffsets = new int[stopCount + 1];
+        // first visit of each (trip, stop), packed as fileRow << 32 | trip
+        long[] visits = new long[stopTimeStops.length];
+        int[] visitStops = new int[stopTimeStops.length];
+        int count = 0;
+        for (int t = 0; t < tripCount; t++) {
+            for (int i = tripOffsets[t]; i < tripOffsets[t + 1]; i++) {
+                int stop = stopTimeStops[i];
+                long visit = (long) fileRows[i] << 32 | t;
+                if (lastTrip[stop] == t) {
+                    // rows are in stop_sequence order: keep the earliest one in the file
+                    visits[lastVisit[stop]] = Math.min(visits[lastVisit[stop]], visit);
+                    continue;
+                }
+                lastTrip[stop] = t;
+                lastVisit[stop] = count;
+                visits[count] = visit;
+                visitStops[count] = stop;
+                stopTripOffsets[stop + 1]++;
+                count++;
+            }
+        }
+        for (int s = 0; s < stopCount; s++) stopTripOffsets[s + 1] += stopTripOffsets[s];
+        long[] byStop = new long[count];
+        int[] cursor = Arrays.copyOf(stopTripOffsets, stopCount);
+        for (int v = 0; v < count; v++) byStop[cursor[visitStops[v]]++] = visits[v];
+        stopTrips = new int[count];
+        for (int s = 0; s < stopCount; s++) {
+            Arrays.sort(byStop, stopTripOffsets[s], stopTripOffsets[s + 1]);
+            for (int i = stopTripOffsets[s]; i < stopTripOffsets[s + 1]; i++) stopTrips[i] = (int) byStop[i];
+        }
+    }
+
+    // ---------------------------------------------------------------- dictionaries
+
+    public Dictionary getStopIds() { return stopIds; }
+    public Dictionary getTripIds() { return tripIds; }
+    public Dictionary getRouteIds() { return routeIds; }
+    public Dictionary getShapeIds() { return shapeIds; }
+    public Dictionary getServiceIds() { return serviceIds; }
+
+    // ---------------------------------------------------------------- stops
+
+    public int getStopCount() { return stopIds.size(); }
+    public String getStopId(int stop) { return stopIds.get(stop); }
+    public String getStopName(int stop) { return stopNames[stop]; }
+    public double getStopLat(int stop) { return stopLats[stop]; }
+    public double getStopLon(int stop) { return stopLons[stop]; }
+
+    /** Stops defined in stops.txt (and used by stop_times.txt), in file order. */
+    public int getDefinedStopCount() { return definedStopCount; }
+    public int getDefinedStop(int i) { return stopOrder[i]; }
+    public long getStopRowCount() { return stopRowCount; }
+    public void setStopRowCount(long stopRowCount) { this.stopRowCount = stopRowCount; }
+
+    /** Trips visiting a stop: indices [getStopTripsStart(stop), getStopTripsEnd(stop)) of {@link #getStopTrip}. */
+    public int getStopTripsStart(int stop) { return stopTripOffsets[stop]; }
+    public int getStopTripsEnd(int stop) { return stopTripOffsets[stop + 1]; }
+    public int getStopTrip(int i) { return stopTrips[i]; }
+
+    // ---------------------------------------------------------------- shapes
+
+    /** true if shapes.txt has at least one row: the trips then use its shape_ids. */
+    public boolean hasShapesTable() { return shapesTable; }
+    public void setShapesTable(boolean shapesTable) { this.shapesTable = shapesTable; }
+
+    /** false until {@link #setShapePoints} is called (shapes.txt is only read when shapes are requested). */
+    public boolean hasShapePoints() { return shapePointsLoaded; }
+
+    /**
+     * Forgets the points of shapes.txt (read again by the next {@link #setShapePoints}).
+     */
+    public void clearShapePoints() {
+        shapePointsLoaded = false;
+        shapeTableCount = 0;
+        shapeTableShapes = new int[0];
+        shapePointOffsets = new int[] { 0 };
+        shapeLats = new double[0];
+        shapeLons = new double[0];
+        shapeRowCount = 0;
+    }
+
+    /** Number of shapes of shapes.txt, in order of first appearance. */
+    public int getShapeTableCount() { return shapeTableCount; }
+    public long getShapeRowCount() { return shapeRowCount; }
+
+    /** Shape int of the i-th shape of shapes.txt. */
+    public int getShapeTableShape(int i) { return shapeTableShapes[i]; }
+
+    /** Points of the i-th shape of shapes.txt: [getShapePointsStart(i), getShapePointsEnd(i)). */
+    public int getShapePointsStart(int i) { return shapePointOffsets[i]; }
+    public int getShapePointsEnd(int i) { return shapePointOffsets[i + 1]; }
+    public double getShapePointLat(int point) { return shapeLats[point]; }
+    public double getShapePointLon(int point) { return shapeLons[point]; }
+
+    // ---------------------------------------------------------------- routes
+
+    public int getRouteCount() { return routeIds.size(); }
+    public String getRouteShortName(int route) { return routeShortNames[route]; }
+    public String getRouteLongName(int route) { return routeLongNames[route]; }
+    public String getRouteColor(int route) { return routeColors[route]; }
+
+    public int getRouteType(int route) {
+        return route >= 0 && route < routeTypes.length ? routeTypes[route] : NONE;
+    }
+
+    /** Trips of a route, in trips.txt order: [getRouteTripsStart(route), getRouteTripsEnd(route)) of {@link #getRouteTrip}. */
+    public int getRouteTripsStart(int route) {
+        if (routeTripOffsets == null) buildRouteTrips();
+        return routeTripOffsets[route];
+    }
+
+    public int getRouteTripsEnd(int route) {
+        if (routeTripOffsets == null) buildRouteTrips();
+        return routeTripOffsets[route + 1];
+    }
+
+    public int getRouteTrip(int i) { return routeTrips[i]; }
+
+    private void buildRouteTrips() {
+        int routeCount = routeIds.size();
+        int[] offsets = new int[routeCount + 1];
+        for (int t = 0; t < tripCount; t++) offsets[tripRoutes[t] + 1]++;
+        for (int r = 0; r < routeCount; r++) offsets[r + 1] += offsets[r];
+        int[] trips = new int[tripCount];
+        int[] cursor = Arrays.copyOf(offsets, routeCount);
+        for (int t = 0; t < tripCount; t++) trips[cursor[tripRoutes[t]]++] = t;
+        routeTrips = trips;
+        routeTripOffsets = offsets;
+    }
+
+    // ---------------------------------------------------------------- trips
+
+    public int getTripCount() { return tripCount; }
+    public String getTripId(int trip) { return tripIds.get(trip); }
+    public int getTripRoute(int trip) { return tripRoutes[trip]; }
+    public int getTripService(int trip) { return tripServices[trip]; }
+    public int getTripShape(int trip) { return tripShapes[trip]; }
+    public void setTripShape(int trip, int shape) { tripShapes[trip] = shape; }
+    public int getTripRouteType(int trip) { return tripRouteTypes[trip]; }
+    public void setTripRouteType(int trip, int routeType) { tripRouteTypes[trip] = routeType; }
+
+    /** A trip is active when it runs on the simulated day: only active trips expose their stop times. */
+    public boolean isTripActive(int trip) { return activeTrips.get(trip); }
+    public void setTripActive(int trip, boolean active) { activeTrips.set(trip, active); }
+
+    // ---------------------------------------------------------------- stop times
+
+    /** false when stop_times.txt is absent or lacks one of trip_id, departure_time, stop_sequence. */
+    public boolean hasStopTimes() { return stopTimesLoaded; }
+    public int getStopTimeRowCount() { return stopTimeStops.length; }
+    public int getUnknownTripRows() { return unknownTripRows; }
+    public int getInvalidSequenceRows() { return invalidSequenceRows; }
+
+    /** Rows of a trip, in stop_sequence order: [getStopTimesStart(trip), getStopTimesEnd(trip)). */
+    public int getStopTimesStart(int trip) { return tripOffsets[trip]; }
+    public int getStopTimesEnd(int trip) { return tripOffsets[trip + 1]; }
+    public int getStopTimeCount(int trip) { return tripOffsets[trip + 1] - tripOffsets[trip]; }
+    public int getStopTimeStop(int row) { return stopTimeStops[row]; }
+    public int getStopTimeDeparture(int row) { return stopTimeDepartures[row]; }
+    public int getStopTimeArrival(int row) { return stopTimeArrivals[row]; }
+    /** shape_dist_traveled of a row, in the unit of the feed, or NaN if it is not given. */
+    public double getStopTimeDistance(int row) { return stopTimeDistances[row]; }
+    public int getStopTimeSequence(int row) { return stopTimeSequences[row]; }
+
+    /**
+     * Row of the first stop of a trip: the lowest stop_sequence, the earliest departure among rows of
+     * equal sequence.
+     *
+     * @return The row, or NONE if the trip has no stop_times
+     */
+    public int getFirstStopRow(int trip) {
+        int start = tripOffsets[trip];
+        int end = tripOffsets[trip + 1];
+        if (start == end) return NONE;
+        int first = start;
+        for (int row = start + 1; row < end && stopTimeSequences[row] == stopTimeSequences[start]; row++) {
+            if (Math.max(stopTimeDepartures[row], 0) < Math.max(stopTimeDepartures[first], 0)) first = row;
+        }
+        return first;
+    }
+
+    /**
+     * Signature of a trip (journey pattern, first stop, first departure): the same trip published under
+     * several trip ids has the same signature.
+     *
+     * @param firstRow Row of its first stop (see {@link #getFirstStopRow})
+     */
+    public TripSignature getTripSignature(int trip, int firstRow) {
+        return new TripSignature(tripPatterns[trip], stopTimeStops[firstRow], Math.max(stopTimeDepartures[firstRow], 0));
+    }
+
+    /** Number of journey patterns (distinct stop sequences of the trips). */
+    public int getPatternCount() { return patternTrips.length; }
+    /** Journey pattern of a trip, or NONE if it has no stop_times. */
+    public int getTripPattern(int trip) { return stopTimesLoaded ? tripPatterns[trip] : NONE; }
+    /** Stops of a pattern, in stop_sequence order: [getPatternStopsStart(p), getPatternStopsEnd(p)). */
+    public int getPatternStopsStart(int pattern) { return patternOffsets[pattern]; }
+    public int getPatternStopsEnd(int pattern) { return patternOffsets[pattern + 1]; }
+    public int getPatternStop(int i) { return patternStops[i]; }
+    /** First trip (in trips.txt order) of a pattern. */
+    public int getPatternTrip(int pattern) { return patternTrips[pattern]; }
+
+    /**
+     * Latest departure time of the feed, in seconds (may exceed 24:00:00).
+     */
+    public int getMaxDeparture() {
+        if (maxDeparture == NO_TIME) {
+            int max = 0;
+            for (int departure : stopTimeDepartures) max = Math.max(max, departure);
+            maxDeparture = max;
+        }
+        return maxDeparture;
+    }
+
+    // ---------------------------------------------------------------- snapshot
+
+    /**
+     * Writes the feed (without the active trip flags, which depend on the simulated date).
+     */
+    void write(GTFSSnapshot.Output out) throws IOException {
+        stopIds.write(out);
+        tripIds.write(out);
+        routeIds.write(out);
+        shapeIds.write(out);
+        serviceIds.write(out);
+
+        out.writeStrings(stopNames, stopNames.length);
+        out.writeDoubles(stopLats, stopLats.length);
+        out.writeDoubles(stopLons, stopLons.length);
+        out.writeInts(stopOrder, definedStopCount);
+        out.writeLong(stopRowCount);
+
+        out.writeInts(routeTypes, routeIds.size());
+        out.writeStrings(routeShortNames, routeIds.size());
+        out.writeStrings(routeLongNames, routeIds.size());
+        out.writeStrings(routeColors, routeIds.size());
+
+        out.writeInts(tripRoutes, tripCount);
+        out.writeInts(tripServices, tripCount);
+        out.writeInts(tripShapes, tripCount);
+        out.writeInts(tripRouteTypes, tripCount);
+
+        out.writeBoolean(stopTimesLoaded);
+        out.writeInt(unknownTripRows);
+        out.writeInt(invalidSequenceRows);
+        out.writeInts(tripOffsets, tripOffsets.length);
+        out.writeInts(stopTimeStops, stopTimeStops.length);
+        out.writeInts(stopTimeDepartures, stopTimeDepartures.length);
+        out.writeInts(stopTimeArrivals, stopTimeArrivals.length);
+        out.writeDoubles(stopTimeDistances, stopTimeDistances.length);
+        out.writeInts(stopTimeSequences, stopTimeSequences.length);
+        out.writeInts(stopTripOffsets, stopTripOffsets.length);
+        out.writeInts(stopTrips, stopTrips.length);
+
+        out.writeBoolean(shapesTable);
+        out.writeBoolean(shapePointsLoaded);
+        out.writeInts(shapeTableShapes, shapeTableCount);
+        out.writeInts(shapePointOffsets, shapePointOffsets.length);
+        out.writeDoubles(shapeLats, shapeLats.length);
+        out.writeDoubles(shapeLons, shapeLons.length);
+        out.writeLong(shapeRowCount);
+    }
+
+    /**
+     * Reads a feed written by {@link #write}.
+     */
+    static GTFSFeed read(GTFSSnapshot.Input in) throws IOException {
+        GTFSFeed feed = new GTFSFeed(Dictionary.read(in), Dictionary.read(in), Dictionary.read(in),
+            Dictionary.read(in), Dictionary.read(in));
+
+        feed.stopNames = in.readStrings();
+        feed.stopLats = in.readDoubles();
+        feed.stopLons = in.readDoubles();
+        int[] defined = in.readInts();
+        feed.definedStopCount = defined.length;
+        feed.stopOrder = Arrays.copyOf(defined, feed.stopNames.length);
+        feed.stopRowCount = in.readLong();
+
+        feed.routeTypes = in.readInts();
+        feed.routeShortNames = in.readStrings();
+        feed.routeLongNames = in.readStrings();
+        feed.routeColors = in.readStrings();
+
+        feed.tripRoutes = in.readInts();
+        feed.tripServices = in.readInts();
+        feed.tripShapes = in.readInts();
+        feed.tripRouteTypes = in.readInts();
+        feed.tripCount = feed.tripRoutes.length;
+
+        feed.stopTimesLoaded = in.readBoolean();
+        feed.unknownTripRows = in.readInt();
+        feed.invalidSequenceRows = in.readInt();
+        feed.tripOffsets = in.readInts();
+        feed.stopTimeStops = in.readInts();
+        feed.stopTimeDepartures = in.readInts();
+        feed.stopTimeArrivals = in.readInts();
+        feed.stopTimeDistances = in.readDoubles();
+        feed.stopTimeSequences = in.readInts();
+        feed.stopTripOffsets = in.readInts();
+        feed.stopTrips = in.readInts();
+        if (feed.stopTimesLoaded) feed.buildPatterns(); // derived from the stop_times columns, not stored
+
+        feed.shapesTable = in.readBoolean();
+        feed.shapePointsLoaded = in.readBoolean();
+        feed.shapeTableShapes = in.readInts();
+        feed.shapeTableCount = feed.shapeTableShapes.length;
+        feed.shapePointOffsets = in.readInts();
+        feed.shapeLats = in.readDoubles();
+        feed.shapeLons = in.readDoubles();
+        feed.shapeRowCount = in.readLong();
+
+        if (feed.stopLats.length != feed.stopIds.size() || feed.tripCount != feed.tripIds.size()
+                || feed.shapePointOffsets.length != feed.shapeTableCount + 1) {
+            throw new IOException("inconsistent snapshot");
+        }
+        return feed;
+    }
+
+    /**
+     * Parses a GTFS time (H:MM:SS, hours may exceed 23) into seconds since the start of the service day.
+     *
+     * @return The number of seconds, or NO_TIME if the value is empty or malformed
+     */
+    public static int parseTime(String time) {
+        int length = time.length();
+        int start = 0;
+        while (start < length && time.charAt(start) <= ' ') start++;
+        while (length > start && time.charAt(length - 1) <= ' ') length--;
+        int[] parts = new int[3];
+        int part = 0;
+        boolean digit = false;
+        for (int i = start; i < length; i++) {
+            char c = time.charAt(i);
+            if (c == ':') {
+                if (!digit || ++part > 2) return NO_TIME;
+                digit = false;
+            } else if (c >= '0' && c <= '9') {
+                parts[part] = parts[part] * 10 + (c - '0');
+                digit = true;
+                if (parts[part] > 100_000) return NO_TIME;
+            } else {
+                return NO_TIME;
+            }
+        }
+        if (part != 2 || !digit) return NO_TIME;
+        return parts[0] * 3600 + parts[1] * 60 + parts[2];
+    }
+
+    /** Formats a number of seconds as HH:MM:SS ("" for NO_TIME). */
+    public static String formatTime(int seconds) {
+        if (seconds == NO_TIME) return "";
+        int h = seconds / 3600;
+        int m = (seconds / 60) % 60;
+        int s = seconds % 60;
+        return (h < 10 ? "0" : "") + h + (m < 10 ? ":0" : ":") + m + (s < 10 ? ":0" : ":") + s;
+    }
+
+    /**
+     * Key used to detect the trips sharing their journey pattern, first stop and first departure.
+     */
+    public record TripSignature(int pattern, int firstStop, int departure) {}
+
+    /**
+     * Stop sequence of a trip, key of its journey pattern.
+     */
+    private record StopSequence(int[] stops, int hash) {
+        StopSequence(int[] stops) {
+            this(stops, Arrays.hashCode(stops));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof StopSequence other && hash == other.hash && Arrays.equals(stops, other.stops);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Dense int surrogates for string identifiers.
+     */
+    public static final class Dictionary {
+        private final Map<String, Integer> index = new HashMap<>();
+        private String[] values = new String[64];
+        private int size = 0;
+
+        /** @return The int of the id, added if needed */
+        public int intern(String id) {
+            Integer existing = index.get(id);
+            if (existing != null) return existing;
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size] = id;
+            index.put(id, size);
+            return size++;
+        }
+
+        /** @return The int of the id, or NONE if unknown */
+        public int indexOf(String id) {
+            Integer existing = index.get(id);
+            return existing == null ? NONE : existing;
+        }
+
+        public String get(int i) {
+            return i == NONE ? null : values[i];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        void write(GTFSSnapshot.Output out) throws IOException {
+            out.writeStrings(values, size);
+        }
+
+        static Dictionary read(GTFSSnapshot.Input in) throws IOException {
+            Dictionary dictionary = new Dictionary();
+            for (String value : in.readStrings()) dictionary.intern(value);
+            return dictionary;
+        }
+    }
+
+    /**
+     * stop_times.txt rows as parsed (file order), before they are grouped by trip.
+     * Trip ints refer to the local {@link #tripIds} dictionary.
+     */
+    public static final class StopTimeColumns {
+        public static final int NO_SEQUENCE = Integer.MIN_VALUE;
+
+        final Dictionary tripIds = new Dictionary();
+        final Dictionary stopIds = new Dictionary();
+        boolean complete = true;   // false if trip_id, departure_time or stop_sequence is missing
+        int[] trips = new int[1024];
+        int[] stops = new int[1024];
+        int[] departures = new int[1024];
+        int[] arrivals = new int[1024];
+        double[] distances = new double[1024];
+        int[] sequences = new int[1024];
+        int size = 0;
+
+        public void add(String tripId, String stopId, int departure, int arrival, double distance, int sequence) {
+            if (size == trips.length) {
+                int capacity = size * 2;
+                trips = Arrays.copyOf(trips, capacity);
+                stops = Arrays.copyOf(stops, capacity);
+                departures = Arrays.copyOf(departures, capacity);
+                arrivals = Arrays.copyOf(arrivals, capacity);
+                distances = Arrays.copyOf(distances, capacity);
+                sequences = Arrays.copyOf(sequences, capacity);
+            }
+            trips[size] = tripIds.intern(tripId);
+            stops[size] = stopIds.intern(stopId);
+            departures[size] = departure;
+            arrivals[size] = arrival;
+            distances[size] = distance;
+            sequences[size] = sequence;
+            size++;
+        }
+
+        /** Registers a stop used by stop_times.txt without a complete row. */
+        public void addStop(String stopId) {
+            stopIds.intern(stopId);
+        }
+
+        public Dictionary getStopIds() {
+            return stopIds;
+        }
+
+        public boolean isComplete() {
+            return complete;
+        }
+
+        public void setComplete(boolean complete) {
+            this.complete = complete;
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Points of shapes.txt as parsed (file order), before they are grouped by shape.
+     */
+    public static final class ShapePointColumns {
+        final Dictionary shapeIds = new Dictionary();
+        int[] shapes = new int[1024];
+        double[] lats = new double[1024];
+        double[] lons = new double[1024];
+        int size = 0;
+        long rowCount = 0;
+        private String lastShapeId;
+        private int lastShape;
+
+        public void add(String shapeId, double lat, double lon) {
+            if (size == lats.length) {
+                int capacity = size * 2;
+                shapes = Arrays.copyOf(shapes, capacity);
+                lats = Arrays.copyOf(lats, capacity);
+                lons = Arrays.copyOf(lons, capacity);
+            }
+            // shapes.txt is grouped by shape_id: skip the dictionary lookup for consecutive points
+            if (!shapeId.equals(lastShapeId)) {
+                lastShapeId = shapeId;
+                lastShape = shapeIds.intern(shapeId);
+            }
+            shapes[size] = lastShape;
+            lats[size] = lat;
+            lons[size] = lon;
+            size++;
+        }
+
+        public void setRowCount(long rowCount) {
+            this.rowCount = rowCount;
+        }
+
+        public long getRowCount() {
+            return rowCount;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package gama.extension.GTFS;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What happened while a feed was loaded: the problems met on the rows of its tables, counted by category
+ * (e.g. "stops.txt: invalid row"), with the first messages of each category kept as samples, and the
+ * figures of each loading step (stops created, active trips...).
+ *
+ * Only the first {@value #LOGGED_PER_CATEGORY} problems of a category are printed (see {@link GTFSLog}),
+ * so the loops over the rows do not depend on the console. Can be filled from the loader threads.
+ */
+public final class GTFSLoadReport {
+
+    private static final int LOGGED_PER_CATEGORY = 5;
+
+    private final Map<String, AtomicLong> problems = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> samples = new ConcurrentHashMap<>();
+    private final Map<String, Object> stats = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * Counts a problem of a category; its message is kept and printed only for the first ones.
+     */
+    public void problem(String category, String message) {
+        long count = problems.computeIfAbsent(category, c -> new AtomicLong()).incrementAndGet();
+        if (count > LOGGED_PER_CATEGORY) return;
+        samples.computeIfAbsent(category, c -> Collections.synchronizedList(new ArrayList<>())).add(message);
+        GTFSLog.warning("[WARNING] " + category + " -> " + message);
+        if (count == LOGGED_PER_CATEGORY) {
+            GTFSLog.warning("[WARNING] " + category + ": further occurrences are only counted (see gtfs_load_report)");
+        }
+    }
+
+    /** Records a figure of a loading step, replacing the previous value. */
+    public void set(String key, Object value) {
+        stats.put(key, value);
+    }
+
+    public long getProblemCount(String category) {
+        AtomicLong count = problems.get(category);
+        return count == null ? 0 : count.get();
+    }
+
+    /** Category → number of problems, sorted by category. */
+    public Map<String, Long> getProblems() {
+        Map<String, Long> counts = new TreeMap<>();
+        problems.forEach((category, count) -> counts.put(category, count.get()));
+        return counts;
+    }
+
+    /** Category → first messages of the category. */
+    public Map<String, List<String>> getSamples() {
+        Map<String, List<String>> copy = new TreeMap<>();
+        samples.forEach((category, messages) -> {
+            synchronized (messages) {
+                copy.put(category, new ArrayList<>(messages));
+            }
+        });
+        return copy;
+    }
+
+    /** Figures of the loading steps, in the order they were first recorded. */
+    public Map<String, Object> getStats() {
+        synchronized (stats) {
+            return new LinkedHashMap<>(stats);
+        }
+    }
+
+    /** Prints the number of problems of each category. */
+    public void log() {
+        Map<String, Long> counts = getProblems();
+        if (counts.isEmpty()) return;
+        GTFSLog.warning("[WARNING] GTFS load report: " + counts);
+    }
+}
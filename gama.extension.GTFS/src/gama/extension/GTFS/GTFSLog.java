@@ -0,0 +1,58 @@
+package gama.extension.GTFS;
+
+import java.util.Locale;
+
+/**
+ * Console output of the plugin, filtered by level: -Dgtfs.log=DEBUG, INFO (default), WARNING, ERROR or
+ * OFF, or setLevel. Messages are printed as given, with their own prefix; DEBUG and INFO go to the
+ * standard output, WARNING and ERROR to the error output.
+ *
+ * Problems met on each row of a table are not printed here one by one: they are counted in the
+ * {@link GTFSLoadReport} of the reader, which only prints the first ones of each category.
+ */
+public final class GTFSLog {
+
+    public enum Level { DEBUG, INFO, WARNING, ERROR, OFF }
+
+    private static volatile Level level = parseLevel(System.getProperty("gtfs.log", "INFO"));
+
+    private GTFSLog() {}
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    /** Sets the lowest level printed from now on (OFF prints nothing). */
+    public static void setLevel(Level newLevel) {
+        level = newLevel == null ? Level.INFO : newLevel;
+    }
+
+    public static boolean isEnabled(Level messageLevel) {
+        return messageLevel != Level.OFF && messageLevel.compareTo(level) >= 0;
+    }
+
+    public static void debug(String message) {
+        if (isEnabled(Level.DEBUG)) System.out.println(message);
+    }
+
+    public static void info(String message) {
+        if (isEnabled(Level.INFO)) System.out.println(message);
+    }
+
+    public static void warning(String message) {
+        if (isEnabled(Level.WARNING)) System.err.println(message);
+    }
+
+    public static void error(String message) {
+        if (isEnabled(Level.ERROR)) System.err.println(message);
+    }
+
+    static Level parseLevel(String value) {
+        try {
+            return Level.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("[WARNING] Unknown gtfs.log level '" + value + "', INFO is used.");
+            return Level.INFO;
+        }
+    }
+}
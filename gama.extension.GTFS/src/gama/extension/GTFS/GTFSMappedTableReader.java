@@ -0,0 +1,457 @@
+package gama.extension.GTFS;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Byte-level reader for the large GTFS tables (stop_times.txt, shapes.txt).
+ *
+ * The file is memory-mapped with {@link FileChannel#map} (in windows of at most 512 MB) and records are
+ * split directly on the bytes. Numbers are parsed from the bytes without creating a String, and text
+ * values are only decoded the first time a given byte sequence is seen: ids and times are shared through
+ * a dictionary, bounded to {@link ByteDictionary#MAX_SIZE} entries (values seen after that are decoded
+ * each time). Same input rules as {@link GTFSTableReader} (UTF-8, BOM, ',' ';' or tab, quoted fields).
+ * Only the field boundaries are recorded while splitting, so a column that is never read is never decoded:
+ * {@link #select} has nothing to skip here.
+ */
+public class GTFSMappedTableReader implements GTFSRowSource {
+
+    private static final long WINDOW_SIZE = 1L << 29;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private final String tableName;
+    private final FileChannel channel;
+    private final long fileSize;
+    private MappedByteBuffer window;
+    private long windowStart = 0;
+    private int windowLimit = 0;
+    private int pos = 0;
+
+    private byte separator = ',';
+    private final Map<String, Integer> header = new HashMap<>();
+
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private boolean[] quoted = new boolean[16];
+    private int fieldCount = 0;
+    private long rowCount = 0;
+
+    private final ByteDictionary dictionary = new ByteDictionary();
+    private final Map<String, String> quotedValues = new HashMap<>();
+
+    /**
+     * Maps a GTFS table and parses its header.
+     *
+     * @param file The table file (e.g. stop_times.txt)
+     * @throws IOException If the file cannot be read
+     */
+    public GTFSMappedTableReader(File file) throws IOException {
+        if (!file.isFile()) {
+            throw new IOException(file.getAbsolutePath() + " is not a valid file.");
+        }
+        this.tableName = file.getName();
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        mapWindow(0);
+        if (windowLimit >= 3 && window.get(0) == (byte) 0xEF && window.get(1) == (byte) 0xBB && window.get(2) == (byte) 0xBF) {
+            pos = 3;
+        }
+        separator = sniffSeparator();
+        readHeader();
+    }
+
+    private void mapWindow(long offset) throws IOException {
+        long length = Math.min(WINDOW_SIZE, fileSize - offset);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        windowStart = offset;
+        windowLimit = (int) length;
+        pos = 0;
+    }
+
+    private byte sniffSeparator() {
+        int commas = 0, semicolons = 0, tabs = 0;
+        boolean inQuotes = false;
+        for (int i = pos; i < windowLimit; i++) {
+            byte b = window.get(i);
+            if (b == '"') inQuotes = !inQuotes;
+            if (inQuotes) continue;
+            if (b == '\n' || b == '\r') {
+                if (commas + semicolons + tabs > 0) break;
+                continue;
+            }
+            if (b == ',') commas++;
+            else if (b == ';') semicolons++;
+            else if (b == '\t') tabs++;
+        }
+        if (tabs > commas && tabs > semicolons) return '\t';
+        if (semicolons > commas) return ';';
+        return ',';
+    }
+
+    private void readHeader() throws IOException {
+        while (scanRecord()) {
+            if (fieldCount == 1 && isBlankField(0)) continue;
+            for (int i = 0; i < fieldCount; i++) {
+                String col = decode(i).trim().replace("\uFEFF", "").toLowerCase();
+                header.put(col, i);
+            }
+            return;
+        }
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        while (scanRecord()) {
+            if (isBlankRecord()) continue;
+            rowCount++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isBlankRecord() {
+        for (int i = 0; i < fieldCount; i++) {
+            if (!isBlankField(i)) return false;
+        }
+        return true;
+    }
+
+    private boolean isBlankField(int index) {
+        for (int p = starts[index]; p < ends[index]; p++) {
+            byte b = window.get(p);
+            if (b != ' ' && b != '\t' && b != '"') return false;
+        }
+        return true;
+    }
+
+    /**
+     * Splits the next record into field boundaries. When a record crosses the end of the mapped
+     * window, the window is moved to start at that record and the record is scanned again.
+     */
+    private boolean scanRecord() throws IOException {
+        while (true) {
+            if (pos >= windowLimit) {
+                if (windowStart + windowLimit >= fileSize) return false;
+                mapWindow(windowStart + pos);
+            }
+            int end = scanFrom(pos);
+            if (end >= 0) {
+                pos = end;
+                return true;
+            }
+            if (pos == 0) {
+                throw new IOException("Record larger than the mapping window in " + tableName);
+            }
+            mapWindow(windowStart + pos);
+        }
+    }
+
+    /**
+     * @return The position after the record, or -1 if the record is not complete in the current window
+     */
+    private int scanFrom(int p) {
+        boolean atEof = windowStart + windowLimit >= fileSize;
+        fieldCount = 0;
+        int fieldStart = p;
+        boolean inQuotes = false;
+        boolean fieldQuoted = false;
+        while (p < windowLimit) {
+            byte b = window.get(p);
+            if (inQuotes) {
+                if (b == '"') {
+                    if (p + 1 >= windowLimit && !atEof) return -1;
+                    if (p + 1 < windowLimit && window.get(p + 1) == '"') {
+                        p += 2;
+                        continue;
+                    }
+                    inQuotes = false;
+                }
+                p++;
+            } else if (b == separator) {
+                addField(fieldStart, p, fieldQuoted);
+                p++;
+                fieldStart = p;
+                fieldQuoted = false;
+            } else if (b == '\n') {
+                addField(fieldStart, p, fieldQuoted);
+                return p + 1;
+            } else if (b == '\r') {
+                if (p + 1 >= windowLimit && !atEof) return -1;
+                addField(fieldStart, p, fieldQuoted);
+                if (p + 1 < windowLimit && window.get(p + 1) == '\n') p++;
+                return p + 1;
+            } else {
+                if (b == '"' && p == fieldStart) {
+                    inQuotes = true;
+                    fieldQuoted = true;
+                }
+                p++;
+            }
+        }
+        if (!atEof) return -1;
+        addField(fieldStart, p, fieldQuoted);
+        return p;
+    }
+
+    private void addField(int start, int end, boolean isQuoted) {
+        if (fieldCount == starts.length) {
+            starts = Arrays.copyOf(starts, fieldCount * 2);
+            ends = Arrays.copyOf(ends, fieldCount * 2);
+            quoted = Arrays.copyOf(quoted, fieldCount * 2);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        quoted[fieldCount] = isQuoted;
+        fieldCount++;
+    }
+
+    /** Decodes a field without going through the dictionary (header, quoted values). */
+    private String decode(int index) {
+        int start = starts[index];
+        int end = ends[index];
+        byte[] bytes = new byte[end - start];
+        window.get(start, bytes);
+        String raw = new String(bytes, StandardCharsets.UTF_8);
+        if (!quoted[index]) return raw;
+        // "abc ""x"" def" → abc "x" def (text after the closing quote is kept as is)
+        StringBuilder sb = new StringBuilder(raw.length());
+        boolean inQuotes = false;
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c == '"') {
+                if (!inQuotes && sb.length() == 0 && i == 0) {
+                    inQuotes = true;
+                } else if (inQuotes && i + 1 < raw.length() && raw.charAt(i + 1) == '"') {
+                    sb.append('"');
+                    i++;
+                } else if (inQuotes) {
+                    inQuotes = false;
+                } else {
+                    sb.append(c);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public Integer column(String... possibleNames) {
+        for (String name : possibleNames) {
+            Integer idx = header.get(name.trim().toLowerCase());
+            if (idx != null) return idx;
+        }
+        return null;
+    }
+
+    @Override
+    public String get(int index) {
+        if (index >= fieldCount) return "";
+        if (quoted[index]) {
+            String value = decode(index);
+            String shared = quotedValues.putIfAbsent(value, value);
+            return shared == null ? value : shared;
+        }
+        return dictionary.lookup(window, starts[index], ends[index]);
+    }
+
+    /** Checked on the bytes: the value is not decoded nor added to the dictionary. */
+    @Override
+    public boolean isBlank(int index) {
+        if (index >= fieldCount) return true;
+        if (quoted[index]) return GTFSRowSource.super.isBlank(index);
+        for (int p = starts[index]; p < ends[index]; p++) {
+            if ((window.get(p) & 0xFF) > ' ') return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int getInt(int index) {
+        if (index >= fieldCount || quoted[index]) return GTFSRowSource.super.getInt(index);
+        int p = starts[index];
+        int end = ends[index];
+        while (p < end && (window.get(p) & 0xFF) <= ' ') p++;
+        while (end > p && (window.get(end - 1) & 0xFF) <= ' ') end--;
+        boolean negative = p < end && window.get(p) == '-';
+        if (negative || p < end && window.get(p) == '+') p++;
+        if (p >= end || end - p > 9) return GTFSRowSource.super.getInt(index);
+        int value = 0;
+        for (; p < end; p++) {
+            int digit = window.get(p) - '0';
+            if (digit < 0 || digit > 9) return GTFSRowSource.super.getInt(index);
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Plain decimals (optional sign, digits, optional fraction) with at most 15 significant digits are
+     * parsed from the bytes: the result is then exactly the one of Double.parseDouble. Anything else
+     * (exponent, longer mantissa, malformed value) goes through Double.parseDouble.
+     */
+    @Override
+    public double getDouble(int index) {
+        if (index >= fieldCount || quoted[index]) return GTFSRowSource.super.getDouble(index);
+        int p = starts[index];
+        int end = ends[index];
+        while (p < end && (window.get(p) & 0xFF) <= ' ') p++;
+        while (end > p && (window.get(end - 1) & 0xFF) <= ' ') end--;
+        boolean negative = p < end && window.get(p) == '-';
+        if (negative || p < end && window.get(p) == '+') p++;
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        boolean sawDigit = false;
+        for (; p < end; p++) {
+            byte b = window.get(p);
+            if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9 || digits >= 15) return GTFSRowSource.super.getDouble(index);
+            mantissa = mantissa * 10 + digit;
+            sawDigit = true;
+            if (mantissa > 0) digits++;
+            if (fractionDigits >= 0) fractionDigits++;
+        }
+        if (!sawDigit || fractionDigits > 22) {
+            return GTFSRowSource.super.getDouble(index);
+        }
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    @Override
+    public int getTimeSeconds(int index) {
+        if (index >= fieldCount || quoted[index]) return GTFSRowSource.super.getTimeSeconds(index);
+        int p = starts[index];
+        int end = ends[index];
+        while (p < end && (window.get(p) & 0xFF) <= ' ') p++;
+        while (end > p && (window.get(end - 1) & 0xFF) <= ' ') end--;
+        int seconds = 0;
+        int value = 0;
+        int part = 0;
+        boolean digit = false;
+        for (; p < end; p++) {
+            byte b = window.get(p);
+            if (b == ':') {
+                if (!digit || ++part > 2) return GTFSFeed.NO_TIME;
+                seconds = (seconds + value) * 60;
+                value = 0;
+                digit = false;
+            } else if (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+                digit = true;
+                if (value > 100_000) return GTFSFeed.NO_TIME;
+            } else {
+                return GTFSFeed.NO_TIME;
+            }
+        }
+        return part == 2 && digit ? seconds + value : GTFSFeed.NO_TIME;
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public char getSeparator() {
+        return (char) separator;
+    }
+
+    public Map<String, Integer> getHeader() {
+        return header;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < fieldCount; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(get(i));
+        }
+        return sb.append(']').toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    /**
+     * Open-addressing table from a byte sequence of the mapped file to its decoded String.
+     */
+    private static final class ByteDictionary {
+        static final int MAX_SIZE = 1 << 20;
+
+        private byte[][] keys = new byte[1024][];
+        private String[] values = new String[1024];
+        private int[] hashes = new int[1024];
+        private int size = 0;
+
+        String lookup(MappedByteBuffer buffer, int start, int end) {
+            int length = end - start;
+            int hash = 1;
+            for (int i = start; i < end; i++) hash = 31 * hash + buffer.get(i);
+            hash ^= hash >>> 16;
+            int mask = keys.length - 1;
+            int slot = hash & mask;
+            while (keys[slot] != null) {
+                if (hashes[slot] == hash && matches(keys[slot], buffer, start, length)) return values[slot];
+                slot = (slot + 1) & mask;
+            }
+            byte[] key = new byte[length];
+            buffer.get(start, key);
+            String value = new String(key, StandardCharsets.UTF_8);
+            if (size >= MAX_SIZE) return value;   // dictionnaire plein : valeur non partagée
+            keys[slot] = key;
+            values[slot] = value;
+            hashes[slot] = hash;
+            if (++size * 2 > keys.length) grow();
+            return value;
+        }
+
+        private static boolean matches(byte[] key, MappedByteBuffer buffer, int start, int length) {
+            if (key.length != length) return false;
+            for (int i = 0; i < length; i++) {
+                if (key[i] != buffer.get(start + i)) return false;
+            }
+            return true;
+        }
+
+        private void grow() {
+            byte[][] oldKeys = keys;
+            String[] oldValues = values;
+            int[] oldHashes = hashes;
+            keys = new byte[oldKeys.length * 2][];
+            values = new String[oldKeys.length * 2];
+            hashes = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == null) continue;
+                int slot = oldHashes[i] & mask;
+                while (keys[slot] != null) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package gama.extension.GTFS;
+
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Summary of a feed, computed in one pass over the {@link GTFSFeed} and the {@link GTFSServiceCalendar}
+ * once they are loaded: service span, rows per table, trips per route and per route_type, stops per
+ * route_type, first and last departure. It covers all the trips of the feed, whatever the simulated date.
+ *
+ * @param startingDate First service date (null without calendar)
+ * @param endingDate Last service date (null without calendar)
+ * @param rowCounts Table name → rows loaded (shapes.txt only once its points have been read)
+ * @param tripsPerRoute route_id → number of trips
+ * @param tripsPerRouteType route_type → number of trips (-1 for trips of an unknown route or route_type)
+ * @param stopsPerRouteType route_type → number of stops served by at least one trip of that type
+ * @param firstDeparture Earliest departure time of stop_times.txt, in seconds (GTFSFeed.NO_TIME if none)
+ * @param lastDeparture Latest departure time, in seconds (may exceed 24:00:00)
+ */
+public record GTFSMetadata(LocalDate startingDate, LocalDate endingDate, Map<String, Long> rowCounts,
+        Map<String, Integer> tripsPerRoute, Map<Integer, Integer> tripsPerRouteType,
+        Map<Integer, Integer> stopsPerRouteType, int firstDeparture, int lastDeparture) {
+
+    public static GTFSMetadata build(GTFSFeed feed, GTFSServiceCalendar calendar) {
+        Map<String, Long> rowCounts = new LinkedHashMap<>();
+        int routeCount = 0;
+        for (int r = 0; r < feed.getRouteIds().size(); r++) {
+            if (feed.getRouteType(r) != GTFSFeed.NONE) routeCount++;
+        }
+        rowCounts.put("routes.txt", (long) routeCount);
+        rowCounts.put("trips.txt", (long) feed.getTripCount());
+        rowCounts.put("stop_times.txt",
+            (long) feed.getStopTimeRowCount() + feed.getUnknownTripRows() + feed.getInvalidSequenceRows());
+        rowCounts.put("stops.txt", feed.getStopRowCount());
+        if (feed.hasShapePoints()) rowCounts.put("shapes.txt", feed.getShapeRowCount());
+        if (calendar != null) {
+            rowCounts.put("calendar.txt", (long) calendar.getPeriodCount());
+            rowCounts.put("calendar_dates.txt", (long) calendar.getExceptionCount());
+        }
+
+        Map<String, Integer> tripsPerRoute = new LinkedHashMap<>();
+        Map<Integer, Integer> tripsPerRouteType = new TreeMap<>();
+        int firstDeparture = GTFSFeed.NO_TIME;
+        int lastDeparture = GTFSFeed.NO_TIME;
+        for (int t = 0; t < feed.getTripCount(); t++) {
+            int route = feed.getTripRoute(t);
+            tripsPerRoute.merge(feed.getRouteIds().get(route), 1, Integer::sum);
+            int type = feed.getRouteType(route);
+            tripsPerRouteType.merge(type < 0 ? GTFSFeed.NONE : type, 1, Integer::sum);
+            if (!feed.hasStopTimes()) continue;
+            for (int row = feed.getStopTimesStart(t); row < feed.getStopTimesEnd(t); row++) {
+                int departure = feed.getStopTimeDeparture(row);
+                if (departure == GTFSFeed.NO_TIME) continue;
+                if (firstDeparture == GTFSFeed.NO_TIME || departure < firstDeparture) firstDeparture = departure;
+                if (departure > lastDeparture) lastDeparture = departure;
+            }
+        }
+
+        // Types desservis par chaque stop (incidence stop -> trips)
+        Map<Integer, Integer> stopsPerRouteType = new TreeMap<>();
+        if (feed.hasStopTimes()) {
+            for (int s = 0; s < feed.getStopCount(); s++) {
+                BitSet types = new BitSet();
+                boolean unknown = false;
+                for (int i = feed.getStopTripsStart(s); i < feed.getStopTripsEnd(s); i++) {
+                    int type = feed.getRouteType(feed.getTripRoute(feed.getStopTrip(i)));
+                    if (type < 0) unknown = true;
+                    else types.set(type);
+                }
+                for (int type = types.nextSetBit(0); type >= 0; type = types.nextSetBit(type + 1)) {
+                    stopsPerRouteType.merge(type, 1, Integer::sum);
+                }
+                if (unknown) stopsPerRouteType.merge(GTFSFeed.NONE, 1, Integer::sum);
+            }
+        }
+
+        return new GTFSMetadata(calendar == null ? null : calendar.getStartingDate(),
+            calendar == null ? null : calendar.getEndingDate(), Collections.unmodifiableMap(rowCounts),
+            Collections.unmodifiableMap(tripsPerRoute), Collections.unmodifiableMap(tripsPerRouteType),
+            Collections.unmodifiableMap(stopsPerRouteType), firstDeparture, lastDeparture);
+    }
+
+    public int getTripCount(int routeType) {
+        return tripsPerRouteType.getOrDefault(routeType, 0);
+    }
+
+    public int getStopCount(int routeType) {
+        return stopsPerRouteType.getOrDefault(routeType, 0);
+    }
+}
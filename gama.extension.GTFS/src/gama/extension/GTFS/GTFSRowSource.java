@@ -0,0 +1,67 @@
+package gama.extension.GTFS;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Cursor over the rows of one GTFS table, implemented by the streaming reader (GTFSTableReader)
+ * and by the memory-mapped byte reader (GTFSMappedTableReader).
+ */
+public interface GTFSRowSource extends Closeable {
+
+    /**
+     * Finds the index of a column among several possible names (case insensitive).
+     *
+     * @return The index if found, otherwise null
+     */
+    Integer column(String... possibleNames);
+
+    /**
+     * Declares the only columns the caller will read (column projection): the other fields of the next
+     * rows may be skipped by the tokenizer and read as "". Names of absent columns are ignored.
+     */
+    default void select(String... columnNames) {
+    }
+
+    /**
+     * Advances to the next non blank record.
+     *
+     * @return false when the end of the table is reached
+     */
+    boolean next() throws IOException;
+
+    /** Raw value of a field of the current row ("" if the row is shorter). */
+    String get(int index);
+
+    /** true if a field of the current row is empty or only made of spaces. */
+    default boolean isBlank(int index) {
+        return get(index).isBlank();
+    }
+
+    /** Identifier value of a field of the current row: trimmed, without quotes nor apostrophes. */
+    default String id(int index) {
+        return GTFSTableReader.cleanId(get(index));
+    }
+
+    /** Integer value of a field of the current row. */
+    default int getInt(int index) {
+        return Integer.parseInt(get(index).trim());
+    }
+
+    /** Decimal value of a field of the current row. */
+    default double getDouble(int index) {
+        return Double.parseDouble(get(index));
+    }
+
+    /**
+     * Time value (H:MM:SS) of a field of the current row, in seconds since the start of the service day.
+     *
+     * @return The number of seconds, or GTFSFeed.NO_TIME if the field is empty or malformed
+     */
+    default int getTimeSeconds(int index) {
+        return GTFSFeed.parseTime(get(index));
+    }
+
+    /** Number of data rows returned so far by {@link #next()}. */
+    long getRowCount();
+}
@@ -0,0 +1,213 @@
+package gama.extension.GTFS;
+
+import java.io.IOException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Service days of a feed, indexed once from calendar.txt and calendar_dates.txt.
+ *
+ * Each service_id gets a bitset over the date span of the feed (bit i = i days after
+ * {@link #getStartingDate()}): the weekdays of its calendar.txt periods, then the calendar_dates.txt
+ * exceptions in file order (1 adds the day, 2 removes it). Testing whether a service runs on a date is
+ * then a single bit lookup, whatever the number of calendar rows.
+ */
+public final class GTFSServiceCalendar {
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private record Period(String serviceId, LocalDate start, LocalDate end, boolean[] days) {}
+
+    private record DateException(String serviceId, LocalDate date, int type) {}
+
+    private LocalDate startingDate;   // first date of the feed (start_date or exception date)
+    private LocalDate endingDate;     // last date of the feed (end_date or exception date)
+    private final Map<String, BitSet> serviceDays = new HashMap<>();
+    private final BitSet coveredDays = new BitSet();                    // days of a period or of an exception
+    private final LocalDate[] firstDayOfWeek = new LocalDate[7];        // first covered day, per weekday
+    private int periodCount = 0;      // rows of calendar.txt
+    private int exceptionCount = 0;   // rows of calendar_dates.txt
+
+    private GTFSServiceCalendar() {}
+
+    /**
+     * Builds the index. Malformed rows are counted in the load report and skipped.
+     *
+     * @param calendar Reader on calendar.txt, or null if absent
+     * @param calendarDates Reader on calendar_dates.txt, or null if absent
+     * @param report Load report of the feed
+     */
+    public static GTFSServiceCalendar build(GTFSRowSource calendar, GTFSRowSource calendarDates, GTFSLoadReport report) throws IOException {
+        GTFSServiceCalendar index = new GTFSServiceCalendar();
+        List<Period> periods = calendar == null ? List.of() : readPeriods(calendar, report);
+        List<DateException> exceptions = calendarDates == null ? List.of() : readExceptions(calendarDates, report);
+        index.periodCount = periods.size();
+        index.exceptionCount = exceptions.size();
+
+        for (Period p : periods) {
+            if (index.startingDate == null || p.start.isBefore(index.startingDate)) index.startingDate = p.start;
+            if (index.endingDate == null || p.end.isAfter(index.endingDate)) index.endingDate = p.end;
+        }
+        for (DateException e : exceptions) {
+            if (index.startingDate == null || e.date.isBefore(index.startingDate)) index.startingDate = e.date;
+            if (index.endingDate == null || e.date.isAfter(index.endingDate)) index.endingDate = e.date;
+        }
+        if (index.startingDate == null) return index;
+
+        for (Period p : periods) {
+            if (p.end.isBefore(p.start)) continue;
+            int first = index.dayIndex(p.start);
+            int last = index.dayIndex(p.end);
+            index.coveredDays.set(first, last + 1);
+            if (p.serviceId == null) continue;
+            BitSet days = index.serviceDays.computeIfAbsent(p.serviceId, id -> new BitSet());
+            int weekday = p.start.getDayOfWeek().getValue() - 1;
+            for (int day = first; day <= last; day++, weekday = (weekday + 1) % 7) {
+                if (p.days[weekday]) days.set(day);
+            }
+        }
+        for (DateException e : exceptions) {
+            int day = index.dayIndex(e.date);
+            index.coveredDays.set(day);
+            if (e.type == 1) index.serviceDays.computeIfAbsent(e.serviceId, id -> new BitSet()).set(day);
+            else if (e.type == 2 && index.serviceDays.containsKey(e.serviceId)) index.serviceDays.get(e.serviceId).clear(day);
+        }
+
+        int found = 0;
+        for (int day = index.coveredDays.nextSetBit(0); day >= 0 && found < 7; day = index.coveredDays.nextSetBit(day + 1)) {
+            LocalDate date = index.startingDate.plusDays(day);
+            int weekday = date.getDayOfWeek().getValue() - 1;
+            if (index.firstDayOfWeek[weekday] == null) {
+                index.firstDayOfWeek[weekday] = date;
+                found++;
+            }
+        }
+        return index;
+    }
+
+    private static List<Period> readPeriods(GTFSRowSource table, GTFSLoadReport report) throws IOException {
+        List<Period> periods = new ArrayList<>();
+        Integer serviceIdx = table.column("service_id");
+        Integer startIdx = table.column("start_date");
+        Integer endIdx = table.column("end_date");
+        if (startIdx == null || endIdx == null) {
+            GTFSLog.error("❌ [ERROR] start_date or end_date column missing in calendar.txt!");
+            return periods;
+        }
+        if (serviceIdx == null) GTFSLog.error("❌ [ERROR] service_id column missing in calendar.txt!");
+        Integer[] dayIdx = new Integer[7];
+        for (DayOfWeek d : DayOfWeek.values()) dayIdx[d.getValue() - 1] = table.column(d.toString().toLowerCase());
+
+        while (table.next()) {
+            try {
+                LocalDate start = LocalDate.parse(table.get(startIdx), FORMATTER);
+                LocalDate end = LocalDate.parse(table.get(endIdx), FORMATTER);
+                boolean[] days = new boolean[7];
+                for (int d = 0; d < 7; d++) days[d] = dayIdx[d] != null && table.get(dayIdx[d]).equals("1");
+                String serviceId = serviceIdx == null ? null : table.get(serviceIdx).trim().replace("\"", "");
+                periods.add(new Period(serviceId, start, end, days));
+            } catch (RuntimeException e) {
+                report.problem("calendar.txt: invalid row", table + " -> " + e.getMessage());
+            }
+        }
+        return periods;
+    }
+
+    private static List<DateException> readExceptions(GTFSRowSource table, GTFSLoadReport report) throws IOException {
+        List<DateException> exceptions = new ArrayList<>();
+        Integer serviceIdx = table.column("service_id");
+        Integer dateIdx = table.column("date");
+        Integer typeIdx = table.column("exception_type");
+        if (dateIdx == null) {
+            GTFSLog.error("❌ [ERROR] date column missing in calendar_dates.txt!");
+            return exceptions;
+        }
+        if (serviceIdx == null || typeIdx == null) {
+            GTFSLog.error("❌ [ERROR] service_id or exception_type column missing in calendar_dates.txt!");
+        }
+
+        while (table.next()) {
+            try {
+                LocalDate date = LocalDate.parse(table.get(dateIdx), FORMATTER);
+                int type = 0; // date seule : couvre le jour sans modifier de service
+                String serviceId = null;
+                if (serviceIdx != null && typeIdx != null) {
+                    try {
+                        type = Integer.parseInt(table.get(typeIdx));
+                        serviceId = table.get(serviceIdx).trim().replace("\"", "");
+                    } catch (NumberFormatException e) {
+                        report.problem("calendar_dates.txt: invalid exception_type", table + " -> " + e.getMessage());
+                    }
+                }
+                exceptions.add(new DateException(serviceId, date, type));
+            } catch (RuntimeException e) {
+                report.problem("calendar_dates.txt: invalid date", table + " -> " + e.getMessage());
+            }
+        }
+        return exceptions;
+    }
+
+    /** First date of the feed (earliest start_date or exception date), or null if there is none. */
+    public LocalDate getStartingDate() {
+        return startingDate;
+    }
+
+    /** Last date of the feed (latest end_date or exception date), or null if there is none. */
+    public LocalDate getEndingDate() {
+        return endingDate;
+    }
+
+    public int getServiceCount() {
+        return serviceDays.size();
+    }
+
+    /** Number of valid rows of calendar.txt. */
+    public int getPeriodCount() {
+        return periodCount;
+    }
+
+    /** Number of valid rows of calendar_dates.txt. */
+    public int getExceptionCount() {
+        return exceptionCount;
+    }
+
+    /**
+     * @return The index of the date in the service bitsets, or -1 if it is outside of the feed span
+     */
+    public int dayIndex(LocalDate date) {
+        if (startingDate == null || date.isBefore(startingDate) || date.isAfter(endingDate)) return -1;
+        return (int) ChronoUnit.DAYS.between(startingDate, date);
+    }
+
+    /**
+     * Days a service runs on (indexed by {@link #dayIndex}).
+     *
+     * @return The bitset, or null if the service appears in no calendar table
+     */
+    public BitSet getServiceDays(String serviceId) {
+        return serviceDays.get(serviceId);
+    }
+
+    public boolean isActive(String serviceId, LocalDate date) {
+        int day = dayIndex(date);
+        BitSet days = serviceDays.get(serviceId);
+        return day >= 0 && days != null && days.get(day);
+    }
+
+    /**
+     * Earliest date of the feed (in a calendar.txt period or in calendar_dates.txt) falling on the same
+     * day of the week as the given date.
+     *
+     * @return The date, or null if the feed has no such day
+     */
+    public LocalDate firstDateWithSameWeekDay(LocalDate date) {
+        return firstDayOfWeek[date.getDayOfWeek().getValue() - 1];
+    }
+}
@@ -0,0 +1,107 @@
+package gama.extension.GTFS;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.linearref.LengthIndexedLine;
+
+import gama.core.metamodel.shape.GamaPoint;
+
+/**
+ * Position of the stops of each trip along its shape (linear referencing), for the feeds whose
+ * stop_times.txt has no shape_dist_traveled.
+ *
+ * Distances are measured in the GAMA CRS along the projected shape points, from its first point. The
+ * stops of a trip are projected in stop_sequence order, each one after the previous (so a shape passing
+ * twice near a stop is handled). The result only depends on the shape and on the journey pattern (stop
+ * sequence) of the trip: it is computed once per pair and shared by all the trips of that pattern. The shapes are only
+ * requested when the first trip is projected.
+ */
+public final class GTFSShapeReferencing {
+
+    private static final GeometryFactory FACTORY = new GeometryFactory();
+
+    private final GTFSFeed feed;
+    private final Supplier<Map<String, TransportShape>> shapeLoader;
+    private volatile Map<String, TransportShape> shapes;
+    private final TransportStop[] stopsByIndex;
+    private final Map<String, LengthIndexedLine> lines = new ConcurrentHashMap<>();
+    private final Map<Long, double[]> stopDistances = new ConcurrentHashMap<>();   // shape << 32 | journey pattern
+
+    /**
+     * @param feed The feed the trips belong to
+     * @param shapeLoader Gives the shapes by shape id (from shapes.txt, or built from the stops without it)
+     * @param stopsByIndex The stops, by stop int of the feed
+     */
+    public GTFSShapeReferencing(GTFSFeed feed, Supplier<Map<String, TransportShape>> shapeLoader, TransportStop[] stopsByIndex) {
+        this.feed = feed;
+        this.shapeLoader = shapeLoader;
+        this.stopsByIndex = stopsByIndex;
+    }
+
+    private Map<String, TransportShape> shapes() {
+        Map<String, TransportShape> loaded = shapes;
+        if (loaded == null) shapes = loaded = shapeLoader.get();
+        return loaded;
+    }
+
+    /**
+     * Distance along its shape of each stop of a trip, in stop_sequence order.
+     *
+     * @return The distances, or null if the trip has no shape with at least two points
+     */
+    public double[] getStopDistances(int trip) {
+        Map<String, TransportShape> shapes = shapes(); // may assign the shapes of the trips without shape_id
+        int shape = feed.getTripShape(trip);
+        int pattern = feed.getTripPattern(trip);
+        if (shape == GTFSFeed.NONE || pattern == GTFSFeed.NONE) return null;
+        LengthIndexedLine line = getLine(shapes, feed.getShapeIds().get(shape));
+        if (line == null) return null;
+        return stopDistances.computeIfAbsent((long) shape << 32 | pattern, key -> project(line, pattern));
+    }
+
+    /**
+     * Cumulative distance of each point of a shape from its first point.
+     *
+     * @return The distances, or null if the shape is unknown
+     */
+    public double[] getVertexDistances(String shapeId) {
+        TransportShape shape = shapes().get(shapeId);
+        return shape == null ? null : shape.getCumulativeDistances();
+    }
+
+    private LengthIndexedLine getLine(Map<String, TransportShape> shapes, String shapeId) {
+        TransportShape shape = shapes.get(shapeId);
+        if (shape == null || shape.getPointCount() < 2) return null;
+        // Une ligne par géométrie : les shape_id dupliqués partagent celle de leur shape canonique
+        String geometryId = shape.getCanonicalShape().getShapeId();
+        LengthIndexedLine line = lines.get(geometryId);
+        if (line != null) return line;
+        double[] xy = shape.getCoordinates();
+        Coordinate[] coordinates = new Coordinate[shape.getPointCount()];
+        for (int i = 0; i < coordinates.length; i++) coordinates[i] = new Coordinate(xy[2 * i], xy[2 * i + 1]);
+        LineString lineString = FACTORY.createLineString(coordinates);
+        line = new LengthIndexedLine(lineString);
+        lines.putIfAbsent(geometryId, line);
+        return line;
+    }
+
+    private double[] project(LengthIndexedLine line, int pattern) {
+        int start = feed.getPatternStopsStart(pattern);
+        double[] distances = new double[feed.getPatternStopsEnd(pattern) - start];
+        double previous = line.getStartIndex();
+        for (int i = 0; i < distances.length; i++) {
+            TransportStop stop = stopsByIndex[feed.getPatternStop(start + i)];
+            if (stop != null && stop.getLocation() != null) {
+                GamaPoint location = stop.getLocation();
+                previous = line.indexOfAfter(new Coordinate(location.getX(), location.getY()), previous);
+            }
+            distances[i] = previous;
+        }
+        return distances;
+    }
+}
@@ -0,0 +1,343 @@
+package gama.extension.GTFS;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Versioned binary snapshot of a parsed {@link GTFSFeed}.
+ *
+ * The snapshot holds the feed as it is after parsing, before any projection or date filtering, so it can
+ * be reused by every model opening the same feed. The points of shapes.txt are only part of it once they
+ * have been requested: the snapshot is then written again with them. It is keyed by the size, modification
+ * time and a sampled hash (CRC32C of the start, middle and end) of the tables it was built from, or by the
+ * CRC-32 stored in a zip archive: opening a feed never reads the whole of stop_times.txt or shapes.txt to
+ * check the snapshot, and any rewrite of a table (new modification time) invalidates it.
+ *
+ * By default the snapshot is written in the feed directory (".gtfs.snapshot"), or next to the archive for
+ * a zipped feed ("feed.zip.snapshot"). It can be redirected to a cache directory with
+ * -Dgtfs.snapshot.dir=... and disabled with -Dgtfs.snapshot=false.
+ */
+public final class GTFSSnapshot {
+
+    /** Tables the snapshot is built from. */
+    static final String[] SOURCE_FILES = { "routes.txt", "trips.txt", "stop_times.txt", "stops.txt", "shapes.txt" };
+
+    private static final int MAGIC = 0x47544653; // "GTFS"
+    private static final int VERSION = 7;
+    private static final String FILE_NAME = ".gtfs.snapshot";
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final long HASH_WINDOW = 1L << 28;
+    private static final int SAMPLE_SIZE = 1 << 16;
+
+    private static volatile boolean enabled = !"false".equalsIgnoreCase(System.getProperty("gtfs.snapshot"));
+
+    private GTFSSnapshot() {}
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Enables or disables the snapshot cache for the next GTFS files loaded. */
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    /**
+     * Location of the snapshot of a feed: in the directory given by -Dgtfs.snapshot.dir if set (one file
+     * per feed path), next to the tables otherwise.
+     */
+    public static File locate(File feed) {
+        String cacheDir = System.getProperty("gtfs.snapshot.dir");
+        if (cacheDir == null || cacheDir.isBlank()) {
+            return feed.isDirectory() ? new File(feed, FILE_NAME) : new File(feed.getPath() + ".snapshot");
+        }
+        String path = feed.getAbsolutePath();
+        return new File(cacheDir, feed.getName() + "-" + Integer.toHexString(path.hashCode()) + ".snapshot");
+    }
+
+    /**
+     * Computes the key of the source tables: name, size, modification time and checksum of each of them
+     * (sampled CRC32C for files, the stored CRC-32 for zip entries).
+     *
+     * @param source The tables of the feed
+     */
+    public static String key(GTFSSource source) throws IOException {
+        StringBuilder key = new StringBuilder("v").append(VERSION);
+        for (String name : SOURCE_FILES) {
+            String fingerprint = source.fingerprint(name);
+            key.append('|').append(name).append(':').append(fingerprint == null ? "-" : fingerprint);
+        }
+        return key.toString();
+    }
+
+    /**
+     * CRC32C of three samples of a file (start, middle and end, {@value #SAMPLE_SIZE} bytes each): the whole
+     * file for the small tables, a few reads for the large ones.
+     */
+    static long sampleHash(File file) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= 3L * SAMPLE_SIZE) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+                return crc.getValue();
+            }
+            ByteBuffer sample = ByteBuffer.allocate(SAMPLE_SIZE);
+            for (long offset : new long[] { 0, (size - SAMPLE_SIZE) / 2, size - SAMPLE_SIZE }) {
+                sample.clear();
+                while (sample.hasRemaining() && channel.read(sample, offset + sample.position()) > 0) {}
+                sample.flip();
+                crc.update(sample);
+            }
+        }
+        return crc.getValue();
+    }
+
+    static long hash(File file) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long offset = 0; offset < size; offset += HASH_WINDOW) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(HASH_WINDOW, size - offset));
+                crc.update(window);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Reads a snapshot.
+     *
+     * @return The feed, or null if there is no snapshot or if it was built from other tables
+     */
+    public static GTFSFeed read(File snapshot, String key) {
+        if (!snapshot.isFile()) return null;
+        try (Input in = new Input(snapshot)) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !key.equals(in.readString())) {
+                GTFSLog.info("[INFO] GTFS snapshot " + snapshot + " is outdated, the tables are parsed again.");
+                return null;
+            }
+            GTFSFeed feed = GTFSFeed.read(in);
+            if (in.readInt() != MAGIC) throw new IOException("truncated snapshot");
+            return feed;
+        } catch (IOException | RuntimeException e) {
+            GTFSLog.warning("[WARNING] Unreadable GTFS snapshot " + snapshot + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes a snapshot (through a temporary file of its own, so a concurrent reader never sees a partial
+     * one and concurrent writers never share one). A failure is only reported: the snapshot is an
+     * optimisation.
+     */
+    public static void write(File snapshot, String key, GTFSFeed feed) {
+        File tmp = null;
+        try {
+            // Created next to the snapshot, so that the move stays on the same file system
+            File dir = snapshot.getAbsoluteFile().getParentFile();
+            Files.createDirectories(dir.toPath());
+            tmp = Files.createTempFile(dir.toPath(), snapshot.getName(), ".tmp").toFile();
+            try (Output out = new Output(tmp)) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeString(key);
+                feed.write(out);
+                out.writeInt(MAGIC);
+            }
+            Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            GTFSLog.info("[INFO] GTFS snapshot written: " + snapshot + " (" + snapshot.length() + " bytes)");
+        } catch (IOException | RuntimeException e) {
+            if (tmp != null) tmp.delete();
+            GTFSLog.warning("[WARNING] Could not write GTFS snapshot " + snapshot + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Buffered binary writer.
+     */
+    static final class Output implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Output(File file) throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        void writeInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void writeBoolean(boolean value) throws IOException {
+            writeInt(value ? 1 : 0);
+        }
+
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            for (int offset = 0; offset < bytes.length;) {
+                ensure(1);
+                int n = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, n);
+                offset += n;
+            }
+        }
+
+        void writeStrings(String[] values, int length) throws IOException {
+            writeInt(length);
+            for (int i = 0; i < length; i++) writeString(values[i]);
+        }
+
+        void writeInts(int[] values, int length) throws IOException {
+            writeInt(length);
+            for (int offset = 0; offset < length;) {
+                ensure(4);
+                int n = Math.min(buffer.remaining() / 4, length - offset);
+                buffer.asIntBuffer().put(values, offset, n);
+                buffer.position(buffer.position() + n * 4);
+                offset += n;
+            }
+        }
+
+        void writeDoubles(double[] values, int length) throws IOException {
+            writeInt(length);
+            for (int offset = 0; offset < length;) {
+                ensure(8);
+                int n = Math.min(buffer.remaining() / 8, length - offset);
+                buffer.asDoubleBuffer().put(values, offset, n);
+                buffer.position(buffer.position() + n * 8);
+                offset += n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Buffered binary reader, counterpart of {@link Output}.
+     */
+    static final class Input implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Input(File file) throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            buffer.flip();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) return;
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) throw new EOFException("truncated snapshot");
+            }
+            buffer.flip();
+        }
+
+        int readInt() throws IOException {
+            ensure(4);
+            return buffer.getInt();
+        }
+
+        long readLong() throws IOException {
+            ensure(8);
+            return buffer.getLong();
+        }
+
+        boolean readBoolean() throws IOException {
+            return readInt() != 0;
+        }
+
+        private int readLength() throws IOException {
+            int length = readInt();
+            if (length < 0) throw new IOException("corrupted snapshot");
+            return length;
+        }
+
+        String readString() throws IOException {
+            int length = readInt();
+            if (length < 0) return null;
+            byte[] bytes = new byte[length];
+            for (int offset = 0; offset < length;) {
+                ensure(1);
+                int n = Math.min(buffer.remaining(), length - offset);
+                buffer.get(bytes, offset, n);
+                offset += n;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        String[] readStrings() throws IOException {
+            String[] values = new String[readLength()];
+            for (int i = 0; i < values.length; i++) values[i] = readString();
+            return values;
+        }
+
+        int[] readInts() throws IOException {
+            int[] values = new int[readLength()];
+            for (int offset = 0; offset < values.length;) {
+                ensure(4);
+                int n = Math.min(buffer.remaining() / 4, values.length - offset);
+                buffer.asIntBuffer().get(values, offset, n);
+                buffer.position(buffer.position() + n * 4);
+                offset += n;
+            }
+            return values;
+        }
+
+        double[] readDoubles() throws IOException {
+            double[] values = new double[readLength()];
+            for (int offset = 0; offset < values.length;) {
+                ensure(8);
+                int n = Math.min(buffer.remaining() / 8, values.length - offset);
+                buffer.asDoubleBuffer().get(values, offset, n);
+                buffer.position(buffer.position() + n * 8);
+                offset += n;
+            }
+            return values;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
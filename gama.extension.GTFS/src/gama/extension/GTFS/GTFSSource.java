@@ -0,0 +1,186 @@
+package gama.extension.GTFS;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The tables of a GTFS feed, read either from a directory or directly from a .zip archive (no
+ * extraction). Tables are looked up by file name ("stops.txt"); in an archive they may sit at the root or
+ * in a sub-folder, the first entry with a given name wins.
+ *
+ * Zip entries can be opened concurrently: each call to {@link #open(String)} returns an independent stream.
+ */
+public abstract class GTFSSource implements Closeable {
+
+    private final File path;
+
+    private GTFSSource(File path) {
+        this.path = path;
+    }
+
+    /**
+     * Opens the tables of a feed.
+     *
+     * @param path A directory or a .zip archive
+     * @throws IOException If the path is neither a directory nor a readable zip archive
+     */
+    public static GTFSSource open(File path) throws IOException {
+        if (path.isDirectory()) return new Directory(path);
+        if (path.isFile() && isArchive(path)) return new Archive(path);
+        throw new IOException(path.getAbsolutePath() + " is neither a directory nor a .zip archive.");
+    }
+
+    /** True if the file is a zip archive (by extension). */
+    public static boolean isArchive(File path) {
+        return path.getName().toLowerCase().endsWith(".zip");
+    }
+
+    public File getPath() {
+        return path;
+    }
+
+    /** Names of the ".txt" tables of the feed. */
+    public abstract Set<String> tableNames();
+
+    public boolean has(String tableName) {
+        return tableNames().contains(tableName);
+    }
+
+    /**
+     * Opens a table as a byte stream.
+     *
+     * @return The stream, or null if the table is not present
+     */
+    public abstract InputStream open(String tableName) throws IOException;
+
+    /**
+     * Returns the table as a plain file, for the readers that need random access (memory mapping).
+     *
+     * @return The file, or null if the table is not present or is inside an archive
+     */
+    public File file(String tableName) {
+        return null;
+    }
+
+    /**
+     * Identifies a table cheaply, without reading all of it: size, modification time and a checksum (sampled
+     * for files, the one stored in the archive for zip entries).
+     *
+     * @return The fingerprint, or null if the table is not present
+     */
+    public abstract String fingerprint(String tableName) throws IOException;
+
+    /**
+     * Identifies the content of a table only (size and checksum): a table written again with the same
+     * rows keeps its content fingerprint.
+     *
+     * @return The fingerprint, or null if the table is not present
+     */
+    public abstract String contentFingerprint(String tableName) throws IOException;
+
+    /** Feed in a directory. */
+    private static final class Directory extends GTFSSource {
+        private final Map<String, File> tables = new LinkedHashMap<>();
+
+        Directory(File path) {
+            super(path);
+            File[] files = path.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (file.isFile() && file.getName().endsWith(".txt")) tables.put(file.getName(), file);
+                }
+            }
+        }
+
+        @Override
+        public Set<String> tableNames() {
+            return tables.keySet();
+        }
+
+        @Override
+        public InputStream open(String tableName) throws IOException {
+            File file = tables.get(tableName);
+            return file == null ? null : new FileInputStream(file);
+        }
+
+        @Override
+        public File file(String tableName) {
+            return tables.get(tableName);
+        }
+
+        @Override
+        public String fingerprint(String tableName) throws IOException {
+            File file = tables.get(tableName);
+            if (file == null) return null;
+            return file.length() + ":" + file.lastModified() + ":" + Long.toHexString(GTFSSnapshot.sampleHash(file));
+        }
+
+        @Override
+        public String contentFingerprint(String tableName) throws IOException {
+            File file = tables.get(tableName);
+            if (file == null) return null;
+            return file.length() + ":" + Long.toHexString(GTFSSnapshot.hash(file));
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    /** Feed in a zip archive: entries are inflated on the fly. */
+    private static final class Archive extends GTFSSource {
+        private final ZipFile zip;
+        private final Map<String, ZipEntry> tables = new LinkedHashMap<>();
+
+        Archive(File path) throws IOException {
+            super(path);
+            zip = new ZipFile(path);
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory() || name.startsWith("__MACOSX/")) continue;
+                String baseName = name.substring(name.lastIndexOf('/') + 1);
+                if (baseName.endsWith(".txt") && !baseName.startsWith("._")) tables.putIfAbsent(baseName, entry);
+            }
+        }
+
+        @Override
+        public Set<String> tableNames() {
+            return tables.keySet();
+        }
+
+        @Override
+        public InputStream open(String tableName) throws IOException {
+            ZipEntry entry = tables.get(tableName);
+            return entry == null ? null : zip.getInputStream(entry);
+        }
+
+        @Override
+        public String fingerprint(String tableName) {
+            ZipEntry entry = tables.get(tableName);
+            if (entry == null) return null;
+            // Le CRC-32 est stocké dans l'archive : pas besoin de décompresser l'entrée
+            return entry.getSize() + ":" + entry.getTime() + ":" + Long.toHexString(entry.getCrc());
+        }
+
+        @Override
+        public String contentFingerprint(String tableName) {
+            ZipEntry entry = tables.get(tableName);
+            return entry == null ? null : entry.getSize() + ":" + Long.toHexString(entry.getCrc());
+        }
+
+        @Override
+        public void close() throws IOException {
+            zip.close();
+        }
+    }
+}
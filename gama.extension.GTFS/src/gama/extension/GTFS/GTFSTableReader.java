@@ -0,0 +1,284 @@
+package gama.extension.GTFS;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Single-pass streaming reader for one GTFS table (a CSV ".txt" file).
+ *
+ * The reader works like a cursor: the header is parsed when the table is opened, then each call to
+ * {@link #next()} tokenizes exactly one record into a reusable field array. Nothing is retained between
+ * rows, so callers must copy the values they want to keep.
+ *
+ * Supported input: UTF-8 with or without BOM, ',' ';' or tab separator (detected on the header line),
+ * double-quoted fields with "" escapes and embedded separators or line breaks, LF / CRLF / CR line endings.
+ * Short rows are padded with empty strings up to the header width and fully blank rows are skipped.
+ *
+ * With {@link #select}, only the selected columns are decoded: the characters of the other fields are
+ * scanned (to find the field boundaries) but never copied, and these fields read as "".
+ */
+public class GTFSTableReader implements GTFSRowSource {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final String tableName;
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int pos = 0;
+    private int limit = 0;
+
+    private char separator = ',';
+    private final Map<String, Integer> header = new HashMap<>();
+    private int headerWidth = 0;
+
+    private String[] fields = new String[16];
+    private int fieldCount = 0;
+    private final StringBuilder field = new StringBuilder(64);
+    private boolean[] selected;       // columns decoded (null: all)
+    private boolean keepField = true; // current field is decoded
+    private boolean blankRecord;      // no visible character in the current record so far
+    private long rowCount = 0;
+
+    /**
+     * Opens a GTFS table and parses its header.
+     *
+     * @param file The table file (e.g. stop_times.txt)
+     * @throws IOException If the file cannot be read
+     */
+    public GTFSTableReader(File file) throws IOException {
+        if (!file.isFile()) {
+            throw new IOException(file.getAbsolutePath() + " is not a valid file.");
+        }
+        this.tableName = file.getName();
+        this.reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+        readHeader();
+    }
+
+    /**
+     * Opens a GTFS table from a stream (e.g. a zip entry) and parses its header. The stream is closed
+     * with the reader.
+     *
+     * @param tableName The table file name (e.g. stop_times.txt)
+     * @param in The table content
+     * @throws IOException If the stream cannot be read
+     */
+    public GTFSTableReader(String tableName, InputStream in) throws IOException {
+        this.tableName = tableName;
+        this.reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+        readHeader();
+    }
+
+    private void readHeader() throws IOException {
+        if (fill() && buffer[pos] == '\uFEFF') pos++;
+        separator = sniffSeparator();
+        while (readRecord()) {
+            if (fieldCount == 1 && fields[0].trim().isEmpty()) continue;
+            for (int i = 0; i < fieldCount; i++) {
+                String col = fields[i].trim().replace("\uFEFF", "").toLowerCase();
+                header.put(col, i);
+            }
+            headerWidth = header.size();
+            return;
+        }
+    }
+
+    /**
+     * Looks at the first non blank line in the buffer and picks the separator that appears the most
+     * outside quotes (comma on ties).
+     */
+    private char sniffSeparator() throws IOException {
+        if (!fill()) return ',';
+        int commas = 0, semicolons = 0, tabs = 0;
+        boolean inQuotes = false;
+        for (int i = pos; i < limit; i++) {
+            char c = buffer[i];
+            if (c == '"') inQuotes = !inQuotes;
+            if (inQuotes) continue;
+            if (c == '\n' || c == '\r') {
+                if (commas + semicolons + tabs > 0) break;
+                continue;
+            }
+            if (c == ',') commas++;
+            else if (c == ';') semicolons++;
+            else if (c == '\t') tabs++;
+        }
+        if (tabs > commas && tabs > semicolons) return '\t';
+        if (semicolons > commas) return ';';
+        return ',';
+    }
+
+    @Override
+    public void select(String... columnNames) {
+        selected = new boolean[headerWidth];
+        for (String name : columnNames) {
+            Integer idx = header.get(name.trim().toLowerCase());
+            if (idx != null && idx < headerWidth) selected[idx] = true;
+        }
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        while (readRecord()) {
+            if (blankRecord) continue;
+            if (fieldCount < headerWidth) {
+                ensureCapacity(headerWidth);
+                for (int i = fieldCount; i < headerWidth; i++) fields[i] = "";
+                fieldCount = headerWidth;
+            }
+            rowCount++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean readRecord() throws IOException {
+        fieldCount = 0;
+        field.setLength(0);
+        blankRecord = true;
+        if (!fill()) return false;
+        startField();
+        boolean inQuotes = false;
+        boolean fieldStart = true;
+        while (true) {
+            if (pos >= limit && !fill()) {
+                endField();
+                return true;
+            }
+            char c = buffer[pos++];
+            if (inQuotes) {
+                if (c == '"') {
+                    if (peek() == '"') {
+                        append('"');
+                        pos++;
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    append(c);
+                }
+            } else if (c == separator) {
+                endField();
+                fieldStart = true;
+                continue;
+            } else if (c == '\n') {
+                endField();
+                return true;
+            } else if (c == '\r') {
+                if (peek() == '\n') pos++;
+                endField();
+                return true;
+            } else if (c == '"' && fieldStart) {
+                inQuotes = true;
+            } else {
+                append(c);
+            }
+            fieldStart = false;
+        }
+    }
+
+    private void append(char c) {
+        if (blankRecord && !Character.isWhitespace(c)) blankRecord = false;
+        if (keepField) field.append(c);
+    }
+
+    private void startField() {
+        keepField = selected == null || fieldCount < selected.length && selected[fieldCount];
+    }
+
+    private void endField() {
+        ensureCapacity(fieldCount + 1);
+        fields[fieldCount++] = keepField ? field.toString() : "";
+        field.setLength(0);
+        startField();
+    }
+
+    private void ensureCapacity(int size) {
+        if (fields.length < size) fields = Arrays.copyOf(fields, Math.max(size, fields.length * 2));
+    }
+
+    private int peek() throws IOException {
+        if (pos >= limit && !fill()) return -1;
+        return buffer[pos];
+    }
+
+    private boolean fill() throws IOException {
+        if (pos < limit) return true;
+        int n = reader.read(buffer, 0, buffer.length);
+        pos = 0;
+        limit = Math.max(n, 0);
+        return n > 0;
+    }
+
+    @Override
+    public Integer column(String... possibleNames) {
+        for (String name : possibleNames) {
+            Integer idx = header.get(name.trim().toLowerCase());
+            if (idx != null) return idx;
+        }
+        return null;
+    }
+
+    @Override
+    public String get(int index) {
+        return index < fieldCount ? fields[index] : "";
+    }
+
+    @Override
+    public String id(int index) {
+        return cleanId(get(index));
+    }
+
+    /** Trims an identifier and removes the quotes and apostrophes it may contain. */
+    public static String cleanId(String raw) {
+        String s = raw.trim();
+        if (s.indexOf('"') >= 0) s = s.replace("\"", "");
+        if (s.indexOf('\'') >= 0) s = s.replace("'", "");
+        return s;
+    }
+
+    /** Number of fields of the current row. */
+    public int size() {
+        return fieldCount;
+    }
+
+    /** Copy of the current row, for the few tables that are kept in memory and for error messages. */
+    public String[] currentRow() {
+        return Arrays.copyOf(fields, fieldCount);
+    }
+
+    /** Column name → index map (lower case names). */
+    public Map<String, Integer> getHeader() {
+        return header;
+    }
+
+    public char getSeparator() {
+        return separator;
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(currentRow());
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,126 @@
+package gama.extension.GTFS;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Departures of one service day: the trips running that day according to the service calendar, each with
+ * its first stop and first departure time, sorted by departure time. Times are in seconds after midnight
+ * of the service day and, as in stop_times.txt, exceed 24:00:00 for trips leaving after midnight.
+ *
+ * Trips sharing their first stop, departure and stop sequence are kept once (the first one in trips.txt),
+ * as in the departures computed by GTFS_reader. As there too, a day on which no trip runs (e.g. outside
+ * the period of the feed) uses the trips of the first day of the feed falling on the same day of the week.
+ * A timetable is immutable once built.
+ */
+public final class GTFSTimetable {
+
+    /** One departure: a trip leaving its first stop, on a calendar date and time. */
+    public record Departure(LocalDate serviceDay, int trip, int stop, int time) {
+        /** Date and time of the departure (the day after the service day for a time past 24:00:00). */
+        public LocalDateTime getDateTime() {
+            return serviceDay.atStartOfDay().plusSeconds(time);
+        }
+    }
+
+    private final LocalDate serviceDay;
+    private final int[] trips;
+    private final int[] firstStops;
+    private final int[] departures;
+
+    private GTFSTimetable(LocalDate serviceDay, int[] trips, int[] firstStops, int[] departures) {
+        this.serviceDay = serviceDay;
+        this.trips = trips;
+        this.firstStops = firstStops;
+        this.departures = departures;
+    }
+
+    /**
+     * Builds the timetable of a service day. No GAMA call is made here: it can run on any thread.
+     */
+    public static GTFSTimetable build(GTFSFeed feed, GTFSServiceCalendar calendar, LocalDate serviceDay) {
+        BitSet activeServices = activeServices(feed, calendar, serviceDay);
+        if (!hasActiveTrip(feed, activeServices)) {
+            LocalDate sameWeekDay = calendar.firstDateWithSameWeekDay(serviceDay);
+            if (sameWeekDay != null && !sameWeekDay.equals(serviceDay)) {
+                activeServices = activeServices(feed, calendar, sameWeekDay);
+            }
+        }
+
+        int count = 0;
+        int[] trips = new int[feed.getTripCount()];
+        int[] firstStops = new int[feed.getTripCount()];
+        int[] departures = new int[feed.getTripCount()];
+        Set<GTFSFeed.TripSignature> seenTripSignatures = new HashSet<>();
+        for (int t = 0; t < feed.getTripCount(); t++) {
+            if (!activeServices.get(feed.getTripService(t))) continue;
+            int first = feed.getFirstStopRow(t);
+            if (first == GTFSFeed.NONE || !seenTripSignatures.add(feed.getTripSignature(t, first))) continue;
+            trips[count] = t;
+            firstStops[count] = feed.getStopTimeStop(first);
+            departures[count] = Math.max(feed.getStopTimeDeparture(first), 0);
+            count++;
+        }
+
+        // heure << 32 | position : ordre de trips.txt à heure égale
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) keys[i] = (long) departures[i] << 32 | i;
+        Arrays.sort(keys);
+        int[] sortedTrips = new int[count];
+        int[] sortedStops = new int[count];
+        int[] sortedDepartures = new int[count];
+        for (int i = 0; i < count; i++) {
+            int from = (int) keys[i];
+            sortedTrips[i] = trips[from];
+            sortedStops[i] = firstStops[from];
+            sortedDepartures[i] = departures[from];
+        }
+        return new GTFSTimetable(serviceDay, sortedTrips, sortedStops, sortedDepartures);
+    }
+
+    /** Services of the feed (service ints) running on a date. */
+    private static BitSet activeServices(GTFSFeed feed, GTFSServiceCalendar calendar, LocalDate date) {
+        GTFSFeed.Dictionary serviceIds = feed.getServiceIds();
+        BitSet activeServices = new BitSet(serviceIds.size());
+        for (int s = 0; s < serviceIds.size(); s++) {
+            if (calendar.isActive(serviceIds.get(s), date)) activeServices.set(s);
+        }
+        return activeServices;
+    }
+
+    private static boolean hasActiveTrip(GTFSFeed feed, BitSet activeServices) {
+        if (activeServices.isEmpty()) return false;
+        for (int t = 0; t < feed.getTripCount(); t++) {
+            if (activeServices.get(feed.getTripService(t))) return true;
+        }
+        return false;
+    }
+
+    public LocalDate getServiceDay() { return serviceDay; }
+    public int size() { return trips.length; }
+    public int getTrip(int i) { return trips[i]; }
+    public int getFirstStop(int i) { return firstStops[i]; }
+    public int getDeparture(int i) { return departures[i]; }
+
+    public Departure getDepartureAt(int i) {
+        return new Departure(serviceDay, trips[i], firstStops[i], departures[i]);
+    }
+
+    /**
+     * @return The index of the first departure at or after the given time (size() if there is none)
+     */
+    public int indexOf(int seconds) {
+        int low = 0;
+        int high = departures.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (departures[mid] < seconds) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+}
@@ -0,0 +1,180 @@
+package gama.extension.GTFS;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Watches the tables of a feed on disk (directory, or .zip archive) and reports which ones changed.
+ *
+ * Events are grouped until the folder has been quiet for {@link #getDelay()} ms (-Dgtfs.watch.delay,
+ * 500 by default), so that a feed rewritten table by table (e.g. by GTFSFilter) is reported once. A
+ * table is only reported if its content (see {@link GTFSSource#contentFingerprint}) differs from the one
+ * seen before: a table written again with the same rows is ignored. For an archive, every entry is
+ * compared each time the archive changes. The watcher closes itself once its owner is no longer
+ * active (e.g. the simulation that started it has been disposed).
+ */
+public final class GTFSWatcher implements AutoCloseable {
+
+    private static volatile long delay = Long.getLong("gtfs.watch.delay", 500L);
+    private static final long ACTIVITY_CHECK = 1000L;   // ms between two checks of the owner
+
+    private final File path;
+    private final Consumer<Set<String>> listener;
+    private final BooleanSupplier active;
+    private final WatchService service;
+    private final Thread thread;
+    private Map<String, String> fingerprints;
+    private volatile boolean closed = false;
+
+    /**
+     * @param path The feed directory or .zip archive
+     * @param listener Called on the watcher thread with the names of the changed tables (added,
+     *            modified or removed), in alphabetical order
+     * @param active false once the owner of the watcher is gone: the watcher then closes itself
+     */
+    public GTFSWatcher(File path, Consumer<Set<String>> listener, BooleanSupplier active) throws IOException {
+        this.path = path;
+        this.listener = listener;
+        this.active = active;
+        this.fingerprints = fingerprints(null);
+        this.service = FileSystems.getDefault().newWatchService();
+        folder().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE);
+        this.thread = Thread.ofPlatform().daemon().name("gtfs-watch-" + path.getName()).unstarted(this::run);
+    }
+
+    public static long getDelay() {
+        return delay;
+    }
+
+    /** Sets how long (ms) the folder must be quiet before its changes are reported. */
+    public static void setDelay(long milliseconds) {
+        delay = Math.max(milliseconds, 0L);
+    }
+
+    public void start() {
+        thread.start();
+        GTFSLog.info("[INFO] Watching GTFS tables of " + path);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            service.close();
+        } catch (IOException e) {
+            GTFSLog.warning("[WARNING] Could not close GTFS watcher: " + e.getMessage());
+        }
+        thread.interrupt();
+    }
+
+    private Path folder() {
+        return path.isDirectory() ? path.toPath() : path.getAbsoluteFile().getParentFile().toPath();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey first = service.poll(ACTIVITY_CHECK, TimeUnit.MILLISECONDS);
+                if (!active.getAsBoolean()) {
+                    GTFSLog.info("[INFO] Stopped watching GTFS tables of " + path + " (owner disposed)");
+                    close();
+                    return;
+                }
+                if (first == null) continue;
+                Set<String> touched = new LinkedHashSet<>();
+                collect(first, touched);
+                // Regroupe les écritures successives : attend que le dossier soit calme
+                WatchKey key;
+                while ((key = service.poll(delay, TimeUnit.MILLISECONDS)) != null) collect(key, touched);
+                if (!path.isDirectory()) {
+                    if (!touched.contains(path.getName())) continue;
+                    touched = null; // archive : toutes ses entrées sont comparées
+                } else {
+                    touched.removeIf(name -> !name.endsWith(".txt"));
+                    if (touched.isEmpty()) continue;
+                }
+                Set<String> changed = changedTables(touched);
+                if (!changed.isEmpty()) notifyListener(changed);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // watcher fermé
+        }
+    }
+
+    private static void collect(WatchKey key, Set<String> touched) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path name) touched.add(name.toString());
+        }
+        key.reset();
+    }
+
+    /**
+     * Tables whose fingerprint changed since the last call, among the given names (all the tables if null).
+     */
+    private Set<String> changedTables(Set<String> candidates) {
+        Map<String, String> current;
+        try {
+            current = fingerprints(candidates);
+        } catch (IOException e) {
+            // Archive en cours d'écriture : la prochaine modification la relira
+            GTFSLog.warning("[WARNING] GTFS tables of " + path + " could not be read: " + e.getMessage());
+            return Set.of();
+        }
+        Set<String> changed = new TreeSet<>();
+        Set<String> names = candidates != null ? candidates : new LinkedHashSet<>(fingerprints.keySet());
+        if (candidates == null) names.addAll(current.keySet());
+        for (String name : names) {
+            if (!Objects.equals(fingerprints.get(name), current.get(name))) changed.add(name);
+        }
+        if (candidates == null) {
+            fingerprints = current;
+        } else {
+            for (String name : candidates) {
+                if (current.containsKey(name)) fingerprints.put(name, current.get(name));
+                else fingerprints.remove(name);
+            }
+        }
+        return changed;
+    }
+
+    private Map<String, String> fingerprints(Set<String> names) throws IOException {
+        Map<String, String> result = new HashMap<>();
+        try (GTFSSource source = GTFSSource.open(path)) {
+            for (String name : names != null ? names : source.tableNames()) {
+                String fingerprint = source.contentFingerprint(name);
+                if (fingerprint != null) result.put(name, fingerprint);
+            }
+        }
+        return result;
+    }
+
+    private void notifyListener(Set<String> changed) {
+        GTFSLog.info("[INFO] GTFS tables changed in " + path + ": " + changed);
+        try {
+            listener.accept(changed);
+        } catch (RuntimeException e) {
+            GTFSLog.error("[ERROR] Could not apply the changes of " + path + ": " + e.getMessage());
+        }
+    }
+}
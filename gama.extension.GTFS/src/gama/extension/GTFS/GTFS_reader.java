@@ -1,19 +1,32 @@
 package gama.extension.GTFS;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
 
+import GamaGTFSUtils.SpatialUtils;
 
 import gama.core.util.GamaPair;
 import gama.annotations.precompiler.GamlAnnotations.doc;
@@ -21,6 +34,7 @@ import gama.annotations.precompiler.GamlAnnotations.example;
 import gama.annotations.precompiler.GamlAnnotations.file;
 import gama.annotations.precompiler.IConcept;
 import gama.core.common.geometry.Envelope3D;
+import gama.core.kernel.simulation.SimulationAgent;
 import gama.core.metamodel.shape.GamaPoint;
 import gama.core.runtime.IScope;
 import gama.core.runtime.exceptions.GamaRuntimeException;
@@ -31,11 +45,6 @@ import gama.core.util.IMap;
 import gama.core.util.file.GamaFile;
 import gama.gaml.types.IType;
 import gama.gaml.types.Types;
-import com.opencsv.CSVParser;
-import com.opencsv.CSVParserBuilder;
-import com.opencsv.CSVReader;
-import com.opencsv.CSVReaderBuilder;
-import com.opencsv.exceptions.CsvValidationException;
 
 /**
  * Reading and processing GTFS files in GAMA. This class reads multiple GTFS files
@@ -48,7 +57,7 @@ import com.opencsv.exceptions.CsvValidationException;
     buffer_content = IType.STRING,
     buffer_index = IType.INT,
     concept = { IConcept.FILE },
-    doc = @doc("GTFS files represent public transportation data in CSV format, typically with the '.txt' extension.")
+    doc = @doc("GTFS files represent public transportation data in CSV format, typically with the '.txt' extension. The feed can be a directory or a .zip archive, read without extraction.")
 )
 public class GTFS_reader extends GamaFile<IList<String>, String> {
 
@@ -57,23 +66,81 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
         "routes.txt", "trips.txt", "stop_times.txt", "stops.txt"
     };
 
-    // Data structure to store GTFS files
-    private IMap<String, List<String[]>> gtfsData;
-    
-    // New field to store header mappings for each file
-    @SuppressWarnings("unchecked")
-	private IMap<String, IMap<String, Integer>> headerMaps = GamaMapFactory.create(Types.STRING, Types.get(IMap.class));
+
+    // Columns read from each table (column projection): the other fields (pickup_type, drop_off_type,
+    // stop_headsign, timepoint...) are skipped by the tokenizer and never allocated. A column used by a
+    // new parse step must be declared here.
+    private static final Map<String, String[]> TABLE_COLUMNS = Map.of(
+        "stop_times.txt", new String[] { "trip_id", "stop_id", "departure_time", "arrival_time", "shape_dist_traveled", "stop_sequence" },
+        "trips.txt", new String[] { "route_id", "trip_id", "service_id", "shape_id" },
+        "routes.txt", new String[] { "route_id", "route_short_name", "route_long_name", "route_type", "route_color" },
+        "stops.txt", new String[] { "stop_id", "stop_name", "stop_lat", "stop_lon" },
+        "shapes.txt", new String[] { "shape_id", "shape_pt_lat", "shape_pt_lon" },
+        "calendar.txt", new String[] { "service_id", "start_date", "end_date", "monday", "tuesday", "wednesday",
+            "thursday", "friday", "saturday", "sunday" },
+        "calendar_dates.txt", new String[] { "service_id", "date", "exception_type" });
+
+    // Service days of calendar.txt and calendar_dates.txt, indexed when they are first needed. No table
+    // is stored as raw rows: each one is streamed once through GTFSTableReader.
+    private GTFSServiceCalendar serviceCalendar;
+    private boolean calendarsLoaded = false;
+
+    // Tables of the feed (file names), null until the feed is listed. A table is only read when an object
+    // that needs it is requested: stops and trips (routes, trips, stop_times, stops), shapes (shapes.txt),
+    // service days (calendars).
+    private List<String> tableNames;
+
+    // GTFS tables of the feed (directory or .zip archive), open while a table is being read
+    private GTFSSource source;
+
+    // Snapshot of the feed (null if disabled), written again when shapes.txt is read
+    private File snapshotFile;
+    private String snapshotKey;
+
+    // Columnar model of stops, trips and stop_times (TransportStop / TransportTrip are views over it)
+    private GTFSFeed feed;
+
+    // Positions of the stops along the shapes of their trips (see getShapeReferencing)
+    private GTFSShapeReferencing shapeReferencing;
+
+    // Summary of the feed (see getMetadata), computed on first request
+    private GTFSMetadata metadata;
+
+    // Departure timetables of a sliding window of service days (see getDeparturesBetween)
+    private final Map<LocalDate, CompletableFuture<GTFSTimetable>> timetables = new ConcurrentHashMap<>();
+
+    // Problems met on the rows of the tables and figures of each loading step (see getLoadReport)
+    private final GTFSLoadReport loadReport = new GTFSLoadReport();
+
+    // Opt-in byte-level parsing of stop_times.txt and shapes.txt through memory-mapped files
+    // (enabled with -Dgtfs.mmap=true or setMemoryMappedParsing(true))
+    private static volatile boolean memoryMappedParsing = Boolean.getBoolean("gtfs.mmap");
+
+    // Opt-in projection of the stops on the shapes of their trips for the departureShapeDistances of the
+    // stop agents, when stop_times.txt has no shape_dist_traveled (enabled with
+    // -Dgtfs.stops.shapeDistances=true or setStopShapeDistances(true); always used once the shapes are loaded)
+    private static volatile boolean stopShapeDistances = Boolean.getBoolean("gtfs.stops.shapeDistances");
+
+    // Opt-in hot reload (watch_gtfs / startWatching): the tables of the feed are watched on disk and the
+    // objects built from the changed ones are rebuilt on next request. The watcher thread only records the
+    // changed tables; they are applied by the next ensure* call, on the simulation thread.
+    private GTFSWatcher watcher;
+    private final AtomicReference<Set<String>> pendingChanges = new AtomicReference<>(Set.of());
+    private boolean departuresStale = false;      // calendars changed: active trips to compute again
+    private volatile long changeVersion = 0;      // number of changes applied (see getChangeVersion)
+    private volatile List<String> changedTables = List.of();
+    private volatile List<String> rebuiltIndexes = List.of();
 
     // Collections for objects created from GTFS files
-    private IMap<String, TransportTrip> tripsMap;
     private IMap<String, TransportStop> stopsMap;
-    private IMap<String, TransportShape> shapesMap;
+    private TransportStop[] stopsByIndex;
+    private IMap<String, TransportShape> shapesMap;       // one shape per shape_id, duplicate geometries sharing their points
+    private IMap<String, String> shapeAliases;            // shape_id of a duplicate geometry (or fake_ + trip_id) -> its canonical shape_id
     private IMap<String, TransportRoute> routesMap; 
     private IMap<String, Integer> shapeRouteTypeMap;
-    private Map<String, Character> fileSeparators = new HashMap<>();
     
-    private boolean shapesTxtPresent = false;
-    public boolean isShapesTxtPresent() { return shapesTxtPresent; }
+    private boolean shapesLoaded = false;
+    public boolean isShapesTxtPresent() { return getFeed().hasShapesTable(); }
     private IMap<String, Integer> routeTypeMapGlobal;
     private IScope initScope;
     
@@ -81,11 +148,11 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
      * Constructor for reading GTFS files.
      *
      * @param scope    The simulation context in GAMA.
-     * @param pathName The directory path containing GTFS files.
+     * @param pathName The directory or .zip archive containing GTFS files.
      * @throws GamaRuntimeException If an error occurs while loading the files.
      */
     @doc (
-            value = "This constructor allows loading GTFS files from a specified directory.",
+            value = "This constructor allows loading GTFS files from a specified directory or .zip archive.",
             examples = { @example (value = "GTFS_reader gtfs <- GTFS_reader(scope, \"path_to_gtfs_directory\");")})
     public GTFS_reader(final IScope scope, final String pathName) throws GamaRuntimeException {
         super(scope, pathName);
@@ -96,19 +163,16 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
         if (scope != null && scope.getGui() != null) {
             scope.getGui().getConsole().informConsole("GTFS path used: "  + pathName, scope.getSimulation());
         } else {
-            System.out.println("GTFS path used: " + pathName);  
+            GTFSLog.info("GTFS path used: " + pathName);  
         }
 
         // Load GTFS files
-        System.out.println("Loading GTFS files...");
+        GTFSLog.info("Loading GTFS files...");
         loadGtfsFiles(scope);
-        System.out.println("File loading completed.");
+        GTFSLog.info("File loading completed.");
         
-        // Create transport objects
-        System.out.println("Creating transport objects...");
-        createTransportObjects(scope);
-        System.out.println("Transport object creation completed.");
-       
+        // Les objets de transport sont créés à la demande (create ... from: gtfs_f)
+        GTFSLog.info("Transport objects will be created when first requested.");
     }
 
     public GTFS_reader(final String pathName) throws GamaRuntimeException {
@@ -116,7 +180,6 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
         this.initScope = null;
         checkValidity(null);  // Pass 'null' if IScope is not necessary for this check
         loadGtfsFiles(null);
-        createTransportObjects(null);
     }
     
     /**
@@ -124,8 +187,18 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
      * @return List of transport stops
      */
     public List<TransportStop> getStops() {
+        return getStops(initScope);
+    }
+
+    /**
+     * Retrieves the stops, loading the feed (without shapes.txt) on first call.
+     * @param scope The scope used to project the stops and read starting_date
+     * @return List of transport stops
+     */
+    public List<TransportStop> getStops(final IScope scope) {
+        ensureTransportObjects(scope);
         List<TransportStop> stopList = new ArrayList<>(stopsMap.values());
-        System.out.println("Number of created stops: " + stopList.size());
+        GTFSLog.info("Number of created stops: " + stopList.size());
         return stopList;
     }
     
@@ -134,79 +207,101 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
      * @return List of transport shapes
      */   
     public List<TransportShape> getShapes() {
-        // Si déjà présents, renvoyer
-        if (!shapesMap.isEmpty()) return new ArrayList<>(shapesMap.values());
-        // Si shapes.txt absent → construire maintenant (lazy)
-        if (!shapesTxtPresent) {
-            if (initScope == null) {
-                System.err.println("[ERROR] buildFakeShapesLazily requires a non-null scope (initScope=null). "
-                    + "Call getShapes(scope) from GAML context instead.");
-                return new ArrayList<>(shapesMap.values());
-            }
-            buildFakeShapesLazily(initScope, routeTypeMapGlobal);
+        // Sans shapes.txt, les shapes sont construites à partir des stops : il faut un scope
+        if (!shapesLoaded && initScope == null && !getFeed().hasShapesTable()) {
+            GTFSLog.error("[ERROR] buildFakeShapesLazily requires a non-null scope (initScope=null). "
+                + "Call getShapes(scope) from GAML context instead.");
+            return new ArrayList<>(shapesMap.values());
         }
-        return new ArrayList<>(shapesMap.values());
+        return getShapes(initScope);
     }
     
+    /**
+     * Retrieves the shapes: shapes.txt is only read (or, without it, the shapes built from the stops of
+     * each trip) on the first call.
+     */
     public List<TransportShape> getShapes(final IScope scopeForLazy) {
-        if (!shapesMap.isEmpty()) return new ArrayList<>(shapesMap.values());
-        if (!shapesTxtPresent) {
-            buildFakeShapesLazily(scopeForLazy, routeTypeMapGlobal);
-        }
+        ensureShapes(scopeForLazy);
         return new ArrayList<>(shapesMap.values());
     }
+
+    /**
+     * Builds the shapes the first time they are requested: from the points of shapes.txt (parsed now,
+     * unless the snapshot already holds them), or from the stop sequence of each trip without shapes.txt.
+     */
+    private synchronized void ensureShapes(final IScope scope) {
+        applyPendingChanges();
+        loadShapes(scope);
+    }
+
+    /** Builds the shapes if needed, without applying the pending changes of the tables (see ensureShapes). */
+    @SuppressWarnings("unchecked")
+    private synchronized void loadShapes(final IScope scope) {
+        loadTransportObjects(scope);
+        if (shapesLoaded) return;
+        if (feed.hasShapesTable()) {
+            GTFSLog.info("[INFO] shapes.txt found. Using standard GTFS shapes pipeline.");
+            if (!feed.hasShapePoints()) withSource(scope, this::loadShapePoints);
+            createShapes(scope);
+            // Map pour lier shapeId <-> routeId, shapeId <-> routeType
+            IMap<String, String>  shapeRouteMap = GamaMapFactory.create(Types.STRING, Types.STRING);
+            IMap<String, Integer> shapeRouteTypeMapLocal = GamaMapFactory.create(Types.STRING, Types.INT);
+            linkShapesToTrips(shapeRouteMap, shapeRouteTypeMapLocal);
+            // Fusionne dans la map globale si besoin
+            shapeRouteTypeMap.putAll(shapeRouteTypeMapLocal);
+            GTFSLog.info("Nombre de shapes lus dans shapes.txt        : " + feed.getShapeRowCount());
+            GTFSLog.info("Nombre de shapes créés (shapesMap)          : " + shapesMap.size());
+            GTFSLog.info("Nombre de shapes dupliqués (même géométrie): " + shapeAliases.size());
+            loadReport.set("shape_points", feed.getShapeRowCount());
+            loadReport.set("shapes_created", shapesMap.size() - shapeAliases.size());
+            loadReport.set("shapes_duplicated", shapeAliases.size());
+        } else {
+            buildFakeShapesLazily(scope, routeTypeMapGlobal);
+        }
+        shapesLoaded = true;
+    }
+
+    /**
+     * Parses shapes.txt into the feed and updates the snapshot with its points.
+     */
+    private void loadShapePoints() throws IOException {
+        GTFSFeed.ShapePointColumns points = parseShapes();
+        if (points == null) return;
+        feed.setShapePoints(points);
+        metadata = null; // rows of shapes.txt now known
+        if (snapshotKey != null) GTFSSnapshot.write(snapshotFile, snapshotKey, feed);
+    }
     
     
-    @SuppressWarnings("unchecked")
+    /**
+     * Builds the shapes of a feed without shapes.txt from the stops of the trips: one shape per journey
+     * pattern, whose shape_id the trips of the pattern already have (see assignFakeShapes). The
+     * fake_ + trip_id of the other trips are recorded as aliases of it.
+     */
     private void buildFakeShapesLazily(final IScope scope, final IMap<String, Integer> routeTypeMap) {
-        System.out.println("[LAZY] Building fake shapes now (requested by create transport_shape)...");
-        for (TransportTrip trip : tripsMap.values()) {
+        GTFSLog.info("[LAZY] Building fake shapes now (requested by create transport_shape)...");
+        for (int t = 0; t < feed.getTripCount(); t++) {
+            TransportTrip trip = new TransportTrip(feed, t);
             String tripId = trip.getTripId();
             String fakeShapeId = trip.getShapeId();
-            if (fakeShapeId == null || fakeShapeId.isEmpty()) {
-                fakeShapeId = "fake_" + tripId;
-                trip.setShapeId(fakeShapeId);
-            }
+            if (fakeShapeId == null || fakeShapeId.isEmpty()) continue;
+            if (!fakeShapeId.equals("fake_" + tripId)) shapeAliases.put("fake_" + tripId, fakeShapeId);
             if (shapesMap.containsKey(fakeShapeId)) continue;
 
+            // Les stop_times de chaque trip sont déjà triés par stop_sequence dans le feed ;
+            // les positions des stops sont déjà projetées
             List<GamaPoint> pts = new ArrayList<>();
-            List<String> orderedStops = trip.getStopsInOrder();
-            if (orderedStops == null || orderedStops.isEmpty()) {
-                List<String[]> stopTimesData = gtfsData.get("stop_times.txt");
-                IMap<String, Integer> stopTimesHeader = headerMaps.get("stop_times.txt");
-                Integer tripIdIdx = findColumnIndex(stopTimesHeader, "trip_id");
-                Integer stopIdIdx = findColumnIndex(stopTimesHeader, "stop_id");
-                Integer seqIdx    = findColumnIndex(stopTimesHeader, "stop_sequence");
-                if (stopTimesData != null && tripIdIdx != null && stopIdIdx != null && seqIdx != null) {
-                    List<String[]> lines = new ArrayList<>();
-                    for (String[] st : stopTimesData) {
-                        if (st != null && st.length > Math.max(tripIdIdx, Math.max(stopIdIdx, seqIdx))) {
-                            if (tripId.equals(st[tripIdIdx].trim().replace("\"","").replace("'",""))) {
-                                lines.add(st);
-                            }
-                        }
-                    }
-                    lines.sort((a,b) -> Integer.compare(
-                        Integer.parseInt(a[seqIdx].trim()),
-                        Integer.parseInt(b[seqIdx].trim())
-                    ));
-                    for (String[] st : lines) {
-                        String stopId = st[stopIdIdx].trim().replace("\"","").replace("'","");
-                        TransportStop stop = stopsMap.get(stopId);
-                        if (stop != null) pts.add(new GamaPoint(stop.getStopLat(), stop.getStopLon()));
-                    }
-                }
-            } else {
-                for (String stopId : orderedStops) {
-                    TransportStop st = stopsMap.get(stopId);
-                    if (st != null) pts.add(new GamaPoint(st.getStopLat(), st.getStopLon()));
-                }
+            int end = feed.hasStopTimes() ? feed.getStopTimesEnd(t) : 0;
+            for (int row = feed.hasStopTimes() ? feed.getStopTimesStart(t) : 0; row < end; row++) {
+                TransportStop stop = stopsByIndex[feed.getStopTimeStop(row)];
+                if (stop != null) pts.add(stop.getLocation());
             }
 
             if (pts.size() > 1) {
                 String routeId = trip.getRouteId();
                 TransportShape fake = new TransportShape(fakeShapeId, routeId);
-                for (GamaPoint p : pts) { fake.addPoint(p.getX(), p.getY(), scope); }
+                for (GamaPoint p : pts) { fake.addPoint(p); }
+                fake.compact();
                 if (routeTypeMap != null && routeTypeMap.containsKey(routeId)) {
                     fake.setRouteType(routeTypeMap.get(routeId));
                 }
@@ -214,16 +309,86 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
                 shapesMap.put(fakeShapeId, fake);
             }
         }
-        System.out.println("[LAZY] Fake shapes built: " + shapesMap.size());
+        GTFSLog.info("[LAZY] Fake shapes built: " + shapesMap.size() + " (" + shapeAliases.size() + " trips sharing the shape of another)");
+        loadReport.set("shapes_created", shapesMap.size());
+        loadReport.set("shapes_duplicated", shapeAliases.size());
+    }
+
+    /**
+     * Without shapes.txt, gives each trip the shape fake_ + trip_id of the first trip of its journey
+     * pattern (or its own, if it has no stop_times), so that the trips with the same stop sequence
+     * share one shape from the start.
+     */
+    private static void assignFakeShapes(GTFSFeed feed) {
+        for (int t = 0; t < feed.getTripCount(); t++) {
+            int pattern = feed.getTripPattern(t);
+            int owner = pattern == GTFSFeed.NONE ? t : feed.getPatternTrip(pattern);
+            feed.setTripShape(t, feed.getShapeIds().intern("fake_" + feed.getTripId(owner)));
+        }
+    }
+
+    /**
+     * The shape_id whose geometry is used for a shape_id: itself, or the first shape with the same
+     * points if the feed repeats this geometry (or, for the fake_ + trip_id of a feed without shapes.txt,
+     * the shape of the first trip with the same stop sequence).
+     */
+    public String getCanonicalShapeId(String shapeId) {
+        String canonical = shapeAliases == null ? null : shapeAliases.get(shapeId);
+        return canonical != null ? canonical : shapeId;
+    }
+
+    /**
+     * The shape of a shape_id (or of the shape_id with the same geometry), loading the shapes if needed.
+     *
+     * @return The shape, or null if the feed has no such shape
+     */
+    public TransportShape getShape(final IScope scope, String shapeId) {
+        ensureShapes(scope);
+        TransportShape shape = shapesMap.get(shapeId);
+        return shape != null ? shape : shapesMap.get(getCanonicalShapeId(shapeId));
+    }
+
+    /**
+     * Canonical shape_id of each trip (trip_id -> shape_id of the shape holding its geometry), loading
+     * the shapes if needed. The trips keep their shape_id of trips.txt: the canonical one is resolved here.
+     */
+    @SuppressWarnings("unchecked")
+    public IMap<String, String> getTripShapes(final IScope scope) {
+        ensureShapes(scope);
+        IMap<String, String> tripShapes = GamaMapFactory.create(Types.STRING, Types.STRING);
+        for (int t = 0; t < feed.getTripCount(); t++) {
+            int shape = feed.getTripShape(t);
+            if (shape != GTFSFeed.NONE) tripShapes.put(feed.getTripId(t), getCanonicalShapeId(feed.getShapeIds().get(shape)));
+        }
+        return tripShapes;
     }
 
-    
     /**
-     * Method to retrieve the list of trips (TransportTrip) from tripsMap.
+     * Method to retrieve the list of trips (TransportTrip views over the feed), in trips.txt order.
      * @return List of transport trips
      */
     public List<TransportTrip> getTrips() {
-    	return new ArrayList<>(tripsMap.values());
+        return getTrips(initScope);
+    }
+
+    /**
+     * Retrieves the trips, loading the feed (without shapes.txt) on first call.
+     * @param scope The scope used to read starting_date
+     * @return List of transport trips
+     */
+    public List<TransportTrip> getTrips(final IScope scope) {
+        ensureTransportObjects(scope);
+        List<TransportTrip> trips = new ArrayList<>(feed.getTripCount());
+        for (int t = 0; t < feed.getTripCount(); t++) trips.add(new TransportTrip(feed, t));
+        return trips;
+    }
+
+    /**
+     * @return The columnar model of the feed
+     */
+    public GTFSFeed getFeed() {
+        ensureTransportObjects(initScope);
+        return feed;
     }
     
     /**
@@ -231,575 +396,910 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
      * @return List of transport routes
      */
     public List<TransportRoute> getRoutes() {
+        return getRoutes(initScope);
+    }
+
+    /**
+     * Retrieves the routes, in routes.txt order (then the route_ids only found in trips.txt). The shapes
+     * are loaded first, so that the shape_ids of the routes are those of the transport_shape agents.
+     */
+    public List<TransportRoute> getRoutes(final IScope scope) {
+        ensureShapes(scope);
         return new ArrayList<>(routesMap.values());
     }
 
     /**
-     * Method to verify the directory's validity.
+     * Method to verify the validity of the feed: a directory or a .zip archive containing the required tables.
      *
      * @param scope    The simulation context in GAMA.
-     * @throws GamaRuntimeException If the directory is invalid or does not contain required files.
+     * @throws GamaRuntimeException If the path is invalid or does not contain required files.
      */
     @Override
     protected void checkValidity(final IScope scope) throws GamaRuntimeException {
-        System.out.println("Starting directory validity check...");
+        GTFSLog.info("Starting directory validity check...");
 
         File folder = getFile(scope);
         
-        if (!folder.exists() || !folder.isDirectory()) {
-            throw GamaRuntimeException.error("The provided path for GTFS files is invalid. Ensure it is a directory containing .txt files.", scope);
+        if (!folder.exists() || !(folder.isDirectory() || GTFSSource.isArchive(folder))) {
+            throw GamaRuntimeException.error("The provided path for GTFS files is invalid. Ensure it is a directory or a .zip archive containing .txt files.", scope);
         }
         Set<String> requiredFilesSet = new HashSet<>(Set.of(REQUIRED_FILES));
-        System.out.println("Required GTFS files: " + requiredFilesSet);
-        System.out.println("➡️ Vérification du dossier GTFS : " + getName(null));
-        File[] files = folder.listFiles();
-        //System.out.println("Liste des fichiers trouvés : " + Arrays.toString(files));
-        if (files != null) {
-            for (File file : files) {
-                String fileName = file.getName();
-                if (fileName.endsWith(".txt")) {
-                    requiredFilesSet.remove(fileName);
-                }
-            }
+        GTFSLog.info("Required GTFS files: " + requiredFilesSet);
+        GTFSLog.info("➡️ Vérification du dossier GTFS : " + getName(null));
+        try (GTFSSource tables = GTFSSource.open(folder)) {
+            requiredFilesSet.removeAll(tables.tableNames());
+        } catch (IOException e) {
+            throw GamaRuntimeException.error("Unable to read the GTFS archive " + folder + ": " + e.getMessage(), scope);
         }
 
         if (!requiredFilesSet.isEmpty()) {
             throw GamaRuntimeException.error("Missing GTFS files: " + requiredFilesSet, scope);
         }     
-        System.out.println("Directory validity check completed.");
+        GTFSLog.info("Directory validity check completed.");
     }
 
     /**
-     * Loads GTFS files and verifies if all required files are present.
+     * Lists the tables of the feed. No table is read here: each one is streamed when the objects that
+     * need it are first requested (see ensureTransportObjects, ensureShapes, ensureCalendars).
      */
-    @SuppressWarnings("unchecked")
 	private void loadGtfsFiles(final IScope scope) throws GamaRuntimeException {
-        gtfsData = GamaMapFactory.create(Types.STRING, Types.LIST); // Use GamaMap for storing GTFS files
-        headerMaps = GamaMapFactory.create(Types.STRING, Types.get(IMap.class));
-        try {
-            File folder = this.getFile(scope);
-            File[] files = folder.listFiles();  // List of files in the folder
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile() && file.getName().endsWith(".txt")) {
-                    	// 1. Détecte le séparateur
-                    	char separator = detectSeparator(file);
-                    	//System.out.println("Séparateur détecté pour " + file.getName() + " : " + separator);
-                    	// 2. Mémorise le séparateur pour ce fichier
-                    	fileSeparators.put(file.getName(), separator);
-                    	// 3. Utilise OpenCSV avec le séparateur détecté
-                    	Map<String, Integer> headerMap = new HashMap<>();
-                        	// 3.1 Lit le fichier CSV et récupère le contenu
-                    	List<String[]> fileContent = readCsvFileOpenCSV(file, headerMap);
-                    	String sepStr;
-                        if (separator == ',') sepStr = "virgule (,)";
-                        else if (separator == ';') sepStr = "point-virgule (;)";
-                        else if (separator == '\t') sepStr = "tabulation";
-                        else sepStr = String.valueOf(separator);
-
-                        	// 4. Stocke le contenu du fichier et le header dans les maps
-                    	gtfsData.put(file.getName(), fileContent);
-                    	IMap<String, Integer> headerIMap = GamaMapFactory.wrap(Types.STRING, Types.INT, headerMap);
-                    	headerMaps.put(file.getName(), headerIMap);  
-                        
-                    }
-                }
-            }
+        calendarsLoaded = false;
+        try (GTFSSource tables = GTFSSource.open(this.getFile(scope))) {
+            tableNames = new ArrayList<>(tables.tableNames());
         } catch (Exception e) {
-            System.err.println("Error while loading GTFS files: " + e.getMessage());
+            GTFSLog.error("Error while loading GTFS files: " + e.getMessage());
             throw GamaRuntimeException.create(e, scope);
         }
-        System.out.println("All GTFS files have been loaded.");
+        GTFSLog.info("GTFS tables found: " + tableNames);
     }
-    
+
     /**
-     * Retrieves the header map for a given file.
-     *
-     * @param fileName The name of the file
-     * @return The header map
+     * Runs a loading step with the feed source open (the source is only opened once for nested steps).
      */
-    private void createTransportObjectsWithShapes(
-    	    IScope scope,
-    	    IMap<String, Integer> routeTypeMap,
-    	    IMap<String, String>  shapeRouteMap,       
-    	    IMap<String, Integer> shapeRouteTypeMap     
-    	)
-    {	
-    	    // 1. Création des TransportShape à partir de shapes.txt
-    	    List<String[]> shapesData = gtfsData.get("shapes.txt");
-    	    IMap<String, Integer> headerMap = headerMaps.get("shapes.txt");
-    	    Integer shapeIdIndex = findColumnIndex(headerMap, "shape_id");
-    	    Integer latIndex = findColumnIndex(headerMap, "shape_pt_lat");
-    	    Integer lonIndex = findColumnIndex(headerMap, "shape_pt_lon");
-
-    	    for (String[] fields : shapesData) {
-    	        if (fields == null) continue;
-    	        try {
-    	        	String shapeId = fields[shapeIdIndex].trim().replace("\"","").replace("'","");
-    	        	double lat = Double.parseDouble(fields[latIndex]);
-    	        	double lon = Double.parseDouble(fields[lonIndex]);
-
-    	        	TransportShape shape = shapesMap.get(shapeId);
-    	        	if (shape == null) { shape = new TransportShape(shapeId, ""); shapesMap.put(shapeId, shape); }
-    	        	shape.addPoint(lat, lon, scope);
-
-    	        } catch (Exception e) {
-    	            System.err.println("[ERROR] Processing shape line: " + java.util.Arrays.toString(fields) + " -> " + e.getMessage());
-    	        }
-    	    }
-
-    	    // 2. Création des trips (avec shapeId réel)
-    	    List<String[]> tripsData = gtfsData.get("trips.txt");
-    	    IMap<String, Integer> tripsHeaderMap = headerMaps.get("trips.txt");
-    	    Integer routeIdIndex = findColumnIndex(tripsHeaderMap, "route_id");
-    	    Integer tripIdIndex = findColumnIndex(tripsHeaderMap, "trip_id");
-    	    Integer shapeIdIdx = findColumnIndex(tripsHeaderMap, "shape_id");
-
-    	    for (String[] fields : tripsData) {
-    	        if (fields == null) continue;
-    	        try {
-    	            String routeId = fields[routeIdIndex].trim().replace("\"", "").replace("'", "");
-    	            String tripId = fields[tripIdIndex].trim().replace("\"", "").replace("'", "");
-    	            String shapeId = null;
-    	            if (shapeIdIdx != null && fields.length > shapeIdIdx) {
-    	                String raw = fields[shapeIdIdx].trim().replace("\"","").replace("'","");
-    	                if (!raw.isEmpty()) shapeId = raw;
-    	            }
-    	            TransportTrip trip = tripsMap.get(tripId);
-    	            if (trip == null) {
-    	                trip = new TransportTrip(routeId, "", tripId, 0, shapeId);
-    	                tripsMap.put(tripId, trip);
-    	            }
-    	            if (shapeId != null && shapesMap.containsKey(shapeId)) {
-    	                shapeRouteTypeMap.put(shapeId, trip.getRouteType());
-    	                shapeRouteMap.put(shapeId, routeId);
-    	                shapesMap.get(shapeId).setTripId(tripId);
-    	            }
-    	        } catch (Exception e) {
-    	            System.err.println("[ERROR] Invalid trip line in trips.txt: " + java.util.Arrays.toString(fields) + " -> " + e.getMessage());
-    	        }
-    	    }
-
-    	    // 3. Assigner routeId/routeType aux shapes
-    	    for (TransportShape shape : shapesMap.values()) {
-    	        String shapeId = shape.getShapeId();
-    	        if (shapeRouteMap.containsKey(shapeId)) {
-    	            String routeId = shapeRouteMap.get(shapeId);
-    	            shape.setRouteId(routeId);
-    	        }
-    	        if (shapeRouteTypeMap.containsKey(shapeId)) {
-    	            shape.setRouteType(shapeRouteTypeMap.get(shapeId));
-    	        }
-    	    }
-
-    	    // 4. Assigner routeType à tous les trips
-    	    for (TransportTrip trip : tripsMap.values()) {
-    	        if (trip.getRouteType() == -1 && routeTypeMap.containsKey(trip.getRouteId())) {
-    	            trip.setRouteType(routeTypeMap.get(trip.getRouteId()));
-    	        }
-    	    }
-    	}
-    
-    private void createTransportObjectsWithFakeShapes(
-    	    IScope scope,
-    	    IMap<String, Integer> routeTypeMap
-    	) {
-    	    // 1. Création des trips et shapes "fictifs"
-    	    List<String[]> tripsData = gtfsData.get("trips.txt");
-    	    IMap<String, Integer> tripsHeaderMap = headerMaps.get("trips.txt");
-    	    Integer routeIdIndex = findColumnIndex(tripsHeaderMap, "route_id");
-    	    Integer tripIdIndex = findColumnIndex(tripsHeaderMap, "trip_id");
-
-    	    // On crée les trips, et pour chaque trip, on va créer un fake shape
-    	    for (String[] fields : tripsData) {
-    	        if (fields == null) continue;
-    	        try {
-    	            String routeId = fields[routeIdIndex].trim().replace("\"", "").replace("'", "");
-    	            String tripId = fields[tripIdIndex].trim().replace("\"", "").replace("'", "");
-    	            String fakeShapeId = "fake_" + tripId; // garanti unique
-
-    	            // Crée le trip, avec shapeId = fakeShapeId
-    	            TransportTrip trip = new TransportTrip(routeId, "", tripId, 0, fakeShapeId);
-    	            tripsMap.put(tripId, trip);
-
-    	            // Récupère la liste des stops pour ce trip
-    	            List<String> stopIdsInOrder = new ArrayList<>();
-    	            List<String[]> stopTimesData = gtfsData.get("stop_times.txt");
-    	            IMap<String, Integer> stopTimesHeader = headerMaps.get("stop_times.txt");
-    	            Integer tripIdIdxST = findColumnIndex(stopTimesHeader, "trip_id");
-    	            Integer stopIdIdxST = findColumnIndex(stopTimesHeader, "stop_id");
-    	            if (stopTimesData != null && tripIdIdxST != null && stopIdIdxST != null) {
-    	                for (String[] stFields : stopTimesData) {
-    	                    if (stFields == null) continue;
-    	                    String tripIdST = stFields[tripIdIdxST].trim().replace("\"", "").replace("'", "");
-    	                    if (tripIdST.equals(tripId)) {
-    	                        String stopId = stFields[stopIdIdxST].trim().replace("\"", "").replace("'", "");
-    	                        stopIdsInOrder.add(stopId);
-    	                    }
-    	                }
-    	            }
-    	            // On construit la fake polyline avec les coordonnées des stops
-    	            List<GamaPoint> shapePoints = new ArrayList<>();
-    	            for (String stopId : stopIdsInOrder) {
-    	                TransportStop stop = stopsMap.get(stopId);
-    	                if (stop != null) {
-    	                    shapePoints.add(new GamaPoint(stop.getStopLat(), stop.getStopLon()));
-    	                }
-    	            }
-    	            // Crée le fake shape seulement s'il y a au moins 2 points
-    	            if (shapePoints.size() > 1) {
-    	            	TransportShape fakeShape = new TransportShape(fakeShapeId, routeId);
-    	                for (GamaPoint pt : shapePoints) fakeShape.addPoint(pt.getX(), pt.getY(), scope);
-    	                // On peut setter la routeType à ce fakeShape
-    	                if (routeTypeMap.containsKey(routeId)) fakeShape.setRouteType(routeTypeMap.get(routeId));
-    	                // TripId pour référence
-    	                fakeShape.setTripId(tripId);
-    	                shapesMap.put(fakeShapeId, fakeShape);
-    	            }
-
-    	            // Set le routeType du trip
-    	            if (routeTypeMap.containsKey(routeId)) {
-    	                trip.setRouteType(routeTypeMap.get(routeId));
-    	            }
-    	        } catch (Exception e) {
-    	            
-    	        }
-    	    }
-    	}
-    
-    private void createTripsWithoutShapes(IScope scope, IMap<String, Integer> routeTypeMap) {
-        List<String[]> tripsData = gtfsData.get("trips.txt");
-        IMap<String, Integer> tripsHeader = headerMaps.get("trips.txt");
-        Integer routeIdIndex = findColumnIndex(tripsHeader, "route_id");
-        Integer tripIdIndex  = findColumnIndex(tripsHeader,  "trip_id");
-        if (tripsData == null || routeIdIndex == null || tripIdIndex == null) return;
-
-        for (String[] fields : tripsData) {
-            if (fields == null) continue;
-            try {
-                String routeId = fields[routeIdIndex].trim().replace("\"","").replace("'","");
-                String tripId  = fields[tripIdIndex ].trim().replace("\"","").replace("'","");
-                String fakeShapeId = "fake_" + tripId;
-
-                TransportTrip trip = tripsMap.get(tripId);
-                if (trip == null) {
-                    trip = new TransportTrip(routeId, "", tripId, 0, fakeShapeId); // shapeId placeholder
-                    if (routeTypeMap.containsKey(routeId)) trip.setRouteType(routeTypeMap.get(routeId));
-                    tripsMap.put(tripId, trip);
-                }
-            } catch (Exception ignore) {}
+    private void withSource(final IScope scope, SourceStep step) {
+        if (source != null) {
+            runStep(scope, step);
+            return;
+        }
+        try {
+            source = GTFSSource.open(getFile(scope));
+        } catch (IOException e) {
+            throw GamaRuntimeException.create(e, scope);
+        }
+        try {
+            runStep(scope, step);
+        } finally {
+            closeSource();
         }
     }
 
+    private static void runStep(final IScope scope, SourceStep step) {
+        try {
+            step.run();
+        } catch (IOException e) {
+            GTFSLog.error("Error while loading GTFS files: " + e.getMessage());
+            throw GamaRuntimeException.create(e, scope);
+        }
+    }
 
+    @FunctionalInterface
+    private interface SourceStep {
+        void run() throws IOException;
+    }
 
-    @SuppressWarnings("unchecked")
-    private void createTransportObjects(IScope scope) {
-        System.out.println("Starting transport object creation...");
+    /**
+     * Indexes calendar.txt and calendar_dates.txt the first time the service days are needed.
+     */
+    private synchronized void ensureCalendars() {
+        if (calendarsLoaded) return;
+        if (tableNames == null) loadGtfsFiles(initScope);
+        withSource(initScope, () -> {
+            try (GTFSTableReader calendar = openTable("calendar.txt");
+                 GTFSTableReader calendarDates = openTable("calendar_dates.txt")) {
+                serviceCalendar = GTFSServiceCalendar.build(calendar, calendarDates, loadReport);
+            }
+        });
+        GTFSLog.info("[INFO] Service calendar indexed: " + serviceCalendar.getServiceCount() + " services, "
+            + serviceCalendar.getStartingDate() + " → " + serviceCalendar.getEndingDate());
+        loadReport.set("services", serviceCalendar.getServiceCount());
+        calendarsLoaded = true;
+    }
 
-        // Initialisation des maps globales
-        routesMap = GamaMapFactory.create(Types.STRING, Types.get(TransportRoute.class)); 
-        stopsMap = GamaMapFactory.create(Types.STRING, Types.get(TransportStop.class));   
-        tripsMap = GamaMapFactory.create(Types.STRING, Types.get(TransportTrip.class));     
-        shapesMap = GamaMapFactory.create(Types.STRING, Types.get(TransportShape.class));
-        shapeRouteTypeMap = GamaMapFactory.create(Types.STRING, Types.INT);
+    public static boolean isMemoryMappedParsing() {
+        return memoryMappedParsing;
+    }
 
-        // Map pour lier shapeId <-> routeId, shapeId <-> routeType
-        IMap<String, String>  shapeRouteMap = GamaMapFactory.create(Types.STRING, Types.STRING);
-        IMap<String, Integer> shapeRouteTypeMapLocal = GamaMapFactory.create(Types.STRING, Types.INT);
+    /**
+     * Enables or disables the memory-mapped parsing of stop_times.txt and shapes.txt for the next
+     * GTFS files loaded.
+     */
+    public static void setMemoryMappedParsing(boolean enabled) {
+        memoryMappedParsing = enabled;
+    }
 
-        // 1. Lecture des routeType par routeId (commune)
-        IMap<String, Integer> routeTypeMap = GamaMapFactory.create(Types.STRING, Types.INT);
-        List<String[]> routesData = gtfsData.get("routes.txt");
-        IMap<String, Integer> routesHeader = headerMaps.get("routes.txt");
+    public static boolean isStopShapeDistances() {
+        return stopShapeDistances;
+    }
 
-        if (routesData != null && routesHeader != null) {
-            Integer routeIdIndex = findColumnIndex(routesHeader, "route_id");
-            Integer routeTypeIndex = findColumnIndex(routesHeader, "route_type");
-            if (routeIdIndex == null || routeTypeIndex == null) {
-                throw new RuntimeException("route_id or route_type column not found in routes.txt!");
-            }
-            for (String[] fields : routesData) {
-                if (fields == null) continue;
-                try {
-                    String routeId = fields[routeIdIndex].trim().replace("\"", "").replace("'", "");
-                    int routeType = Integer.parseInt(fields[routeTypeIndex]);
-                    routeTypeMap.put(routeId, routeType);
-                } catch (Exception e) {
-                    System.err.println("[ERROR] Invalid routeType in routes.txt: " + java.util.Arrays.toString(fields) + " -> " + e.getMessage());
-                }
-            }
+    /**
+     * Enables or disables the projection of the stops on the shapes of their trips when the stop agents are
+     * created before the shapes.
+     */
+    public static void setStopShapeDistances(boolean enabled) {
+        stopShapeDistances = enabled;
+    }
+
+    /**
+     * Watches the tables of the feed on disk: when some of them change, only the objects and indexes
+     * built from these tables are dropped, and built again from the new tables on next request (see
+     * applyTableChanges). The watch stops with the simulation of the scope (or with stopWatching). Does
+     * nothing if the feed is already watched.
+     */
+    public synchronized void startWatching(final IScope scope) {
+        if (isWatching()) return;
+        SimulationAgent simulation = scope == null ? null : scope.getSimulation();
+        try {
+            watcher = new GTFSWatcher(getFile(initScope), this::recordTableChanges,
+                simulation == null ? () -> true : () -> !simulation.dead());
+        } catch (IOException e) {
+            GTFSLog.warning("[WARNING] GTFS tables cannot be watched: " + e.getMessage());
+            return;
         }
-        
-        this.routeTypeMapGlobal = routeTypeMap;
-
-        // 2. Collecte des stop_ids utilisés (commun)
-        Set<String> usedStopIds = new HashSet<>();
-        List<String[]> stopTimesData = gtfsData.get("stop_times.txt");
-        IMap<String, Integer> stopTimesHeader = headerMaps.get("stop_times.txt");
-
-        if (stopTimesData != null && stopTimesHeader != null && stopTimesHeader.containsKey("stop_id")) {
-            Integer stopIdIndex = stopTimesHeader.get("stop_id");
-            if (stopIdIndex == null) throw new RuntimeException("stop_id column not found in stop_times.txt!");
-            for (String[] fields : stopTimesData) {
-                if (fields == null || fields.length <= stopIdIndex) continue;
-                usedStopIds.add(fields[stopIdIndex].trim().replace("\"", "").replace("'", ""));
+        watcher.start();
+    }
+
+    public synchronized void stopWatching() {
+        if (watcher == null) return;
+        watcher.close();
+        watcher = null;
+    }
+
+    public synchronized boolean isWatching() {
+        return watcher != null && !watcher.isClosed();
+    }
+
+    /**
+     * Number of changes of the tables applied since the feed was opened: a model can compare it from one
+     * step to the next to know when to create its agents again.
+     */
+    public synchronized long getChangeVersion() {
+        applyPendingChanges();
+        return changeVersion;
+    }
+
+    /** Tables changed on disk by the last change (e.g. [calendar_dates.txt]). */
+    public synchronized List<String> getChangedTables() {
+        applyPendingChanges();
+        return changedTables;
+    }
+
+    /** Objects and indexes dropped by the last change: feed, shapes, calendar or none. */
+    public synchronized List<String> getRebuiltIndexes() {
+        applyPendingChanges();
+        return rebuiltIndexes;
+    }
+
+    /**
+     * Records tables changed on disk, to be applied by the next ensure* call. Runs on the watcher thread:
+     * nothing else of the reader is touched here.
+     */
+    private void recordTableChanges(Set<String> tables) {
+        pendingChanges.accumulateAndGet(tables, (pending, changed) -> {
+            Set<String> all = new TreeSet<>(pending);
+            all.addAll(changed);
+            return all;
+        });
+    }
+
+    /** Applies the tables changed since the last call, if any. Runs on the simulation thread. */
+    private synchronized void applyPendingChanges() {
+        Set<String> tables = pendingChanges.getAndSet(Set.of());
+        if (!tables.isEmpty()) applyTableChanges(tables);
+    }
+
+    /**
+     * Drops what was built from the changed tables, to be built again from the new ones on next request:
+     * <ul>
+     * <li>calendar.txt, calendar_dates.txt: the service calendar, the timetables and the active trips
+     * (departures of the stops); stops, trips and shapes are kept;</li>
+     * <li>shapes.txt: the shapes and the positions of the stops along them, if shapes.txt still has rows
+     * (otherwise the trips use other shapes and the whole feed is read again);</li>
+     * <li>routes.txt, trips.txt, stop_times.txt, stops.txt: the feed model, with its stops, routes,
+     * shapes and timetables (the snapshot, if any, no longer matches and is written again).</li>
+     * </ul>
+     * The other tables are not read by the reader. Runs on the simulation thread (see applyPendingChanges).
+     */
+    private void applyTableChanges(Set<String> tables) {
+        try (GTFSSource tablesOnDisk = GTFSSource.open(getFile(initScope))) {
+            tableNames = new ArrayList<>(tablesOnDisk.tableNames());
+        } catch (IOException e) {
+            // Fichiers en cours d'écriture : les changements seront appliqués au prochain appel
+            GTFSLog.warning("[WARNING] GTFS tables could not be listed: " + e.getMessage());
+            recordTableChanges(tables);
+            return;
+        }
+
+        List<String> rebuilt = new ArrayList<>();
+        boolean feedChanged = false;
+        for (String table : GTFSSnapshot.SOURCE_FILES) {
+            if (!table.equals("shapes.txt") && tables.contains(table)) feedChanged = true;
+        }
+        if (feed != null && !feedChanged && tables.contains("shapes.txt")) {
+            boolean[] shapeRows = new boolean[1];
+            withSource(initScope, () -> {
+                shapeRows[0] = hasShapeRows();
+                if (snapshotKey != null) snapshotKey = GTFSSnapshot.key(source);
+            });
+            if (shapeRows[0] == feed.hasShapesTable()) {
+                feed.clearShapePoints();
+                shapesMap = GamaMapFactory.create(Types.STRING, Types.get(TransportShape.class));
+                shapeAliases = GamaMapFactory.create(Types.STRING, Types.STRING);
+                shapeRouteTypeMap = GamaMapFactory.create(Types.STRING, Types.INT);
+                shapesLoaded = false;
+                shapeReferencing = null;
+                metadata = null;
+                rebuilt.add("shapes");
+            } else {
+                feedChanged = true;
             }
         }
+        if (feedChanged && feed != null) {
+            feed = null;   // tout est reconstruit par ensureTransportObjects
+            rebuilt.add("feed");
+        }
+        if (tables.contains("calendar.txt") || tables.contains("calendar_dates.txt")) {
+            calendarsLoaded = false;
+            timetables.clear();
+            metadata = null;
+            departuresStale = feed != null;
+            rebuilt.add("calendar");
+        }
 
-        // 3. Création des stops (commun)
-        List<String[]> stopsData = gtfsData.get("stops.txt");
-        IMap<String, Integer> headerIMap = headerMaps.get("stops.txt");
+        changedTables = List.copyOf(tables);
+        rebuiltIndexes = rebuilt.isEmpty() ? List.of("none") : List.copyOf(rebuilt);
+        changeVersion++;
+        loadReport.set("changes", changeVersion);
+        GTFSLog.info("[INFO] GTFS change " + changeVersion + ": " + changedTables + " → rebuilt on next request: " + rebuiltIndexes);
+    }
 
-        if (stopsData != null && headerIMap != null) {
-            Integer stopIdIndex = findColumnIndex(headerIMap, "stop_id");
-            Integer stopNameIndex = findColumnIndex(headerIMap, "stop_name");
-            Integer stopLatIndex = findColumnIndex(headerIMap, "stop_lat");
-            Integer stopLonIndex = findColumnIndex(headerIMap, "stop_lon");
+    /** Closes the feed source (the zip archive, if any) once the tables of a loading step have been read. */
+    private void closeSource() {
+        if (source == null) return;
+        try {
+            source.close();
+        } catch (IOException e) {
+            GTFSLog.warning("[WARNING] Could not close GTFS source: " + e.getMessage());
+        }
+        source = null;
+    }
 
-            if (stopIdIndex == null || stopNameIndex == null || stopLatIndex == null || stopLonIndex == null) {
-                throw new RuntimeException("stop_id, stop_name, stop_lat or stop_lon column not found in stops.txt!");
-            }
+    /**
+     * Opens a reader on one of the large tables (stop_times.txt, shapes.txt): memory-mapped when
+     * that mode is enabled and the table is a plain file, streaming otherwise (zip entries are always
+     * inflated as a stream).
+     *
+     * @return The reader, or null if the table is not present
+     */
+    private GTFSRowSource openLargeTable(String fileName) throws IOException {
+        File file = source.file(fileName);
+        if (memoryMappedParsing && file != null) return project(fileName, new GTFSMappedTableReader(file));
+        return openTable(fileName);
+    }
 
-            for (String[] fields : stopsData) {
-                if (fields == null) continue;
-                try {
-                    String stopId = fields[stopIdIndex].trim().replace("\"", "").replace("'", ""); 
-                    if (!usedStopIds.contains(stopId)) continue;
+    /**
+     * Opens a streaming reader on a GTFS table of the feed.
+     *
+     * @param fileName The file name (e.g. "stops.txt")
+     * @return The reader, or null if the table is not present
+     */
+    private GTFSTableReader openTable(String fileName) throws IOException {
+        InputStream in = source.open(fileName);
+        return in == null ? null : project(fileName, new GTFSTableReader(fileName, in));
+    }
 
-                    String stopName = fields[stopNameIndex];
-                    double stopLat = Double.parseDouble(fields[stopLatIndex]);
-                    double stopLon = Double.parseDouble(fields[stopLonIndex]);
+    /** Restricts the reader to the columns declared for the table in TABLE_COLUMNS, if any. */
+    private static <T extends GTFSRowSource> T project(String fileName, T table) {
+        String[] columns = TABLE_COLUMNS.get(fileName);
+        if (columns != null) table.select(columns);
+        return table;
+    }
 
-                    TransportStop stop = new TransportStop(stopId, stopName, stopLat, stopLon, scope);
-                    stopsMap.put(stopId, stop);
+    /**
+     * Parses shapes.txt (when shapes are first requested). No GAMA call is made here.
+     *
+     * @return The parsed points, or null if shapes.txt is absent
+     */
+    private GTFSFeed.ShapePointColumns parseShapes() throws IOException {
+        try (GTFSRowSource shapes = openLargeTable("shapes.txt")) {
+            if (shapes == null) return null;
+            Integer shapeIdIndex = shapes.column("shape_id");
+            Integer latIndex = shapes.column("shape_pt_lat");
+            Integer lonIndex = shapes.column("shape_pt_lon");
+
+            GTFSFeed.ShapePointColumns points = new GTFSFeed.ShapePointColumns();
+            while (shapes.next()) {
+                try {
+                    String shapeId = shapes.id(shapeIdIndex);
+                    double lat = shapes.getDouble(latIndex);
+                    double lon = shapes.getDouble(lonIndex);
+                    points.add(shapeId, lat, lon);
                 } catch (Exception e) {
-                    System.err.println("[ERROR] Processing stop line: " + java.util.Arrays.toString(fields) + " -> " + e.getMessage());
+                    loadReport.problem("shapes.txt: invalid row", shapes + " -> " + e.getMessage());
                 }
             }
-            System.out.println("Nombre d'objets TransportStop créés : " + stopsMap.size());System.out.println("Nombre d'objets TransportStop créés : " + stopsMap.size());
+            points.setRowCount(shapes.getRowCount());
+            return points;
         }
-        System.out.println("Finished creating TransportStop objects.");
-
-        // 4. Teste la présence de shapes.txt
-        List<String[]> shapesData = gtfsData.get("shapes.txt");
-        IMap<String, Integer> headerMap = headerMaps.get("shapes.txt");
-        boolean shapesTxtExists = (shapesData != null && headerMap != null && !shapesData.isEmpty());
+    }
 
-        // 5. Appelle la bonne méthode selon shapes.txt
-        if (shapesTxtExists) {
-            System.out.println("[INFO] shapes.txt found. Using standard GTFS shapes pipeline.");
-            createTransportObjectsWithShapes(scope, routeTypeMap, shapeRouteMap, shapeRouteTypeMapLocal);
-            // Fusionne dans la map globale si besoin
-            shapeRouteTypeMap.putAll(shapeRouteTypeMapLocal);
-            this.shapesTxtPresent = true;
-        } else {
-        	 System.out.println("[INFO] shapes.txt NOT found. Deferring fake shapes creation until transport_shape agents are created.");
-        	 this.shapesTxtPresent = false;
-        	 createTripsWithoutShapes(scope, routeTypeMap);
+    /**
+     * true if shapes.txt is present and has at least one row. Runs on a loader thread.
+     */
+    private boolean hasShapeRows() throws IOException {
+        try (GTFSTableReader shapes = openTable("shapes.txt")) {
+            return shapes != null && shapes.next();
         }
+    }
 
-        // 6. Affecte le routeType à tous les trips qui n'ont pas été remplis (commune)
-        for (TransportTrip trip : tripsMap.values()) {
-            if (trip.getRouteType() == -1 && routeTypeMap.containsKey(trip.getRouteId())) {
-                trip.setRouteType(routeTypeMap.get(trip.getRouteId()));
+    /**
+     * Creates the TransportShape objects from the shapes.txt points of the feed, projected in one batch.
+     * A shape whose points are exactly those of a previous shape keeps its shape_id (the trips and stops
+     * refer to it) but shares the points and geometry of the previous one: its shape_id is recorded as an
+     * alias, and only the distinct geometries are projected.
+     */
+    private void createShapes(IScope scope) {
+        int shapeCount = feed.getShapeTableCount();
+        int[] canonical = new int[shapeCount];
+        Map<Integer, List<Integer>> shapesByHash = new HashMap<>();
+        int pointCount = 0;
+        for (int sh = 0; sh < shapeCount; sh++) {
+            canonical[sh] = sh;
+            List<Integer> candidates = shapesByHash.computeIfAbsent(shapePointsHash(sh), h -> new ArrayList<>(1));
+            for (int candidate : candidates) {
+                if (sameShapePoints(candidate, sh)) {
+                    canonical[sh] = candidate;
+                    break;
+                }
             }
+            if (canonical[sh] != sh) continue;
+            candidates.add(sh);
+            pointCount += feed.getShapePointsEnd(sh) - feed.getShapePointsStart(sh);
         }
 
-        // 7. Résumé et computeDepartureInfo (communs)
-        System.out.println("---- Récapitulatif création objets GTFS ----");
-        System.out.println("Nombre de stops lus dans stops.txt          : " + (stopsData != null ? stopsData.size() : 0));
-        System.out.println("Nombre de stops créés (stopsMap)            : " + stopsMap.size());
-        System.out.println("Nombre de trips créés (tripsMap)            : " + tripsMap.size());
-        System.out.println("Nombre de shapes lus dans shapes.txt        : " + (shapesData != null ? shapesData.size() : 0));
-        System.out.println("Nombre de shapes créés (shapesMap)          : " + shapesMap.size());
-        System.out.println("--------------------------------------------");
-
-        System.out.println("[INFO] Finished assigning routeType to TransportShape and TransportTrip.");
-        System.out.println("[INFO] Calling computeDepartureInfo...");
-        computeDepartureInfo(scope);
-        
-        System.out.println("[INFO] Début de la propagation finale des routeType aux stops...");
-        int propagated = 0;
-        for (TransportTrip trip : tripsMap.values()) {
-            int routeType = trip.getRouteType();
-            if (routeType == -1) {
-                System.out.println("[DEBUG] Trip " + trip.getTripId() + " a routeType=-1 => ignoré");
-                continue;
+        // Projection des seules géométries distinctes
+        double[] lats = new double[pointCount];
+        double[] lons = new double[pointCount];
+        int n = 0;
+        for (int sh = 0; sh < shapeCount; sh++) {
+            if (canonical[sh] != sh) continue;
+            for (int p = feed.getShapePointsStart(sh); p < feed.getShapePointsEnd(sh); p++, n++) {
+                lats[n] = feed.getShapePointLat(p);
+                lons[n] = feed.getShapePointLon(p);
             }
-            List<String> orderedStops = trip.getStopsInOrder();
-            if (orderedStops == null || orderedStops.isEmpty()) {
+        }
+        GamaPoint[] projected = SpatialUtils.toGamaCRS(scope, lats, lons);
+        n = 0;
+        for (int sh = 0; sh < shapeCount; sh++) {
+            String shapeId = feed.getShapeIds().get(feed.getShapeTableShape(sh));
+            if (canonical[sh] != sh) {
+                String canonicalId = feed.getShapeIds().get(feed.getShapeTableShape(canonical[sh]));
+                shapeAliases.put(shapeId, canonicalId);
+                shapesMap.put(shapeId, new TransportShape(shapeId, "", shapesMap.get(canonicalId)));
                 continue;
             }
+            TransportShape shape = new TransportShape(shapeId, "");
+            for (int p = feed.getShapePointsStart(sh); p < feed.getShapePointsEnd(sh); p++) {
+                shape.addPoint(projected[n++]);
+            }
+            shape.compact();
+            shapesMap.put(shapeId, shape);
+        }
+    }
 
-            for (String stopId : orderedStops) {
-                TransportStop stop = stopsMap.get(stopId);
-                if (stop != null && stop.getRouteType() == -1) {
-                    stop.setRouteType(routeType);
-                    propagated++;
-                    System.out.println("[INFO] ✅ Propagation : stop " + stopId + " reçoit routeType " + routeType + " depuis trip " + trip.getTripId());
-                }
+    private int shapePointsHash(int sh) {
+        int hash = 1;
+        for (int p = feed.getShapePointsStart(sh); p < feed.getShapePointsEnd(sh); p++) {
+            hash = 31 * (31 * hash + Double.hashCode(feed.getShapePointLat(p))) + Double.hashCode(feed.getShapePointLon(p));
+        }
+        return hash;
+    }
+
+    private boolean sameShapePoints(int a, int b) {
+        int start = feed.getShapePointsStart(a);
+        int otherStart = feed.getShapePointsStart(b);
+        int length = feed.getShapePointsEnd(a) - start;
+        if (length != feed.getShapePointsEnd(b) - otherStart) return false;
+        for (int i = 0; i < length; i++) {
+            if (feed.getShapePointLat(start + i) != feed.getShapePointLat(otherStart + i)
+                    || feed.getShapePointLon(start + i) != feed.getShapePointLon(otherStart + i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parses trips.txt into rows of { route_id, trip_id, service_id, shape_id }.
+     * Runs on a loader thread.
+     */
+    private List<String[]> parseTrips() throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        try (GTFSTableReader trips = openTable("trips.txt")) {
+            if (trips == null) return rows;
+            Integer routeIdIndex = trips.column("route_id");
+            Integer tripIdIndex = trips.column("trip_id");
+            Integer serviceIdIndex = trips.column("service_id");
+            Integer shapeIdIdx = trips.column("shape_id");
+            if (routeIdIndex == null || tripIdIndex == null) {
+                GTFSLog.error("[ERROR] route_id or trip_id column not found in trips.txt!");
+                return rows;
+            }
+
+            while (trips.next()) {
+                String serviceId = serviceIdIndex != null ? trips.id(serviceIdIndex) : "";
+                String shapeId = shapeIdIdx != null ? trips.id(shapeIdIdx) : "";
+                rows.add(new String[] { trips.id(routeIdIndex), trips.id(tripIdIndex), serviceId, shapeId });
             }
         }
-        System.out.println("✅ Tous les stops ont reçu leur routeType à partir des trips complets. (nouveaux assignés : " + propagated + ")");
-        System.out.println("[INFO] computeDepartureInfo completed.");
+        return rows;
+    }
 
-        System.out.println("[INFO] Réinitialisation des routeType à -1 pour tous les stops...");
-        for (TransportStop stop : stopsMap.values()) {
-            stop.setRouteType(-1);
+    /**
+     * Gives the shapes of shapes.txt the route (and routeType) of the trips that use them.
+     */
+    private void linkShapesToTrips(IMap<String, String> shapeRouteMap, IMap<String, Integer> shapeRouteTypeMap) {
+        // 1. Les TransportShape ont déjà été créés à partir de shapes.txt (createShapes)
+
+        // 2. Trips (avec shapeId réel)
+        for (int t = 0; t < feed.getTripCount(); t++) {
+            TransportTrip trip = new TransportTrip(feed, t);
+            String shapeId = trip.getShapeId();
+            if (shapeId != null && shapesMap.containsKey(shapeId)) {
+                shapeRouteTypeMap.put(shapeId, trip.getRouteType());
+                shapeRouteMap.put(shapeId, trip.getRouteId());
+                shapesMap.get(shapeId).setTripId(trip.getTripId());
+            }
         }
 
-        System.out.println("[INFO] Début de la propagation finale des routeType aux stops...");
-        int counter = 0;
-        for (TransportTrip trip : tripsMap.values()) {
-            int routeType = trip.getRouteType();
-            if (routeType == -1) continue;
+        // 3. Assigner routeId/routeType aux shapes
+        for (TransportShape shape : shapesMap.values()) {
+            String shapeId = shape.getShapeId();
+            if (shapeRouteMap.containsKey(shapeId)) {
+                String routeId = shapeRouteMap.get(shapeId);
+                shape.setRouteId(routeId);
+            }
+            if (shapeRouteTypeMap.containsKey(shapeId)) {
+                shape.setRouteType(shapeRouteTypeMap.get(shapeId));
+            }
+        }
+    }
 
-            for (String stopId : trip.getStopsInOrder()) {
-                TransportStop stop = stopsMap.get(stopId);
-                if (stop != null && stop.getRouteType() == -1) {
-                    stop.setRouteType(routeType);
-                    counter++;
+    /**
+     * Adds the trips of trips.txt to the feed. Without shapes.txt, the trips are added without shape: they
+     * get their fake_ shape once grouped by journey pattern (see assignFakeShapes).
+     */
+    private static void addTrips(GTFSFeed feed, List<String[]> tripRows, boolean withShapes) {
+        for (String[] fields : tripRows) {
+            String routeId = fields[0];
+            String tripId = fields[1];
+            String shapeId = withShapes ? fields[3] : null;
+            feed.addTrip(tripId, routeId, fields[2], shapeId);
+        }
+    }
+
+    /**
+     * Gives each trip without routeType the route_type of its route (routes.txt).
+     */
+    private void assignTripRouteTypes() {
+        for (int t = 0; t < feed.getTripCount(); t++) {
+            int routeType = feed.getRouteType(feed.getTripRoute(t));
+            if (feed.getTripRouteType(t) == -1 && routeType != GTFSFeed.NONE) {
+                feed.setTripRouteType(t, routeType);
+            }
+        }
+    }
+
+    /**
+     * Parses routes.txt into rows of { route_id, route_short_name, route_long_name, route_type,
+     * route_color }, the optional columns being null when absent. Rows without a valid route_type are
+     * skipped. Runs on a loader thread.
+     */
+    private List<String[]> readRoutes() throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        try (GTFSTableReader routes = openTable("routes.txt")) {
+            if (routes == null) return rows;
+            Integer routeIdIndex = routes.column("route_id");
+            Integer routeTypeIndex = routes.column("route_type");
+            Integer shortNameIndex = routes.column("route_short_name");
+            Integer longNameIndex = routes.column("route_long_name");
+            Integer colorIndex = routes.column("route_color");
+            if (routeIdIndex == null || routeTypeIndex == null) {
+                throw new RuntimeException("route_id or route_type column not found in routes.txt!");
+            }
+            while (routes.next()) {
+                try {
+                    String routeId = routes.id(routeIdIndex);
+                    int type = Integer.parseInt(routes.get(routeTypeIndex).trim());
+                    // Kept, but counted with the unknown route types in the metadata
+                    if (type < 0) loadReport.problem("routes.txt: negative route_type", routes.toString());
+                    String routeType = String.valueOf(type);
+                    rows.add(new String[] { routeId, optional(routes, shortNameIndex), optional(routes, longNameIndex),
+                        routeType, optional(routes, colorIndex) });
+                } catch (Exception e) {
+                    loadReport.problem("routes.txt: invalid route_type", routes + " -> " + e.getMessage());
                 }
             }
         }
-        System.out.println("✅ Tous les stops ont reçu leur routeType à partir des trips complets. (nouveaux assignés : " + counter + ")");
+        return rows;
+    }
 
+    /** Value of an optional column, or null if the column is absent or the value empty. */
+    private static String optional(GTFSTableReader table, Integer column) {
+        if (column == null) return null;
+        String value = table.get(column).trim();
+        return value.isEmpty() ? null : value;
     }
 
+    /**
+     * Parses stops.txt into rows of { stop_id, stop_name, stop_lat, stop_lon }. Runs on a loader thread.
+     */
+    private List<String[]> parseStops() throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        try (GTFSTableReader stops = openTable("stops.txt")) {
+            if (stops == null) return null;
+            Integer stopIdIndex = stops.column("stop_id");
+            Integer stopNameIndex = stops.column("stop_name");
+            Integer stopLatIndex = stops.column("stop_lat");
+            Integer stopLonIndex = stops.column("stop_lon");
 
+            if (stopIdIndex == null || stopNameIndex == null || stopLatIndex == null || stopLonIndex == null) {
+                throw new RuntimeException("stop_id, stop_name, stop_lat or stop_lon column not found in stops.txt!");
+            }
+            while (stops.next()) {
+                rows.add(new String[] { stops.id(stopIdIndex), stops.get(stopNameIndex),
+                    stops.get(stopLatIndex), stops.get(stopLonIndex) });
+            }
+        }
+        return rows;
+    }
 
-    private char detectSeparator(File file) throws IOException {
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                // Ignore les lignes vides
-                if (line.trim().isEmpty()) continue;
+    /**
+     * Defines in the feed the stops of stops.txt used by at least one trip.
+     */
+    private void defineStops(GTFSFeed feed, List<String[]> stopRows) {
+        for (String[] fields : stopRows) {
+            try {
+                String stopId = fields[0];
+                if (feed.getStopIds().indexOf(stopId) == GTFSFeed.NONE) continue;
 
-                // Compte virgules/points-virgules hors guillemets
-                int commaCount = 0, semicolonCount = 0;
-                boolean inQuotes = false;
-                for (char c : line.toCharArray()) {
-                    if (c == '"') inQuotes = !inQuotes;
-                    if (!inQuotes) {
-                        if (c == ',') commaCount++;
-                        if (c == ';') semicolonCount++;
-                    }
-                }
-                if (semicolonCount > commaCount) return ';';
-                else return ','; // Virgule par défaut
+                String stopName = fields[1];
+                double stopLat = Double.parseDouble(fields[2]);
+                double stopLon = Double.parseDouble(fields[3]);
+                feed.defineStop(stopId, stopName, stopLat, stopLon);
+            } catch (Exception e) {
+                loadReport.problem("stops.txt: invalid row", java.util.Arrays.toString(fields) + " -> " + e.getMessage());
             }
         }
-        // Par défaut, virgule
-        return ',';
+        feed.setStopRowCount(stopRows.size());
     }
 
-    
-    public static String[] parseCsvLine(String line, char separator) {
-        try {
-            CSVParser parser = new CSVParserBuilder().withSeparator(separator).build();
-            return parser.parseLine(line);
-        } catch (Exception e) {
-            System.err.println("[ERROR] CSV parsing failed: " + line);
-            return null;
+    /**
+     * Creates the TransportStop objects for the stops defined in the feed, their locations being
+     * projected in one batch.
+     */
+    private void createStops(IScope scope) {
+        stopsByIndex = new TransportStop[feed.getStopCount()];
+        double[] lats = new double[feed.getDefinedStopCount()];
+        double[] lons = new double[feed.getDefinedStopCount()];
+        for (int i = 0; i < lats.length; i++) {
+            lats[i] = feed.getStopLat(feed.getDefinedStop(i));
+            lons[i] = feed.getStopLon(feed.getDefinedStop(i));
+        }
+        GamaPoint[] locations = SpatialUtils.toGamaCRS(scope, lats, lons);
+        for (int i = 0; i < feed.getDefinedStopCount(); i++) {
+            int index = feed.getDefinedStop(i);
+            TransportStop stop = new TransportStop(feed, index, locations[i]);
+            stopsByIndex[index] = stop;
+            stopsMap.put(stop.getStopId(), stop);
         }
+        GTFSLog.info("Nombre d'objets TransportStop créés : " + stopsMap.size());
     }
 
     /**
-     * Reads a CSV file 
+     * Streams stop_times.txt once: collects the stop_ids used by at least one trip and keeps the columns
+     * needed later (trip_id, stop_id, departure_time and arrival_time in seconds, shape_dist_traveled,
+     * stop_sequence) as primitive columns.
+     * Runs on a loader thread.
      */
-    private List<String[]> readCsvFileOpenCSV(File file, Map<String, Integer> headerMap) throws IOException, CsvValidationException {
-        List<String[]> content = new ArrayList<>();
-        if (!file.isFile()) {
-            throw new IOException(file.getAbsolutePath() + " is not a valid file.");
-        }
-
-        char separator = detectSeparator(file);
- 
-        try (CSVReader reader = new CSVReaderBuilder(new FileReader(file))
-                                    .withSkipLines(0)
-                                    .withCSVParser(new CSVParserBuilder().withSeparator(separator).build())
-                                    .build()) {
-            // Lis et nettoie le header
-            String[] headers = reader.readNext();
-            while (headers != null && headers.length == 1 && headers[0].trim().isEmpty()) {
-                headers = reader.readNext();
+    private GTFSFeed.StopTimeColumns readStopTimes() throws IOException {
+        GTFSFeed.StopTimeColumns rows = new GTFSFeed.StopTimeColumns();
+        try (GTFSRowSource table = openLargeTable("stop_times.txt")) {
+            if (table == null) {
+                rows.setComplete(false);
+                return rows;
             }
-            if (headers != null) {
-                for (int i = 0; i < headers.length; i++) {
-                    String col = headers[i].trim().replace("\uFEFF", "").toLowerCase();
-                    headerMap.put(col, i);
+            Integer tripIdIndex = table.column("trip_id");
+            Integer stopIdIndex = table.column("stop_id");
+            Integer departureTimeIndex = table.column("departure_time");
+            Integer arrivalTimeIndex = table.column("arrival_time");
+            Integer shapeDistIndex = table.column("shape_dist_traveled");
+            Integer stopSequenceIndex = table.column("stop_sequence");
+            boolean complete = stopIdIndex != null && tripIdIndex != null && departureTimeIndex != null && stopSequenceIndex != null;
+            rows.setComplete(complete);
+            if (stopIdIndex == null) return rows;
+
+            while (table.next()) {
+                String stopId = table.id(stopIdIndex);
+                if (!complete) {
+                    rows.addStop(stopId);
+                    continue;
                 }
-            }
-            //System.out.println("Headers trouvés dans " + file.getName() + " : " + headerMap.keySet());
-            String[] line;
-            while ((line = reader.readNext()) != null) {
-                // Complète les champs manquants (à droite)
-                if (line.length < headerMap.size()) {
-                    String[] newLine = new String[headerMap.size()];
-                    System.arraycopy(line, 0, newLine, 0, line.length);
-                    for (int i = line.length; i < headerMap.size(); i++) {
-                        newLine[i] = "";
-                    }
-                    line = newLine;
+                int seq;
+                try {
+                    seq = table.getInt(stopSequenceIndex);
+                } catch (NumberFormatException e) {
+                    seq = GTFSFeed.StopTimeColumns.NO_SEQUENCE;
                 }
-                // Ignore les lignes totalement vides
-                boolean isEmpty = true;
-                for (String field : line) {
-                    if (field != null && !field.trim().isEmpty()) {
-                        isEmpty = false;
-                        break;
+                int departure = table.getTimeSeconds(departureTimeIndex);
+                int arrival = arrivalTimeIndex == null ? GTFSFeed.NO_TIME : table.getTimeSeconds(arrivalTimeIndex);
+                double distance = Double.NaN;
+                if (shapeDistIndex != null && !table.isBlank(shapeDistIndex)) {
+                    try {
+                        distance = table.getDouble(shapeDistIndex);
+                    } catch (NumberFormatException e) {
+                        // valeur illisible : traitée comme absente
                     }
                 }
-                if (isEmpty) continue;
-                content.add(line); // Ajoute le tableau de champs
+                rows.add(table.id(tripIdIndex), stopId, departure, arrival, distance, seq);
             }
         }
-        //System.out.println("⇒ Fichier '" + file.getName() + "' : " + content.size() + " lignes lues.");
-        return content;
+        return rows;
     }
 
+    /**
+     * Starts parsing a table on the loader executor.
+     */
+    private static <T> CompletableFuture<T> parseAsync(TableTask<T> task, ExecutorService executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.parse();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
 
+    /**
+     * Waits for a table parsed on the loader executor and reports its failure as a GAMA error.
+     */
+    private static <T> T await(CompletableFuture<T> task, IScope scope) {
+        try {
+            return task.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof GamaRuntimeException gre) throw gre;
+            if (cause instanceof RuntimeException re) throw re;
+            throw GamaRuntimeException.create(cause, scope);
+        }
+    }
 
+    @FunctionalInterface
+    private interface TableTask<T> {
+        T parse() throws IOException;
+    }
 
     /**
-     * Trouve l’index d’une colonne parmi plusieurs possibilités dans le headerMap.
-     * @param headerMap La map colonne → index.
-     * @param possibleNames Liste de noms possibles (ex: "stop_id", "stopid"...).
-     * @return L’index si trouvé, sinon null.
+     * Returns the feed model: read from the binary snapshot when it matches the current tables, parsed
+     * from the tables (and saved as a snapshot) otherwise.
      */
-    private Integer findColumnIndex(Map<String, Integer> headerMap, String... possibleNames) {
-        if (headerMap == null) return null;
-        for (String target : possibleNames) {
-            for (String col : headerMap.keySet()) {
-                if (col.equalsIgnoreCase(target.trim())) return headerMap.get(col);
+    private GTFSFeed loadFeed(IScope scope) {
+        snapshotFile = null;
+        snapshotKey = null;
+        if (GTFSSnapshot.isEnabled()) {
+            try {
+                snapshotKey = GTFSSnapshot.key(source);
+                snapshotFile = GTFSSnapshot.locate(getFile(scope));
+                GTFSFeed cached = GTFSSnapshot.read(snapshotFile, snapshotKey);
+                if (cached != null) {
+                    GTFSLog.info("[INFO] GTFS feed loaded from snapshot " + snapshotFile);
+                    return cached;
+                }
+            } catch (IOException e) {
+                GTFSLog.warning("[WARNING] GTFS snapshot disabled for this feed: " + e.getMessage());
+                snapshotKey = null;
             }
         }
-        return null;
+        GTFSFeed parsed = buildFeed(scope);
+        if (snapshotKey != null) GTFSSnapshot.write(snapshotFile, snapshotKey, parsed);
+        return parsed;
     }
 
-    
+    /**
+     * Parses routes, trips, stop_times and stops and builds the feed model. shapes.txt is only probed (has
+     * it any row?): its points are read by ensureShapes. No GAMA call (projection, date) is made here, so
+     * the result can be saved as a snapshot.
+     */
+    private GTFSFeed buildFeed(IScope scope) {
+        // Lecture parallèle des tables : chaque fichier est analysé sur un thread virtuel, et chaque
+        // étape ci-dessous démarre dès que ses tables d'entrée sont prêtes.
+        try (ExecutorService loader = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletableFuture<List<String[]>> routesTask = parseAsync(this::readRoutes, loader);
+            CompletableFuture<GTFSFeed.StopTimeColumns> stopTimesTask = parseAsync(this::readStopTimes, loader);
+            CompletableFuture<List<String[]>> stopsTask = parseAsync(this::parseStops, loader);
+            CompletableFuture<Boolean> shapesTableTask = parseAsync(this::hasShapeRows, loader);
+            CompletableFuture<List<String[]>> tripsTask = parseAsync(this::parseTrips, loader);
+
+            // 1. Lecture des routes (routeId, noms, routeType, couleur)
+            List<String[]> routeRows = await(routesTask, scope);
+
+            // 2. Collecte des stop_ids utilisés (commun) + colonnes stop_times
+            GTFSFeed.StopTimeColumns stopTimeRows = await(stopTimesTask, scope);
+            GTFSFeed built = new GTFSFeed(stopTimeRows.getStopIds());
+            for (String[] route : routeRows) {
+                built.defineRoute(route[0], route[1], route[2], Integer.parseInt(route[3]), route[4]);
+            }
+
+            // 3. Stops de stops.txt utilisés par au moins un trip
+            List<String[]> stopRows = await(stopsTask, scope);
+            if (stopRows != null) defineStops(built, stopRows);
+
+            // 4. shapes.txt présent et non vide (ses points sont lus à la demande)
+            boolean shapesTxtExists = await(shapesTableTask, scope);
+            built.setShapesTable(shapesTxtExists);
+
+            // 5. Trips, puis regroupement des stop_times par trip
+            addTrips(built, await(tripsTask, scope), shapesTxtExists);
+            if (stopTimeRows.isComplete()) built.setStopTimes(stopTimeRows);
+            if (!shapesTxtExists) assignFakeShapes(built);
+            return built;
+        }
+    }
+
+    /**
+     * Loads the feed and creates the stops and trips the first time they are requested. shapes.txt is
+     * left aside until shapes are requested (see ensureShapes).
+     */
+    private synchronized void ensureTransportObjects(IScope scope) {
+        applyPendingChanges();
+        loadTransportObjects(scope);
+    }
+
+    /**
+     * Loads the feed if needed, without applying the pending changes of the tables: used by the steps
+     * that run while the objects of the reader are being read (e.g. the shapes requested by the positions
+     * of the stops along them).
+     */
+    private synchronized void loadTransportObjects(IScope scope) {
+        if (feed != null) {
+            if (departuresStale) {
+                departuresStale = false;
+                computeDepartureInfo(scope);
+                propagateRouteTypesToStops();
+            }
+            return;
+        }
+        departuresStale = false;
+        if (tableNames == null) loadGtfsFiles(scope);
+        try {
+            withSource(scope, () -> createTransportObjects(scope));
+        } catch (RuntimeException e) {
+            feed = null;
+            throw e;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void createTransportObjects(IScope scope) {
+        GTFSLog.info("Starting transport object creation...");
+
+        // Initialisation des maps globales
+        routesMap = GamaMapFactory.create(Types.STRING, Types.get(TransportRoute.class)); 
+        stopsMap = GamaMapFactory.create(Types.STRING, Types.get(TransportStop.class));   
+        shapesMap = GamaMapFactory.create(Types.STRING, Types.get(TransportShape.class));
+        shapeAliases = GamaMapFactory.create(Types.STRING, Types.STRING);
+        shapeRouteTypeMap = GamaMapFactory.create(Types.STRING, Types.INT);
+        shapesLoaded = false;
+        timetables.clear();
+        metadata = null;
+        shapeReferencing = null;
+
+        // 1-5. Modèle du feed : snapshot binaire s'il est à jour, lecture des tables sinon
+        feed = loadFeed(scope);
+
+        // Routes, et table route_id -> route_type (routes.txt)
+        routeTypeMapGlobal = GamaMapFactory.create(Types.STRING, Types.INT);
+        for (int r = 0; r < feed.getRouteCount(); r++) {
+            routesMap.put(feed.getRouteIds().get(r), new TransportRoute(feed, r));
+            if (feed.getRouteType(r) != GTFSFeed.NONE) routeTypeMapGlobal.put(feed.getRouteIds().get(r), feed.getRouteType(r));
+        }
+
+        // 3. Création des stops (commun)
+        createStops(scope);
+        GTFSLog.info("Finished creating TransportStop objects.");
+
+        // 4-5. Shapes : construites à la demande (create transport_shape)
+        long stopRowsRead = feed.getStopRowCount();
+        if (feed.hasShapesTable()) {
+            GTFSLog.info("[INFO] shapes.txt found. Deferring shapes creation until transport_shape agents are created.");
+        } else {
+            GTFSLog.info("[INFO] shapes.txt NOT found. Deferring fake shapes creation until transport_shape agents are created.");
+        }
+
+        // 6. Affecte le routeType à tous les trips (commune)
+        assignTripRouteTypes();
+
+        // 7. Résumé et computeDepartureInfo (communs)
+        GTFSLog.info("---- Récapitulatif création objets GTFS ----");
+        GTFSLog.info("Nombre de stops lus dans stops.txt          : " + stopRowsRead);
+        GTFSLog.info("Nombre de stops créés (stopsMap)            : " + stopsMap.size());
+        GTFSLog.info("Nombre de trips créés (feed)                : " + feed.getTripCount());
+        GTFSLog.info("Nombre de stop_times regroupés par trip     : " + feed.getStopTimeRowCount());
+        GTFSLog.info("Nombre de journey patterns                  : " + feed.getPatternCount());
+        GTFSLog.info("--------------------------------------------");
+        loadReport.set("stops_read", stopRowsRead);
+        loadReport.set("stops_created", stopsMap.size());
+        loadReport.set("routes", routesMap.size());
+        loadReport.set("trips", feed.getTripCount());
+        loadReport.set("stop_times", feed.getStopTimeRowCount());
+        loadReport.set("journey_patterns", feed.getPatternCount());
+        loadReport.set("stop_times_invalid_sequence", feed.getInvalidSequenceRows());
+        loadReport.set("stop_times_unknown_trip", feed.getUnknownTripRows());
+
+        GTFSLog.info("[INFO] Finished assigning routeType to TransportTrip.");
+        GTFSLog.info("[INFO] Calling computeDepartureInfo...");
+        computeDepartureInfo(scope);
+        
+        propagateRouteTypesToStops();
+        loadReport.log();
+    }
+
+    /**
+     * Gives each stop the routeType of the first trip (in trips.txt order) that serves it.
+     */
+    private void propagateRouteTypesToStops() {
+        GTFSLog.info("[INFO] Réinitialisation des routeType à -1 pour tous les stops...");
+        for (TransportStop stop : stopsMap.values()) {
+            stop.setRouteType(-1);
+        }
+
+        GTFSLog.info("[INFO] Début de la propagation finale des routeType aux stops...");
+        int counter = 0;
+        for (int t = 0; t < feed.getTripCount(); t++) {
+            int routeType = feed.getTripRouteType(t);
+            if (routeType == -1 || !feed.isTripActive(t)) continue;
+
+            for (int row = feed.getStopTimesStart(t); row < feed.getStopTimesEnd(t); row++) {
+                TransportStop stop = stopsByIndex[feed.getStopTimeStop(row)];
+                if (stop != null && stop.getRouteType() == -1) {
+                    stop.setRouteType(routeType);
+                    counter++;
+                }
+            }
+        }
+        GTFSLog.info("✅ Tous les stops ont reçu leur routeType à partir des trips complets. (nouveaux assignés : " + counter + ")");
+        loadReport.set("stops_with_route_type", counter);
+    }
+
+
+
     @Override
     protected void fillBuffer(final IScope scope) throws GamaRuntimeException {
-    	System.out.println("Filling buffer...");
-        if (gtfsData == null) {
-        	System.out.println("gtfsData is null, loading GTFS files...");
+    	GTFSLog.info("Filling buffer...");
+        if (tableNames == null) {
+        	GTFSLog.info("GTFS tables not listed yet, loading GTFS files...");
             loadGtfsFiles(scope);
-            System.out.println("Finished loading GTFS files.");
+            GTFSLog.info("Finished loading GTFS files.");
         }else
-        	 System.out.println("gtfsData is already initialized.");
+        	 GTFSLog.info("GTFS tables already listed.");
     
     }
 
     @Override
     public IList<String> getAttributes(final IScope scope) {
-    	System.out.println("Retrieving GTFS data attributes...");
-    	if (gtfsData != null) {
-            Set<String> keySet = gtfsData.keySet();
-            System.out.println("Attributes retrieved: " + keySet);
-            return GamaListFactory.createWithoutCasting(Types.STRING, keySet.toArray(new String[0]));
+    	GTFSLog.info("Retrieving GTFS data attributes...");
+    	if (tableNames != null) {
+            GTFSLog.info("Attributes retrieved: " + tableNames);
+            return GamaListFactory.createWithoutCasting(Types.STRING, tableNames.toArray(new String[0]));
         } else {
-            System.out.println("gtfsData is null, no attributes to retrieve.");
+            GTFSLog.info("GTFS tables not listed, no attributes to retrieve.");
             return GamaListFactory.createWithoutCasting(Types.STRING);
         }
     }
@@ -811,41 +1311,170 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
     }
 
     public List<TransportTrip> getActiveTripsForDate(IScope scope, LocalDate date) {
+        ensureTransportObjects(scope);
         Set<String> activeTripIds = getActiveTripIdsForDate(scope, date);
         List<TransportTrip> activeTrips = new ArrayList<>();
         for (String tripId : activeTripIds) {
-            TransportTrip trip = tripsMap.get(tripId);
-            if (trip != null) activeTrips.add(trip);
+            int trip = feed.getTripIds().indexOf(tripId);
+            if (trip != GTFSFeed.NONE) activeTrips.add(new TransportTrip(feed, trip));
         }
         return activeTrips;
     }
-    
 
+    /**
+     * Problems met on the rows of the tables and figures of the loading steps done so far.
+     */
+    public GTFSLoadReport getLoadReport() {
+        return loadReport;
+    }
+
+    /**
+     * @return The index of the service days of calendar.txt and calendar_dates.txt
+     */
+    public GTFSServiceCalendar getServiceCalendar() {
+        ensureCalendars();
+        return serviceCalendar;
+    }
+
+    /**
+     * Positions of the stops of each trip along its shape, used when stop_times.txt has no
+     * shape_dist_traveled. The shapes are only loaded when the first trip is projected.
+     */
+    public synchronized GTFSShapeReferencing getShapeReferencing(IScope scope) {
+        ensureTransportObjects(scope);
+        if (shapeReferencing == null) {
+            shapeReferencing = new GTFSShapeReferencing(feed, () -> {
+                loadShapes(scope);
+                return shapesMap;
+            }, stopsByIndex);
+        }
+        return shapeReferencing;
+    }
+
+    /**
+     * Positions of the stops along the shapes used by the stop agents: only if the shapes are already
+     * loaded (e.g. transport_shape agents created first) or if the projection is enabled (see
+     * setStopShapeDistances), so that a model creating only stops never reads shapes.txt.
+     *
+     * @return The positions, or null if the stops only use the shape_dist_traveled of stop_times.txt
+     */
+    public synchronized GTFSShapeReferencing getStopShapeReferencing(IScope scope) {
+        ensureTransportObjects(scope);
+        return shapesLoaded || stopShapeDistances ? getShapeReferencing(scope) : null;
+    }
+
+    /**
+     * Summary of the feed (service span, rows per table, trips and stops per route_type...), computed
+     * in one pass the first time it is requested.
+     */
+    public synchronized GTFSMetadata getMetadata(IScope scope) {
+        ensureTransportObjects(scope);
+        ensureCalendars();
+        if (metadata == null) metadata = GTFSMetadata.build(feed, serviceCalendar);
+        return metadata;
+    }
+
+    /**
+     * Departure timetable of a service day, built on first request.
+     */
+    public GTFSTimetable getTimetable(IScope scope, LocalDate serviceDay) {
+        ensureTransportObjects(scope);
+        ensureCalendars();
+        return await(timetableTask(serviceDay), scope);
+    }
+
+    /**
+     * Departures between two instants, in departure order. The service days covering the period are
+     * kept in a sliding window: a trip leaving after midnight (time past 24:00:00) belongs to the
+     * previous service day and is returned on the day it actually leaves. Days before the window are
+     * dropped and the day after it is prepared in the background, so that a simulation crossing
+     * midnight does not wait for the next timetable. Runs under the reader lock: the trip and stop ints
+     * refer to the current feed until the lock is released (see getDepartureTripIdsBetween).
+     *
+     * @param from Start of the period (included)
+     * @param to End of the period (excluded)
+     */
+    public synchronized List<GTFSTimetable.Departure> getDeparturesBetween(IScope scope, LocalDateTime from, LocalDateTime to) {
+        ensureTransportObjects(scope);
+        ensureCalendars();
+        List<GTFSTimetable.Departure> departures = new ArrayList<>();
+        if (feed == null || !to.isAfter(from)) return departures;
+
+        LocalDate firstDay = from.toLocalDate().minusDays(feed.getMaxDeparture() / 86400);
+        LocalDate lastDay = to.toLocalDate();
+        timetables.keySet().removeIf(day -> day.isBefore(firstDay) || day.isAfter(lastDay.plusDays(1)));
+        List<CompletableFuture<GTFSTimetable>> window = new ArrayList<>();
+        for (LocalDate day = firstDay; !day.isAfter(lastDay); day = day.plusDays(1)) window.add(timetableTask(day));
+        timetableTask(lastDay.plusDays(1));
+
+        for (CompletableFuture<GTFSTimetable> task : window) {
+            GTFSTimetable timetable = await(task, scope);
+            LocalDateTime midnight = timetable.getServiceDay().atStartOfDay();
+            long fromSeconds = Math.max(ChronoUnit.SECONDS.between(midnight, from), 0);
+            long toSeconds = ChronoUnit.SECONDS.between(midnight, to);
+            if (fromSeconds > Integer.MAX_VALUE) continue;
+            for (int i = timetable.indexOf((int) fromSeconds); i < timetable.size() && timetable.getDeparture(i) < toSeconds; i++) {
+                departures.add(timetable.getDepartureAt(i));
+            }
+        }
+        // Fusion des jours de service (stable : à heure égale, le jour de service le plus ancien d'abord)
+        departures.sort(Comparator.comparing(GTFSTimetable.Departure::getDateTime));
+        return departures;
+    }
+
+    /**
+     * Departures between two instants grouped by first stop (stop_id -> trip_ids in departure order). The
+     * ids are resolved under the same lock as the departures, so a change of the tables applied meanwhile
+     * cannot swap the feed they refer to.
+     *
+     * @param from Start of the period (included)
+     * @param to End of the period (excluded)
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized IMap<String, IList<String>> getDepartureTripIdsBetween(IScope scope, LocalDateTime from, LocalDateTime to) {
+        IMap<String, IList<String>> byStop = GamaMapFactory.create(Types.STRING, Types.LIST);
+        for (GTFSTimetable.Departure departure : getDeparturesBetween(scope, from, to)) {
+            String stopId = feed.getStopId(departure.stop());
+            IList<String> trips = byStop.get(stopId);
+            if (trips == null) {
+                trips = GamaListFactory.create(Types.STRING);
+                byStop.put(stopId, trips);
+            }
+            trips.add(feed.getTripId(departure.trip()));
+        }
+        return byStop;
+    }
+
+    /**
+     * Timetable of a service day, built on a virtual thread the first time it is requested. The feed and the
+     * calendar are taken under the reader lock.
+     */
+    private synchronized CompletableFuture<GTFSTimetable> timetableTask(LocalDate serviceDay) {
+        GTFSFeed current = feed;
+        GTFSServiceCalendar calendar = serviceCalendar;
+        return timetables.computeIfAbsent(serviceDay, day -> CompletableFuture.supplyAsync(
+            () -> GTFSTimetable.build(current, calendar, day),
+            task -> Thread.ofVirtual().name("gtfs-timetable-" + day).start(task)));
+    }
 
     public void computeDepartureInfo(IScope scope) {
-        System.out.println("Starting computeDepartureInfo...");
+        if (feed == null) {
+            // Premier appel : le chargement du feed calcule les départs
+            ensureTransportObjects(scope);
+            return;
+        }
+        GTFSLog.info("Starting computeDepartureInfo...");
 
         // 1. Détermination de la stratégie de filtrage
-        LocalDate simulationDate = LocalDate.now(); // Date par défaut
+        LocalDate simulationDate = null;
         boolean startingDateDefini = false;
         boolean useAllTrips = false;
 
         try {
             Object startingDateObj = scope != null ? scope.getGlobalVarValue("starting_date") : null;
-            
-         // ✅ LOGS DEBUG CAS 3
-            System.out.println("🔍 DEBUG CAS 3 - starting_date check:");
-            System.out.println("   → scope: " + scope);
-            System.out.println("   → scope != null: " + (scope != null));
-            System.out.println("   → startingDateObj: " + startingDateObj);
-            System.out.println("   → startingDateObj == null: " + (startingDateObj == null));
-            if (startingDateObj != null) {
-                System.out.println("   → startingDateObj type: " + startingDateObj.getClass());
-                System.out.println("   → startingDateObj toString: '" + startingDateObj.toString() + "'");
-            }
-            
+            loadReport.set("starting_date", startingDateObj == null ? null : startingDateObj.toString());
+
             boolean isDefaultDate = false;
-            simulationDate = null; // reset avant
 
             if (startingDateObj != null) {
                 if (startingDateObj instanceof gama.core.util.GamaDate) {
@@ -856,7 +1485,7 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
                     // Détecter la date par défaut de GAML (1970-01-01)
                     if (dateValue.equals(LocalDate.of(1970, 1, 1))) {
                         isDefaultDate = true;
-                        System.out.println("[INFO] Date par défaut GAML détectée (1970-01-01) → CAS 3 forcé");
+                        GTFSLog.info("[INFO] Date par défaut GAML détectée (1970-01-01) → CAS 3 forcé");
                     } else {
                         simulationDate = dateValue;
                     }
@@ -875,714 +1504,220 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
 
             if (startingDateObj != null && !isDefaultDate && simulationDate != null) {
                 startingDateDefini = true;
-                System.out.println("[INFO] starting_date DÉFINI: " + simulationDate);
+                GTFSLog.info("[INFO] starting_date DÉFINI: " + simulationDate);
             } else {
                 // ✅ CAS 3 : starting_date non défini OU date par défaut
                 startingDateDefini = false;
                 useAllTrips = true;
-                System.out.println("[INFO] starting_date NON DÉFINI → TOUS LES TRIPS SERONT UTILISÉS");
+                GTFSLog.info("[INFO] starting_date NON DÉFINI → TOUS LES TRIPS SERONT UTILISÉS");
             }
         } catch (Exception e) {
-            System.out.println("[WARNING] Erreur parsing starting_date: " + e.getMessage());
+            GTFSLog.info("[WARNING] Erreur parsing starting_date: " + e.getMessage());
             startingDateDefini = false;
             useAllTrips = true;
-            System.out.println("[INFO] Fallback → TOUS LES TRIPS SERONT UTILISÉS");
+            GTFSLog.info("[INFO] Fallback → TOUS LES TRIPS SERONT UTILISÉS");
         }
         // 2. Détermination des trips actifs selon la stratégie
         Set<String> activeTripIds;
         
         if (useAllTrips) {
             // ✅ CAS 3 : Utiliser TOUS les trips
-            activeTripIds = new HashSet<>(tripsMap.keySet());
-            System.out.println("=== CAS 3 : TOUS LES TRIPS UTILISÉS ===");
-            System.out.println("Nombre total de trips: " + activeTripIds.size());
+            activeTripIds = new HashSet<>(feed.getTripCount());
+            for (int t = 0; t < feed.getTripCount(); t++) activeTripIds.add(feed.getTripId(t));
+            GTFSLog.info("=== CAS 3 : TOUS LES TRIPS UTILISÉS ===");
+            GTFSLog.info("Nombre total de trips: " + activeTripIds.size());
         } else {
             // ✅ CAS 1 & 2 : Filtrage par date (logique existante)
             activeTripIds = getActiveTripIdsForDate(scope, simulationDate);
-            System.out.println("=== CAS 1/2 : FILTRAGE PAR DATE ===");
-            System.out.println("Date utilisée: " + simulationDate);
-            System.out.println("Trips actifs trouvés: " + activeTripIds.size());
+            GTFSLog.info("=== CAS 1/2 : FILTRAGE PAR DATE ===");
+            GTFSLog.info("Date utilisée: " + simulationDate);
+            GTFSLog.info("Trips actifs trouvés: " + activeTripIds.size());
         }
         
-        System.out.println("🔍 DEBUG Java - activeTripIds.size() = " + activeTripIds.size());
+        GTFSLog.debug("🔍 DEBUG Java - activeTripIds.size() = " + activeTripIds.size());
        
 
         // 3. Traitement des stop_times (identique pour tous les cas)
-        List<String[]> stopTimesData = (List<String[]>) gtfsData.get("stop_times.txt");
-        IMap<String, Integer> stopTimesHeader = headerMaps.get("stop_times.txt");
-        
-        if (stopTimesData == null || stopTimesHeader == null) {
-            System.err.println("[ERROR] stop_times.txt data or headers are missing!");
+        if (!tableNames.contains("stop_times.txt")) {
+            GTFSLog.error("[ERROR] stop_times.txt data or headers are missing!");
             return;
         }
-
-        Integer tripIdIndex = findColumnIndex(stopTimesHeader, "trip_id");
-        Integer stopIdIndex = findColumnIndex(stopTimesHeader, "stop_id");
-        Integer departureTimeIndex = findColumnIndex(stopTimesHeader, "departure_time");
-        Integer stopSequenceIndex = findColumnIndex(stopTimesHeader, "stop_sequence");
-
-        if (tripIdIndex == null || stopIdIndex == null || departureTimeIndex == null || stopSequenceIndex == null) {
-            System.err.println("[ERROR] Required columns missing in stop_times.txt!");
+        if (!feed.hasStopTimes()) {
+            GTFSLog.error("[ERROR] Required columns missing in stop_times.txt!");
             return;
         }
 
-        // 4. Remplissage des trips et stops (avec filtrage conditionnel)
+        // 4. Activation des trips retenus (même ordre de parcours que le filtrage)
+        int[] tripsToProcess;
+        if (useAllTrips) {
+            tripsToProcess = new int[feed.getTripCount()];
+            for (int t = 0; t < tripsToProcess.length; t++) tripsToProcess[t] = t;
+        } else {
+            tripsToProcess = activeTripIds.stream()
+                .mapToInt(id -> feed.getTripIds().indexOf(id))
+                .filter(t -> t != GTFSFeed.NONE)
+                .toArray();
+        }
+        for (int t = 0; t < feed.getTripCount(); t++) feed.setTripActive(t, false);
         int totalAdded = 0;
-        int totalSkipped = 0;
-        int totalMissingTrip = 0;
-        int totalFilteredOut = 0; // ✅ NOUVEAU compteur
-        
-        int processedTrips = 0;
-        int filteredTrips = 0;
-
-        for (String[] fields : stopTimesData) {
-            if (fields == null || fields.length <= Math.max(Math.max(tripIdIndex, stopIdIndex), Math.max(departureTimeIndex, stopSequenceIndex))) {
-                totalSkipped++;
-                continue;
-            }
-
-            try {
-                String tripId = fields[tripIdIndex].trim().replace("\"", "").replace("'", "");
-                
-                
-                
-                // ✅ FILTRAGE CONDITIONNEL selon la stratégie
-                if (!useAllTrips && !activeTripIds.contains(tripId)) {
-                    totalFilteredOut++;
-                    filteredTrips++;
-                    continue; // ✅ Skip seulement si on filtre par date      
-                }
-                processedTrips++; 
-                String stopId = fields[stopIdIndex].trim().replace("\"", "").replace("'", "");
-                String departureTime = fields[departureTimeIndex];
-                int stopSequence = Integer.parseInt(fields[stopSequenceIndex]);
-
-                TransportTrip trip = tripsMap.get(tripId);
-                if (trip == null) {
-                    totalMissingTrip++;
-                    continue;
-                }
-
-                trip.addStop(stopId);
-                trip.addStopDetail(stopId, departureTime, 0.0);
-                totalAdded++;
-
-                TransportStop stop = stopsMap.get(stopId);
-                if (stop != null) {
-                    int tripRouteType = trip.getRouteType();
-                    if (tripRouteType != -1 && stop.getRouteType() == -1) {
-                        stop.setRouteType(tripRouteType);
-                    }
-                    stop.addTripShapePair(tripId, trip.getShapeId()); // maintenant String → OK après 2) et 3)
-                }
-
-            } catch (Exception e) {
-                System.err.println("[ERROR] Échec traitement ligne : " + Arrays.toString(fields) + " → " + e.getMessage());
-            }
+        for (int t : tripsToProcess) {
+            feed.setTripActive(t, true);
+            totalAdded += feed.getStopTimeCount(t);
         }
-        
-        System.out.println("🔍 DEBUG stop_times boucle:");
-        System.out.println("   → Trips processés: " + processedTrips);
-        System.out.println("   → Trips filtrés: " + filteredTrips);
+        int totalFilteredOut = useAllTrips ? 0 : feed.getStopTimeRowCount() - totalAdded;
 
         // 5. Résumé avec nouvelles métriques
-        System.out.println("🔎 Résumé computeDepartureInfo():");
-        System.out.println("   → Stratégie: " + (useAllTrips ? "TOUS LES TRIPS" : "FILTRAGE PAR DATE"));
-        System.out.println("   → starting_date défini: " + startingDateDefini);
+        GTFSLog.info("🔎 Résumé computeDepartureInfo():");
+        GTFSLog.info("   → Stratégie: " + (useAllTrips ? "TOUS LES TRIPS" : "FILTRAGE PAR DATE"));
+        GTFSLog.info("   → starting_date défini: " + startingDateDefini);
         if (!useAllTrips) {
-            System.out.println("   → Date de simulation: " + simulationDate);
-            System.out.println("   → Trips actifs trouvés: " + activeTripIds.size());
+            GTFSLog.info("   → Date de simulation: " + simulationDate);
+            GTFSLog.info("   → Trips actifs trouvés: " + activeTripIds.size());
         }
-        System.out.println("   → Stops ajoutés dans trips : " + totalAdded);
-        System.out.println("   → Lignes stop_times ignorées (incomplètes) : " + totalSkipped);
-        System.out.println("   → tripId non trouvés dans tripsMap : " + totalMissingTrip);
-        System.out.println("   → Trips filtrés par date : " + totalFilteredOut);
-
-        // 6. Création des departureTripsInfo (identique)
-        IMap<String, IList<GamaPair<String, String>>> departureTripsInfo = GamaMapFactory.create(Types.STRING, Types.LIST);
-        
-        // ✅ IMPORTANT : Utiliser la même logique de filtrage ici
-        Set<String> tripsToProcess = useAllTrips ? tripsMap.keySet() : activeTripIds;
-        
-        for (String tripId : tripsToProcess) {
-            TransportTrip trip = tripsMap.get(tripId);
-            if (trip == null) continue;
-            
-            IList<String> stopsInOrder = trip.getStopsInOrder();
-            IList<IMap<String, Object>> stopDetails = trip.getStopDetails();
-            IList<GamaPair<String, String>> stopPairs = GamaListFactory.create(Types.PAIR);
-
-            if (stopsInOrder.isEmpty() || stopDetails.size() != stopsInOrder.size()) continue;
-
-            for (int i = 0; i < stopsInOrder.size(); i++) {
-                String stopId = stopsInOrder.get(i);
-                String departureTime = stopDetails.get(i).get("departureTime").toString();
-                String departureInSeconds = convertTimeToSeconds(departureTime);
-                stopPairs.add(new GamaPair<>(stopId, departureInSeconds, Types.STRING, Types.STRING));
-            }
-            departureTripsInfo.put(tripId, stopPairs);
+        GTFSLog.info("   → Stops ajoutés dans trips : " + totalAdded);
+        GTFSLog.info("   → Lignes stop_times ignorées (stop_sequence invalide) : " + feed.getInvalidSequenceRows());
+        GTFSLog.info("   → tripId non trouvés dans le feed : " + feed.getUnknownTripRows());
+        GTFSLog.info("   → Lignes filtrées par date : " + totalFilteredOut);
+        loadReport.set("strategy", useAllTrips ? "all_trips" : "date_filter");
+        loadReport.set("simulation_date", useAllTrips ? null : simulationDate);
+        loadReport.set("active_trips", tripsToProcess.length);
+        loadReport.set("stop_times_filtered_out", totalFilteredOut);
+
+        // 6. Détermination des stops de départ : plus petit stop_sequence par trip,
+        //    le départ le plus tôt en cas d'égalité. Le travail par trip (stop de départ, signature) est
+        //    réparti sur le pool fork/join ; la fusion parcourt ensuite les trips dans l'ordre, le résultat
+        //    est donc identique au calcul séquentiel.
+        int[] firstStop = new int[feed.getTripCount()];
+        int[] firstStopTime = new int[feed.getTripCount()];
+        GTFSFeed.TripSignature[] signatures = new GTFSFeed.TripSignature[tripsToProcess.length];
+        IntStream.range(0, tripsToProcess.length).parallel().forEach(i -> {
+            int t = tripsToProcess[i];
+            int first = feed.getFirstStopRow(t);
+            if (first == GTFSFeed.NONE) return;
+            firstStop[t] = feed.getStopTimeStop(first);
+            firstStopTime[t] = Math.max(feed.getStopTimeDeparture(first), 0);
+            // Signature (journey pattern, stop de départ, heure) pour éviter les doublons
+            signatures[i] = feed.getTripSignature(t, first);
+        });
+
+        Set<GTFSFeed.TripSignature> seenTripSignatures = new HashSet<>();
+        int[] departureCount = new int[feed.getStopCount()];
+        List<Integer> departureTrips = new ArrayList<>();
+        for (int i = 0; i < tripsToProcess.length; i++) {
+            if (signatures[i] == null || !seenTripSignatures.add(signatures[i])) continue;
+            int t = tripsToProcess[i];
+            departureTrips.add(t);
+            departureCount[firstStop[t]]++;
         }
 
+        GTFSLog.debug("🔍 DEBUG stops de départ:");
+        GTFSLog.debug("   → Trips traités pour stops départ: " + tripsToProcess.length);
+        GTFSLog.debug("   → Trips retenus (sans doublon): " + departureTrips.size());
 
-     // 6. Détermination des stops de départ : prendre le plus petit stop_sequence par trip
-        Map<String, List<String>> stopToTripIds = new HashMap<>();
-        Set<String> seenTripSignatures = new HashSet<>();
-
-        Map<String, String> tripToFirstStop = new HashMap<>();
-        Map<String, String> tripToFirstStopTime = new HashMap<>();
-        Map<String, Integer> tripToMinSeq = new HashMap<>();
-
-        int tripsFiltresDansStopsDepart = 0;
-        int tripsTraitesDansStopsDepart = 0;
-
-        for (String[] fields : stopTimesData) {
-            if (fields == null || fields.length <= Math.max(Math.max(tripIdIndex, stopIdIndex),
-                                                            Math.max(departureTimeIndex, stopSequenceIndex))) {
-                continue;
-            }
-
-            try {
-                String tripId = fields[tripIdIndex].trim().replace("\"","").replace("'","");
-                if (!useAllTrips && !activeTripIds.contains(tripId)) { tripsFiltresDansStopsDepart++; continue; }
-                if (useAllTrips && !tripsMap.containsKey(tripId))     { tripsFiltresDansStopsDepart++; continue; }
+        // 7. Affectation dans chaque stop + tri par heure de départ (stable, en parallèle par stop) + comptage
+        for (TransportStop stop : stopsMap.values()) {
+            stop.setDepartureTrips(null);
+            stop.setTripNumber(0);
+        }
+        int[][] tripsByStop = new int[feed.getStopCount()][];
+        int[] filled = new int[feed.getStopCount()];
+        for (int t : departureTrips) {
+            int stop = firstStop[t];
+            if (tripsByStop[stop] == null) tripsByStop[stop] = new int[departureCount[stop]];
+            tripsByStop[stop][filled[stop]++] = t;
+        }
+        IntStream.range(0, tripsByStop.length).parallel().forEach(s -> {
+            TransportStop stop = stopsByIndex[s];
+            int[] trips = tripsByStop[s];
+            if (trips == null || stop == null) return;
+            // heure << 32 | position : l'ordre d'arrivée est conservé à heure égale
+            long[] keys = new long[trips.length];
+            for (int i = 0; i < trips.length; i++) keys[i] = (long) firstStopTime[trips[i]] << 32 | i;
+            Arrays.sort(keys);
+            int[] sorted = new int[trips.length];
+            for (int i = 0; i < keys.length; i++) sorted[i] = trips[(int) keys[i]];
+            stop.setDepartureTrips(sorted);
+            stop.setTripNumber(sorted.length);
+        });
+        int nbStopsAvecTrips = 0;
+        for (int s = 0; s < tripsByStop.length; s++) {
+            if (tripsByStop[s] != null && stopsByIndex[s] != null) nbStopsAvecTrips++;
+        }
 
-                String stopId = fields[stopIdIndex].trim().replace("\"","").replace("'","");
-                String departureTime = fields[departureTimeIndex];
-                int seq;
-                try {
-                    seq = Integer.parseInt(fields[stopSequenceIndex].trim());
-                } catch (Exception ex) {
-                    // si stop_sequence manquant ou non numérique, on ignore cette ligne
-                    continue;
-                }
+        // 8. Résumé final
+        GTFSLog.info("Nombre de stops avec departureTripsInfo non vide : " + nbStopsAvecTrips);
+        loadReport.set("departure_trips", departureTrips.size());
+        loadReport.set("stops_with_departures", nbStopsAvecTrips);
+        GTFSLog.info("Nombre de trips au total dans le feed : " + feed.getTripCount());
+        GTFSLog.info("✅ computeDepartureInfo completed successfully.");
+    }
 
-                tripsTraitesDansStopsDepart++;
-
-                Integer curMin = tripToMinSeq.get(tripId);
-                if (curMin == null || seq < curMin) {
-                    // nouveau minimum
-                    tripToMinSeq.put(tripId, seq);
-                    tripToFirstStop.put(tripId, stopId);
-                    tripToFirstStopTime.put(tripId, convertTimeToSeconds(departureTime));
-                } else if (curMin != null && seq == curMin) {
-                    // égalité : garder le départ le plus tôt
-                    String curTime = tripToFirstStopTime.get(tripId);
-                    String newTime = convertTimeToSeconds(departureTime);
-                    if (curTime == null || Integer.parseInt(newTime) < Integer.parseInt(curTime)) {
-                        tripToFirstStop.put(tripId, stopId);
-                        tripToFirstStopTime.put(tripId, newTime);
-                    }
-                }
 
-            } catch (Exception e) {
-                // on ignore les erreurs de parsing ici
-            }
+    /**
+     * Trips running on a date, in trips.txt order. The service days come from the calendar index: each
+     * trip is a bit test. If no trip runs that day, the first day of the feed falling on the same day of
+     * the week is used instead.
+     */
+    private Set<String> getActiveTripIdsForDate(IScope scope, LocalDate date) {
+        GTFSLog.info("\n=== DÉBUT getActiveTripIdsForDate ===");
+        GTFSLog.info("🔍 Recherche trips actifs pour la date: " + date + " (" + date.getDayOfWeek() + ")");
+
+        Set<String> validTripIds = new LinkedHashSet<>();
+        ensureCalendars();
+        if (feed == null) {
+            GTFSLog.error("❌ [ERROR] trips.txt data is missing!");
+            return validTripIds;
         }
 
-        System.out.println("🔍 DEBUG stops de départ:");
-        System.out.println("   → Trips traités pour stops départ: " + tripsTraitesDansStopsDepart);
-        System.out.println("   → Trips filtrés pour stops départ: " + tripsFiltresDansStopsDepart);
-        System.out.println("   → Stops de départ identifiés: " + tripToFirstStop.size());
-
-
-     // Utiliser les vrais stops de départ pour créer stopToTripIds
-     for (String tripId : departureTripsInfo.keySet()) {
-         IList<GamaPair<String, String>> stopPairs = departureTripsInfo.get(tripId);
-         if (stopPairs == null || stopPairs.isEmpty()) continue;
-
-         // Utiliser le stop avec stop_sequence = 1 si disponible
-         String firstStopId = tripToFirstStop.get(tripId);
-         String departureTime = tripToFirstStopTime.get(tripId);
-         
-         // Fallback : si pas de stop_sequence = 1, utiliser le premier dans la liste
-         if (firstStopId == null) {
-             firstStopId = stopPairs.get(0).key;
-             departureTime = stopPairs.get(0).value;
-             System.out.println("[WARNING] Trip " + tripId + " n'a pas de stop_sequence=1, utilise le premier stop rencontré: " + firstStopId);
-         }
-
-         // Créer la signature pour éviter les doublons
-         StringBuilder stopSequence = new StringBuilder();
-         for (GamaPair<String, String> pair : stopPairs) {
-             stopSequence.append(pair.key).append(";");
-         }
-         String signature = firstStopId + "_" + departureTime + "_" + stopSequence;
-
-         if (seenTripSignatures.contains(signature)) continue;
-         seenTripSignatures.add(signature);
-         stopToTripIds.computeIfAbsent(firstStopId, k -> new ArrayList<>()).add(tripId);
-     }
-
-     // 7. Affectation dans chaque stop + tri + comptage
-     for (Map.Entry<String, List<String>> entry : stopToTripIds.entrySet()) {
-         String stopId = entry.getKey();
-         List<String> tripIds = entry.getValue();
-
-         tripIds.sort((id1, id2) -> {
-             String t1 = tripToFirstStopTime.getOrDefault(id1, departureTripsInfo.get(id1).get(0).value);
-             String t2 = tripToFirstStopTime.getOrDefault(id2, departureTripsInfo.get(id2).get(0).value);
-             return Integer.compare(Integer.parseInt(t1), Integer.parseInt(t2));
-         });
-
-         TransportStop stop = stopsMap.get(stopId);
-         if (stop == null) continue;
-         stop.ensureDepartureTripsInfo();
-         for (String tripId : tripIds) {
-             IList<GamaPair<String, String>> pairs = departureTripsInfo.get(tripId);
-             stop.addStopPairs(tripId, pairs);
-         }
-         stop.setTripNumber(stop.getDepartureTripsInfo().size());
-     }
-
-     // 8. Résumé final
-     int nbStopsAvecTrips = 0;
-     for (TransportStop stop : stopsMap.values()) {
-         if (stop.getDepartureTripsInfo() != null && !stop.getDepartureTripsInfo().isEmpty()) {
-             nbStopsAvecTrips++;
-         }
-     }
-     System.out.println("Nombre de stops avec departureTripsInfo non vide : " + nbStopsAvecTrips);
-     System.out.println("Nombre de trips au total dans tripsMap : " + tripsMap.size());
-     System.out.println("Nombre de stops de départ identifiés (stop_sequence=1) : " + tripToFirstStop.size());
-     System.out.println("✅ computeDepartureInfo completed successfully.");
- }
-
-
- private Set<String> getActiveTripIdsForDate(IScope scope, LocalDate date) {
-	    System.out.println("\n=== DÉBUT getActiveTripIdsForDate ===");
-	    System.out.println("🔍 Recherche trips actifs pour la date: " + date);
-	    System.out.println("🔍 Jour de la semaine: " + date.getDayOfWeek());
-	    System.out.println("🔍 Format GTFS: " + date.format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd")));
-	    
-	    Set<String> validTripIds = new HashSet<>();
-	    Map<String, String> tripIdToServiceId = new HashMap<>();
-
-	    // 1. Construction de la map trip -> service_id
-	    System.out.println("\n--- Phase 1: Lecture trips.txt ---");
-	    List<String[]> tripsData = (List<String[]>) gtfsData.get("trips.txt");
-	    IMap<String, Integer> tripsHeader = headerMaps.get("trips.txt");
-
-	    if (tripsData == null || tripsHeader == null) {
-	        System.err.println("❌ [ERROR] trips.txt data or headers are missing!");
-	        return validTripIds;
-	    }
-
-	    Integer tripIdIdx = findColumnIndex(tripsHeader, "trip_id");
-	    Integer serviceIdIdx = findColumnIndex(tripsHeader, "service_id");
-	    if (tripIdIdx == null || serviceIdIdx == null) {
-	        System.err.println("❌ [ERROR] trip_id or service_id column missing in trips.txt!");
-	        System.err.println("   → trip_id index: " + tripIdIdx);
-	        System.err.println("   → service_id index: " + serviceIdIdx);
-	        return validTripIds;
-	    }
-
-	    int tripsProcessed = 0;
-	    int tripsIgnored = 0;
-	    for (String[] fields : tripsData) {
-	        // Ignore les lignes vides ou mal formées
-	        if (fields.length > Math.max(tripIdIdx, serviceIdIdx)) {
-	            tripIdToServiceId.put(fields[tripIdIdx].trim().replace("\"", ""), fields[serviceIdIdx].trim().replace("\"", ""));
-	            tripsProcessed++;
-	        } else {
-	            tripsIgnored++;
-	        }
-	    }
-	    System.out.println("📊 trips.txt traitement:");
-	    System.out.println("   → Trips traités: " + tripsProcessed);
-	    System.out.println("   → Trips ignorés: " + tripsIgnored);
-	    System.out.println("   → Services uniques: " + tripIdToServiceId.values().stream().distinct().count());
-
-	    // 2. Vérification des fichiers calendrier
-	    System.out.println("\n--- Phase 2: Vérification fichiers calendrier ---");
-	    List<String[]> calendarData = (List<String[]>) gtfsData.get("calendar.txt");
-	    List<String[]> calendarDatesData = (List<String[]>) gtfsData.get("calendar_dates.txt");
-	    boolean hasCalendar = (calendarData != null && !calendarData.isEmpty());
-	    boolean hasCalendarDates = (calendarDatesData != null && !calendarDatesData.isEmpty());
-
-	    System.out.println("📊 Disponibilité fichiers:");
-	    System.out.println("   → calendar.txt: " + (hasCalendar ? "✅ (" + calendarData.size() + " lignes)" : "❌"));
-	    System.out.println("   → calendar_dates.txt: " + (hasCalendarDates ? "✅ (" + calendarDatesData.size() + " lignes)" : "❌"));
-
-	    Set<String> activeServiceIds = new HashSet<>();
-	    java.time.format.DateTimeFormatter formatter = java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd");
-	    String dayOfWeek = date.getDayOfWeek().toString().toLowerCase();
-	    String dateString = date.format(formatter);
-
-	    System.out.println("🔍 Paramètres recherche:");
-	    System.out.println("   → Date: " + dateString);
-	    System.out.println("   → Jour: " + dayOfWeek);
-
-	    // 3. Traitement calendar.txt
-	    if (hasCalendar) {
-	        System.out.println("\n--- Phase 3: Traitement calendar.txt ---");
-	        IMap<String, Integer> calendarHeader = headerMaps.get("calendar.txt");
-	        if (calendarHeader == null) {
-	            System.err.println("❌ [ERROR] calendar.txt headers missing!");
-	        } else {
-	            try {
-	                Integer serviceIdIdxCal = findColumnIndex(calendarHeader, "service_id");
-	                Integer startIdx = findColumnIndex(calendarHeader, "start_date");
-	                Integer endIdx = findColumnIndex(calendarHeader, "end_date");
-	                Integer dayIdx = findColumnIndex(calendarHeader, dayOfWeek);
-	                
-	                System.out.println("📋 Index des colonnes:");
-	                System.out.println("   → service_id: " + serviceIdIdxCal);
-	                System.out.println("   → start_date: " + startIdx);
-	                System.out.println("   → end_date: " + endIdx);
-	                System.out.println("   → " + dayOfWeek + ": " + dayIdx);
-	                
-	                if (serviceIdIdxCal == null || startIdx == null || endIdx == null || dayIdx == null) {
-	                    System.err.println("❌ [ERROR] Some required columns are missing in calendar.txt!");
-	                } else {
-	                    int servicesActifs = 0;
-	                    int servicesInactifs = 0;
-	                    int servicesHorsPeriode = 0;
-	                    int servicesJourInactif = 0;
-	                    
-	                    for (String[] fields : calendarData) {
-	                        if (fields.length <= Math.max(Math.max(serviceIdIdxCal, startIdx), Math.max(endIdx, dayIdx))) continue;
-	                        
-	                        try {
-	                            String serviceId = fields[serviceIdIdxCal].trim().replace("\"", "");
-	                            LocalDate start = LocalDate.parse(fields[startIdx], formatter);
-	                            LocalDate end = LocalDate.parse(fields[endIdx], formatter);
-	                            boolean dayActive = fields[dayIdx].equals("1");
-	                            boolean inPeriod = !date.isBefore(start) && !date.isAfter(end);
-	                            boolean runsToday = dayActive && inPeriod;
-	                            
-	                            if (runsToday) {
-	                                activeServiceIds.add(serviceId);
-	                                servicesActifs++;
-	                            } else {
-	                                servicesInactifs++;
-	                                if (!inPeriod) servicesHorsPeriode++;
-	                                if (!dayActive) servicesJourInactif++;
-	                            }
-	                        } catch (Exception e) {
-	                            System.err.println("❌ Erreur ligne calendar.txt: " + Arrays.toString(fields) + " -> " + e.getMessage());
-	                        }
-	                    }
-	                    
-	                    System.out.println("📊 Résultats calendar.txt pour " + date + ":");
-	                    System.out.println("   → Services actifs: " + servicesActifs);
-	                    System.out.println("   → Services inactifs: " + servicesInactifs);
-	                    System.out.println("     ↳ Hors période: " + servicesHorsPeriode);
-	                    System.out.println("     ↳ Jour inactif: " + servicesJourInactif);
-	                }
-	            } catch (Exception e) {
-	                System.err.println("❌ [ERROR] Processing calendar.txt failed: " + e.getMessage());
-	                e.printStackTrace();
-	            }
-	        }
-	    }
-
-	    // 4. Traitement calendar_dates.txt
-	    if (hasCalendarDates) {
-	        System.out.println("\n--- Phase 4: Traitement calendar_dates.txt ---");
-	        IMap<String, Integer> calDatesHeader = headerMaps.get("calendar_dates.txt");
-	        if (calDatesHeader == null) {
-	            System.err.println("❌ [ERROR] calendar_dates.txt headers missing!");
-	        } else {
-	            try {
-	                Integer serviceIdIdxCal = findColumnIndex(calDatesHeader, "service_id");
-	                Integer dateIdx = findColumnIndex(calDatesHeader, "date");
-	                Integer exceptionTypeIdx = findColumnIndex(calDatesHeader, "exception_type");
-	                
-	                if (serviceIdIdxCal == null || dateIdx == null || exceptionTypeIdx == null) {
-	                    System.err.println("❌ [ERROR] Some required columns are missing in calendar_dates.txt!");
-	                } else {
-	                    int ajouts = 0;
-	                    int suppressions = 0;
-	                    int datesNonCorrespondantes = 0;
-	                    
-	                    for (String[] fields : calendarDatesData) {
-	                        if (fields.length <= Math.max(Math.max(serviceIdIdxCal, dateIdx), exceptionTypeIdx)) continue;
-	                        
-	                        try {
-	                            String serviceId = fields[serviceIdIdxCal].trim().replace("\"", "");
-	                            LocalDate exceptionDate = LocalDate.parse(fields[dateIdx], formatter);
-	                            int exceptionType = Integer.parseInt(fields[exceptionTypeIdx]);
-	                            
-	                            if (exceptionDate.equals(date)) {
-	                                if (exceptionType == 1) {
-	                                    activeServiceIds.add(serviceId);
-	                                    ajouts++;
-	                
-	                                }
-	                                if (exceptionType == 2) {
-	                                    boolean wasActive = activeServiceIds.remove(serviceId);
-	                                    suppressions++;
-	                                    System.out.println("➖ Service supprimé: " + serviceId + " (exception_type=2, était actif: " + wasActive + ")");
-	                                }
-	                            } else {
-	                                datesNonCorrespondantes++;
-	                            }
-	                        } catch (Exception e) {
-	                            System.err.println("❌ Erreur ligne calendar_dates.txt: " + Arrays.toString(fields) + " -> " + e.getMessage());
-	                        }
-	                    }
-	                    
-	                    System.out.println("📊 Résultats calendar_dates.txt:");
-	                    System.out.println("   → Services ajoutés (type=1): " + ajouts);
-	                    System.out.println("   → Services supprimés (type=2): " + suppressions);
-	                    System.out.println("   → Dates non correspondantes: " + datesNonCorrespondantes);
-	                }
-	            } catch (Exception e) {
-	                System.err.println("❌ [ERROR] Processing calendar_dates.txt failed: " + e.getMessage());
-	                e.printStackTrace();
-	            }
-	        }
-	    }
-
-	    // 5. Conversion services -> trips
-	    System.out.println("\n--- Phase 5: Conversion services -> trips ---");
-	    System.out.println("📊 Services actifs identifiés: " + activeServiceIds.size());
-	    if (activeServiceIds.size() <= 10) {
-	        System.out.println("🔍 Services actifs: " + activeServiceIds);
-	    }
-
-	    int tripsActifs = 0;
-	    for (Map.Entry<String, String> e : tripIdToServiceId.entrySet()) {
-	        if (activeServiceIds.contains(e.getValue())) {
-	            validTripIds.add(e.getKey());
-	            tripsActifs++;
-	        }
-	    }
-	    
-	    System.out.println("📊 Conversion résultat:");
-	    System.out.println("   → Trips actifs trouvés: " + tripsActifs);
-
-	    // 6. FALLBACK SI AUCUN TRIP
-	    if (validTripIds.isEmpty()) {
-	        System.err.println("\n⚠️ [WARNING] AUCUN TRIP ACTIF pour la date: " + date);
-	        System.out.println("🔄 [FALLBACK CAS 2] Recherche d'un jour équivalent dans GTFS...");
-	        
-	        LocalDate altDate = findFirstDateWithSameWeekDay(date);
-	        if (altDate != null && !altDate.equals(date)) {
-	            System.out.println("✅ [FALLBACK CAS 2] Jour équivalent trouvé: " + altDate);
-	            Set<String> fallbackTrips = getActiveTripIdsForDate(scope, altDate);
-	            System.out.println("✅ [FALLBACK CAS 2] Trips récupérés: " + fallbackTrips.size());
-	            return fallbackTrips;
-	        } else {
-	            System.err.println("❌ [FALLBACK CAS 2] No matching weekday found in GTFS.");
-	            // ✅ NE PAS faire de fallback vers tous les trips ici
-	            // Laissez le CAS 3 être géré dans computeDepartureInfo
-	        }
-	    }
-	    
-	    return validTripIds;
-	}
-
-	private LocalDate findFirstDateWithSameWeekDay(LocalDate wantedDate) {
-	    System.out.println("\n🔍 findFirstDateWithSameWeekDay appelée...");
-	    System.out.println("🔍 Date recherchée: " + wantedDate + " (" + wantedDate.getDayOfWeek() + ")");
-	    
-	    List<LocalDate> allDates = new ArrayList<>();
-	    java.time.format.DateTimeFormatter formatter = java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd");
-	    
-	    // calendar.txt
-	    System.out.println("\n📅 Collecte des dates depuis calendar.txt...");
-	    List<String[]> calendarData = (List<String[]>) gtfsData.get("calendar.txt");
-	    if (calendarData != null && !calendarData.isEmpty()) {
-	        IMap<String, Integer> header = headerMaps.get("calendar.txt");
-	        if (header != null) {
-	            Integer startIdx = findColumnIndex(header, "start_date");
-	            Integer endIdx = findColumnIndex(header, "end_date");
-	            if (startIdx != null && endIdx != null) {
-	                int periodesTraitees = 0;
-	                int datesAjoutees = 0;
-	                for (String[] fields : calendarData) {
-	                    if (fields.length > endIdx) {
-	                        try {
-	                            LocalDate start = LocalDate.parse(fields[startIdx], formatter);
-	                            LocalDate end = LocalDate.parse(fields[endIdx], formatter);
-	                            
-	                            System.out.println("   📋 Période: " + start + " → " + end);
-	                            
-	                            for (LocalDate d = start; !d.isAfter(end); d = d.plusDays(1)) {
-	                                allDates.add(d);
-	                                datesAjoutees++;
-	                            }
-	                            periodesTraitees++;
-	                        } catch (Exception e) {
-	                            System.err.println("❌ Erreur parsing période: " + Arrays.toString(fields));
-	                        }
-	                    }
-	                }
-	                System.out.println("📊 calendar.txt:");
-	                System.out.println("   → Périodes traitées: " + periodesTraitees);
-	                System.out.println("   → Dates ajoutées: " + datesAjoutees);
-	            }
-	        }
-	    } else {
-	        System.out.println("⚠️ calendar.txt non disponible");
-	    }
-	    
-	    // calendar_dates.txt
-	    System.out.println("\n📅 Collecte des dates depuis calendar_dates.txt...");
-	    List<String[]> calendarDates = (List<String[]>) gtfsData.get("calendar_dates.txt");
-	    if (calendarDates != null && !calendarDates.isEmpty()) {
-	        IMap<String, Integer> header = headerMaps.get("calendar_dates.txt");
-	        if (header != null) {
-	            Integer dateIdx = findColumnIndex(header, "date");
-	            if (dateIdx != null) {
-	                int datesAjoutees = 0;
-	                for (String[] fields : calendarDates) {
-	                    if (fields.length > dateIdx) {
-	                        try {
-	                            LocalDate d = LocalDate.parse(fields[dateIdx], formatter);
-	                            allDates.add(d);
-	                            datesAjoutees++;
-	                        } catch (Exception e) {
-	                            System.err.println("❌ Erreur parsing date: " + Arrays.toString(fields));
-	                        }
-	                    }
-	                }
-	                System.out.println("📊 calendar_dates.txt:");
-	                System.out.println("   → Dates ajoutées: " + datesAjoutees);
-	            }
-	        }
-	    } else {
-	        System.out.println("⚠️ calendar_dates.txt non disponible");
-	    }
-	    
-	    System.out.println("\n📊 Total dates collectées: " + allDates.size());
-	    
-	    // Recherche du premier jour avec le même dayOfWeek
-	    System.out.println("🔍 Recherche du premier " + wantedDate.getDayOfWeek() + " disponible...");
-	    
-	    LocalDate firstMatch = null;
-	    int correspondances = 0;
-	    LocalDate minDate = null;
-	    LocalDate maxDate = null;
-	    
-	    for (LocalDate d : allDates) {
-	        // Mise à jour min/max pour debug
-	        if (minDate == null || d.isBefore(minDate)) minDate = d;
-	        if (maxDate == null || d.isAfter(maxDate)) maxDate = d;
-	        
-	        if (d.getDayOfWeek().equals(wantedDate.getDayOfWeek())) {
-	            correspondances++;
-	            if (firstMatch == null || d.isBefore(firstMatch)) {
-	                firstMatch = d;
-	                System.out.println("      → Nouveau premier match: " + firstMatch);
-	            }
-	        }
-	    }
-	    
-	    System.out.println("\n📊 Résultat recherche:");
-	    System.out.println("   → Période GTFS: " + minDate + " → " + maxDate);
-	    System.out.println("   → Correspondances " + wantedDate.getDayOfWeek() + ": " + correspondances);
-	    System.out.println("   → Premier match: " + firstMatch);
-	    
-	    if (firstMatch != null) {
-	        System.out.println("✅ Date de fallback choisie: " + firstMatch);
-	        System.out.println("   → Écart avec date demandée: " + java.time.temporal.ChronoUnit.DAYS.between(wantedDate, firstMatch) + " jours");
-	    } else {
-	        System.out.println("❌ Aucun jour équivalent trouvé");
-	    }
-	    
-	    return firstMatch;
-	}
-
-    
-    public java.time.LocalDate getStartingDate() {
-        java.time.LocalDate minDate = null;
-        java.time.format.DateTimeFormatter formatter = java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd");
-
-        // calendar.txt
-        List<String[]> calendarData = (List<String[]>) gtfsData.get("calendar.txt");
-        if (calendarData != null && !calendarData.isEmpty()) {
-            IMap<String, Integer> header = headerMaps.get("calendar.txt");
-            if (header != null) {
-                Integer startIdx = findColumnIndex(header, "start_date");
-                if (startIdx != null) {
-                    for (String[] fields : calendarData) {
-                        if (fields.length > startIdx) {
-                            java.time.LocalDate d = java.time.LocalDate.parse(fields[startIdx], formatter);
-                            if (minDate == null || d.isBefore(minDate)) minDate = d;
-                        }
-                    }
-                }
-            }
+        // service int du feed -> actif ce jour
+        GTFSFeed.Dictionary serviceIds = feed.getServiceIds();
+        BitSet activeServices = new BitSet(serviceIds.size());
+        for (int s = 0; s < serviceIds.size(); s++) {
+            if (serviceCalendar.isActive(serviceIds.get(s), date)) activeServices.set(s);
         }
-
-        // calendar_dates.txt
-        List<String[]> calendarDates = (List<String[]>) gtfsData.get("calendar_dates.txt");
-        if (calendarDates != null && !calendarDates.isEmpty()) {
-            IMap<String, Integer> header = headerMaps.get("calendar_dates.txt");
-            if (header != null) {
-                Integer dateIdx = findColumnIndex(header, "date");
-                if (dateIdx != null) {
-                    for (String[] fields : calendarDates) {
-                        if (fields.length > dateIdx) {
-                            java.time.LocalDate d = java.time.LocalDate.parse(fields[dateIdx], formatter);
-                            if (minDate == null || d.isBefore(minDate)) minDate = d;
-                        }
-                    }
-                }
+        for (int t = 0; t < feed.getTripCount(); t++) {
+            if (activeServices.get(feed.getTripService(t))) validTripIds.add(feed.getTripId(t));
+        }
+        GTFSLog.info("📊 Services actifs: " + activeServices.cardinality() + " / " + serviceIds.size()
+            + " → Trips actifs trouvés: " + validTripIds.size());
+
+        // FALLBACK SI AUCUN TRIP
+        if (validTripIds.isEmpty()) {
+            GTFSLog.warning("\n⚠️ [WARNING] AUCUN TRIP ACTIF pour la date: " + date);
+            GTFSLog.info("🔄 [FALLBACK CAS 2] Recherche d'un jour équivalent dans GTFS...");
+
+            LocalDate altDate = serviceCalendar.firstDateWithSameWeekDay(date);
+            if (altDate != null && !altDate.equals(date)) {
+                GTFSLog.info("✅ [FALLBACK CAS 2] Jour équivalent trouvé: " + altDate);
+                Set<String> fallbackTrips = getActiveTripIdsForDate(scope, altDate);
+                GTFSLog.info("✅ [FALLBACK CAS 2] Trips récupérés: " + fallbackTrips.size());
+                return fallbackTrips;
+            } else {
+                GTFSLog.error("❌ [FALLBACK CAS 2] No matching weekday found in GTFS.");
+                // Pas de fallback vers tous les trips ici : le CAS 3 est géré dans computeDepartureInfo
             }
         }
-        return minDate;
+        return validTripIds;
     }
 
+    /** First date of the feed (earliest start_date of calendar.txt or date of calendar_dates.txt). */
+    public synchronized java.time.LocalDate getStartingDate() {
+        applyPendingChanges();
+        ensureCalendars();
+        return serviceCalendar.getStartingDate();
+    }
 
-    public java.time.LocalDate getEndingDate() {
-        java.time.LocalDate maxDate = null;
-        java.time.format.DateTimeFormatter formatter = java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd");
-
-        // calendar.txt
-        List<String[]> calendarData = (List<String[]>) gtfsData.get("calendar.txt");
-        if (calendarData != null && !calendarData.isEmpty()) {
-            IMap<String, Integer> header = headerMaps.get("calendar.txt");
-            if (header != null) {
-                Integer endIdx = findColumnIndex(header, "end_date");
-                if (endIdx != null) {
-                    for (String[] fields : calendarData) {
-                        if (fields.length > endIdx) {
-                            java.time.LocalDate d = java.time.LocalDate.parse(fields[endIdx], formatter);
-                            if (maxDate == null || d.isAfter(maxDate)) maxDate = d;
-                        }
-                    }
-                }
-            }
-        }
-        // calendar_dates.txt
-        List<String[]> calendarDates = (List<String[]>) gtfsData.get("calendar_dates.txt");
-        if (calendarDates != null && !calendarDates.isEmpty()) {
-            IMap<String, Integer> header = headerMaps.get("calendar_dates.txt");
-            if (header != null) {
-                Integer dateIdx = findColumnIndex(header, "date");
-                if (dateIdx != null) {
-                    for (String[] fields : calendarDates) {
-                        if (fields.length > dateIdx) {
-                            java.time.LocalDate d = java.time.LocalDate.parse(fields[dateIdx], formatter);
-                            if (maxDate == null || d.isAfter(maxDate)) maxDate = d;
-                        }
-                    }
-                }
-            }
-        }
-        return maxDate;
+    /** Last date of the feed (latest end_date of calendar.txt or date of calendar_dates.txt). */
+    public synchronized java.time.LocalDate getEndingDate() {
+        applyPendingChanges();
+        ensureCalendars();
+        return serviceCalendar.getEndingDate();
     }
 
     
 
     
-    // Method to convert departureTime of stops into seconds
-    private String convertTimeToSeconds(String timeStr) {
-        try {
-            String[] parts = timeStr.split(":");
-            int hours = Integer.parseInt(parts[0]);
-            int minutes = Integer.parseInt(parts[1]);
-            int seconds = Integer.parseInt(parts[2]);
-            int totalSeconds = (hours * 3600 + minutes * 60 + seconds);
-            return String.valueOf(totalSeconds);
-        } catch (Exception e) {
-            System.err.println("[ERROR] Failed to convert time: " + timeStr + " -> " + e.getMessage());
-            return "0";  // fallback
-        }
-    }
+
     
    
 }
\ No newline at end of file
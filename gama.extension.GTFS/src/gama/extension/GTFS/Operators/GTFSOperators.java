@@ -1,11 +1,27 @@
 package gama.extension.GTFS.Operators;
 
+import java.io.IOException;
+import java.util.List;
+
 import gama.core.metamodel.shape.GamaShape;
+import gama.core.metamodel.shape.IShape;
 import gama.core.runtime.IScope;
+import gama.core.runtime.exceptions.GamaRuntimeException;
 import gama.core.util.GamaDate;
+import gama.core.util.GamaListFactory;
+import gama.core.util.GamaMapFactory;
+import gama.core.util.IList;
+import gama.core.util.IMap;
+import gama.extension.GTFS.GTFSChecks;
+import gama.extension.GTFS.GTFSLoadReport;
+import gama.extension.GTFS.GTFSMetadata;
 import gama.extension.GTFS.GTFS_reader;
+import gama.extension.GTFS.TransportShape;
 import gama.gaml.types.IType;
+import gama.gaml.types.Types;
 import gama.annotations.precompiler.IOperatorCategory;
+import gama.annotations.precompiler.GamlAnnotations.doc;
+import gama.annotations.precompiler.GamlAnnotations.example;
 import gama.annotations.precompiler.GamlAnnotations.operator;
 
 
@@ -32,7 +48,217 @@ public class GTFSOperators {
 		    if (localDate == null) return null;
 		    return new GamaDate(scope, localDate);
 		}
-		
 
+		@operator(
+		    value = "departures_between",
+		    type = IType.MAP,
+		    content_type = IType.LIST,
+		    index_type = IType.STRING,
+		    category = { IOperatorCategory.DATE }
+		)
+		@doc(
+		    value = "Trips of the GTFS feed leaving their first stop between two dates (start included, end excluded), grouped by first stop: stop_id → list of trip_id in departure order. The service days are rolled over at midnight, a trip after midnight (time past 24:00:00) being returned on the day it actually leaves. As for the departures of the stop agents, a service day on which no trip runs uses the trips of the first day of the feed falling on the same day of the week. A multi-day simulation can ask for the departures of each step without rebuilding its agents.",
+		    examples = { @example(value = "departures_between(gtfs_f, current_date, current_date + step)", isExecutable = false) }
+		)
+		public static IMap<String, IList<String>> departures_between(final IScope scope, final GTFS_reader gtfs,
+		        final GamaDate from, final GamaDate to) {
+		    return gtfs.getDepartureTripIdsBetween(scope, from.getLocalDateTime(), to.getLocalDateTime());
+		}
+
+
+		@operator(
+		    value = "gtfs_metadata",
+		    type = IType.MAP,
+		    index_type = IType.STRING,
+		    category = { IOperatorCategory.FILE }
+		)
+		@doc(
+		    value = "Summary of a GTFS feed, computed on first request and again after a change of its tables: starting_date and ending_date (service span), row_counts (table → rows), trips_per_route (route_id → trips), trips_per_route_type and stops_per_route_type (route_type → count), first_departure and last_departure (seconds after midnight, may exceed 86400). Covers all the trips of the feed, whatever the simulated date.",
+		    examples = { @example(value = "map<string, unknown> info <- gtfs_metadata(gtfs_f);", isExecutable = false) }
+		)
+		public static IMap<String, Object> gtfs_metadata(final IScope scope, final GTFS_reader gtfs) {
+		    GTFSMetadata metadata = gtfs.getMetadata(scope);
+		    IMap<String, Object> info = GamaMapFactory.create(Types.STRING, Types.NO_TYPE);
+		    info.put("starting_date", metadata.startingDate() == null ? null : new GamaDate(scope, metadata.startingDate()));
+		    info.put("ending_date", metadata.endingDate() == null ? null : new GamaDate(scope, metadata.endingDate()));
+		    info.put("row_counts", GamaMapFactory.wrap(Types.STRING, Types.INT, metadata.rowCounts()));
+		    info.put("trips_per_route", GamaMapFactory.wrap(Types.STRING, Types.INT, metadata.tripsPerRoute()));
+		    info.put("trips_per_route_type", GamaMapFactory.wrap(Types.INT, Types.INT, metadata.tripsPerRouteType()));
+		    info.put("stops_per_route_type", GamaMapFactory.wrap(Types.INT, Types.INT, metadata.stopsPerRouteType()));
+		    info.put("first_departure", metadata.firstDeparture());
+		    info.put("last_departure", metadata.lastDeparture());
+		    return info;
+		}
+
+		@operator(
+		    value = "trip_shapes",
+		    type = IType.MAP,
+		    content_type = IType.STRING,
+		    index_type = IType.STRING,
+		    category = { IOperatorCategory.FILE }
+		)
+		@doc(
+		    value = "Canonical shape of each trip of the GTFS feed: trip_id → shape_id whose geometry the trip uses. Without shapes.txt, trips with the same stop sequence share a single fake_ shape, which is also the shape_id of their stops and agents. With shapes.txt, every shape_id keeps its transport_shape agent, but shape_ids with identical points share the geometry of the first one, the shape_id returned here.",
+		    examples = { @example(value = "map<string, string> shape_of_trip <- trip_shapes(gtfs_f);", isExecutable = false) }
+		)
+		public static IMap<String, String> trip_shapes(final IScope scope, final GTFS_reader gtfs) {
+		    return gtfs.getTripShapes(scope);
+		}
+
+		@operator(
+		    value = "simplified_shape",
+		    type = IType.GEOMETRY,
+		    category = { IOperatorCategory.SPATIAL }
+		)
+		@doc(
+		    value = "Simplified polyline of a shape of the GTFS feed, for display: among the levels of detail precomputed for the shape (topology-preserving Douglas-Peucker, at the tolerances in metres of -Dgtfs.shapes.lod, 5, 20 and 100 by default), the coarsest one whose tolerance does not exceed the given one. Passing the size of a pixel at the current display scale picks the level matching the zoom. Returns the full geometry below the finest level, and nil for an unknown shape_id. Vehicles should keep moving on the full geometry (shape of the transport_shape agent).",
+		    examples = { @example(value = "draw simplified_shape(gtfs_f, shapeId, 20.0) color: #blue;", isExecutable = false) }
+		)
+		public static IShape simplified_shape(final IScope scope, final GTFS_reader gtfs, final String shapeId, final Double tolerance) {
+		    TransportShape shape = gtfs.getShape(scope, shapeId);
+		    return shape == null ? null : shape.getSimplifiedGeometry(scope, tolerance == null ? 0.0 : tolerance);
+		}
+
+		@operator(
+		    value = "gtfs_load_report",
+		    type = IType.MAP,
+		    index_type = IType.STRING,
+		    category = { IOperatorCategory.FILE }
+		)
+		@doc(
+		    value = "What happened while the GTFS feed was loaded so far: problems (category → number of malformed or ignored rows, e.g. \"stops.txt: invalid row\"), samples (category → first messages of that category, the only ones printed in the console) and stats (figures of each loading step: stops_created, trips, journey_patterns, active_trips, shapes_created...). The console output itself is filtered with -Dgtfs.log=DEBUG|INFO|WARNING|ERROR|OFF.",
+		    examples = { @example(value = "map<string, unknown> report <- gtfs_load_report(gtfs_f);", isExecutable = false) }
+		)
+		public static IMap<String, Object> gtfs_load_report(final IScope scope, final GTFS_reader gtfs) {
+		    GTFSLoadReport report = gtfs.getLoadReport();
+		    IMap<String, Object> info = GamaMapFactory.create(Types.STRING, Types.NO_TYPE);
+		    info.put("problems", GamaMapFactory.wrap(Types.STRING, Types.INT, report.getProblems()));
+		    IMap<String, IList<String>> samples = GamaMapFactory.create(Types.STRING, Types.LIST);
+		    report.getSamples().forEach((category, messages) ->
+		        samples.put(category, GamaListFactory.createWithoutCasting(Types.STRING, messages.toArray(new String[0]))));
+		    info.put("samples", samples);
+		    IMap<String, Object> stats = GamaMapFactory.create(Types.STRING, Types.NO_TYPE);
+		    report.getStats().forEach((key, value) ->
+		        stats.put(key, value instanceof java.time.LocalDate date ? new GamaDate(scope, date) : value));
+		    info.put("stats", stats);
+		    return info;
+		}
+
+		@operator(
+		    value = "watch_gtfs",
+		    type = IType.BOOL,
+		    category = { IOperatorCategory.FILE }
+		)
+		@doc(
+		    value = "Starts (true) or stops (false) watching the tables of the GTFS feed on disk, and returns whether the feed is now watched. When tables change (e.g. a feed filtered again by GTFSFilter), only what depends on them is built again on next request: a new calendar_dates.txt only rebuilds the service calendar and the active trips, a new shapes.txt only the shapes, while routes.txt, trips.txt, stop_times.txt or stops.txt reload the whole feed. The watch stops with the simulation. See gtfs_changes to know when the agents should be created again.",
+		    examples = { @example(value = "bool watched <- watch_gtfs(gtfs_f, true);", isExecutable = false) }
+		)
+		public static Boolean watch_gtfs(final IScope scope, final GTFS_reader gtfs, final Boolean enabled) {
+		    if (enabled != null && enabled) gtfs.startWatching(scope);
+		    else gtfs.stopWatching();
+		    return gtfs.isWatching();
+		}
+
+		@operator(
+		    value = "gtfs_changes",
+		    type = IType.MAP,
+		    index_type = IType.STRING,
+		    category = { IOperatorCategory.FILE }
+		)
+		@doc(
+		    value = "Changes of the tables of a watched GTFS feed (see watch_gtfs): version (number of changes applied, 0 before the first one), tables (tables changed by the last change) and rebuilt (what the last change drops and builds again on next request: feed, shapes, calendar or none). A model can compare version with the value of the previous step to create its agents again.",
+		    examples = { @example(value = "if gtfs_changes(gtfs_f)[\"version\"] != last_version { ... }", isExecutable = false) }
+		)
+		public static IMap<String, Object> gtfs_changes(final IScope scope, final GTFS_reader gtfs) {
+		    IMap<String, Object> info = GamaMapFactory.create(Types.STRING, Types.NO_TYPE);
+		    info.put("version", (int) gtfs.getChangeVersion());
+		    info.put("tables", GamaListFactory.createWithoutCasting(Types.STRING, gtfs.getChangedTables().toArray(new String[0])));
+		    info.put("rebuilt", GamaListFactory.createWithoutCasting(Types.STRING, gtfs.getRebuiltIndexes().toArray(new String[0])));
+		    return info;
+		}
+
+		@operator(
+		    value = "trip_count_gtfs",
+		    type = IType.INT,
+		    category = { IOperatorCategory.FILE }
+		)
+		@doc(
+		    value = "Number of trips of the GTFS feed whose route has the given route_type (e.g. 1 for metro, 3 for bus), without creating any agent.",
+		    examples = { @example(value = "int metro_trips <- trip_count_gtfs(gtfs_f, 1);", isExecutable = false) }
+		)
+		public static Integer trip_count_gtfs(final IScope scope, final GTFS_reader gtfs, final Integer routeType) {
+		    return gtfs.getMetadata(scope).getTripCount(routeType);
+		}
+
+		@operator(
+		    value = "stop_count_gtfs",
+		    type = IType.INT,
+		    category = { IOperatorCategory.FILE }
+		)
+		@doc(
+		    value = "Number of stops of the GTFS feed served by at least one trip of the given route_type.",
+		    examples = { @example(value = "int bus_stops <- stop_count_gtfs(gtfs_f, 3);", isExecutable = false) }
+		)
+		public static Integer stop_count_gtfs(final IScope scope, final GTFS_reader gtfs, final Integer routeType) {
+		    return gtfs.getMetadata(scope).getStopCount(routeType);
+		}
+
+		@operator(
+		    value = "gtfs_check_readers",
+		    type = IType.LIST,
+		    content_type = IType.STRING,
+		    category = { IOperatorCategory.FILE }
+		)
+		@doc(
+		    value = "Reads every table of a GTFS directory with both the streaming and the memory-mapped readers and returns the differences found, field by field (raw value, id, int, decimal and time values). An empty list means both readers agree.",
+		    examples = { @example(value = "assert empty(gtfs_check_readers(gtfs_f));", isExecutable = false) }
+		)
+		public static IList<String> gtfs_check_readers(final IScope scope, final GTFS_reader gtfs) {
+		    try {
+		        return toList(GTFSChecks.compareReaders(gtfs.getFile(scope)));
+		    } catch (IOException e) {
+		        throw GamaRuntimeException.error("Unable to compare the readers of " + gtfs.getPath(scope) + ": " + e.getMessage(), scope);
+		    }
+		}
+
+		@operator(
+		    value = "gtfs_check_snapshot",
+		    type = IType.LIST,
+		    content_type = IType.STRING,
+		    category = { IOperatorCategory.FILE }
+		)
+		@doc(
+		    value = "Writes the loaded GTFS feed to a temporary snapshot, reads it back and returns the differences found between both feeds (stops, routes, trips, stop times and shape points). An empty list means the snapshot keeps the feed unchanged.",
+		    examples = { @example(value = "assert empty(gtfs_check_snapshot(gtfs_f));", isExecutable = false) }
+		)
+		public static IList<String> gtfs_check_snapshot(final IScope scope, final GTFS_reader gtfs) {
+		    try {
+		        return toList(GTFSChecks.compareSnapshot(gtfs.getFeed()));
+		    } catch (IOException e) {
+		        throw GamaRuntimeException.error("Unable to check the snapshot of " + gtfs.getPath(scope) + ": " + e.getMessage(), scope);
+		    }
+		}
+
+		@operator(
+		    value = "gtfs_check_calendar",
+		    type = IType.LIST,
+		    content_type = IType.STRING,
+		    category = { IOperatorCategory.FILE }
+		)
+		@doc(
+		    value = "Compares, for each date of the GTFS feed, the trips running according to the service calendar index and according to a row by row reading of calendar.txt and calendar_dates.txt, and returns the differences found. An empty list means both agree.",
+		    examples = { @example(value = "assert empty(gtfs_check_calendar(gtfs_f));", isExecutable = false) }
+		)
+		public static IList<String> gtfs_check_calendar(final IScope scope, final GTFS_reader gtfs) {
+		    try {
+		        return toList(GTFSChecks.compareCalendar(gtfs.getFile(scope), gtfs.getFeed(), gtfs.getServiceCalendar()));
+		    } catch (IOException e) {
+		        throw GamaRuntimeException.error("Unable to check the calendar of " + gtfs.getPath(scope) + ": " + e.getMessage(), scope);
+		    }
+		}
+
+		private static IList<String> toList(final List<String> differences) {
+		    return GamaListFactory.createWithoutCasting(Types.STRING, differences.toArray(new String[0]));
+		}
 
 }
@@ -1,57 +1,136 @@
 package gama.extension.GTFS;
 
+import java.util.BitSet;
+
+import gama.core.util.GamaListFactory;
+import gama.core.util.IList;
+import gama.gaml.types.Types;
+
+/**
+ * View over one route of a {@link GTFSFeed} (routes.txt, or a route_id only referenced by trips.txt).
+ * The trips, journey patterns, shapes and stops of the route are read from the route -> trips index
+ * of the feed, without scanning the other trips.
+ */
 public class TransportRoute {
 
-    private String routeId; // Route identifier
-    private String shortName; // Short name of the route
-    private String longName; // Long name of the route
-    private int type; // Type of transport (e.g., bus, tram, etc.)
+    private final GTFSFeed feed;
+    private final int index;
 
     // Constructor
-    public TransportRoute(String routeId, String shortName, String longName, int type) {
-        this.routeId = routeId;
-        this.shortName = shortName;
-        this.longName = longName;
-        this.type = type;
+    public TransportRoute(GTFSFeed feed, int index) {
+        this.feed = feed;
+        this.index = index;
     }
 
-    // Getters and Setters
-    public String getRouteId() {
-        return routeId;
+    public int getIndex() {
+        return index;
     }
 
-    public void setRouteId(String routeId) {
-        this.routeId = routeId;
+    public String getRouteId() {
+        return feed.getRouteIds().get(index);
     }
 
     public String getShortName() {
-        return shortName;
+        return feed.getRouteShortName(index);
+    }
+
+    public String getLongName() {
+        return feed.getRouteLongName(index);
     }
 
-    public void setShortName(String shortName) {
-        this.shortName = shortName;
+    /** route_type of routes.txt, or -1 if the route is not defined there. */
+    public int getType() {
+        return feed.getRouteType(index);
     }
 
-    public String getLongName() {
-        return longName;
+    /** route_color of routes.txt (hexadecimal, without '#'), or null if not given. */
+    public String getColor() {
+        return feed.getRouteColor(index);
     }
 
-    public void setLongName(String longName) {
-        this.longName = longName;
+    public int getTripCount() {
+        return feed.getRouteTripsEnd(index) - feed.getRouteTripsStart(index);
     }
 
-    public int getType() {
-        return type;
+    /** trip_ids of the route, in trips.txt order. */
+    @SuppressWarnings("unchecked")
+    public IList<String> getTripIds() {
+        IList<String> tripIds = GamaListFactory.create(Types.STRING);
+        for (int i = feed.getRouteTripsStart(index); i < feed.getRouteTripsEnd(index); i++) {
+            tripIds.add(feed.getTripId(feed.getRouteTrip(i)));
+        }
+        return tripIds;
     }
 
-    public void setType(int type) {
-        this.type = type;
+    /**
+     * Journey patterns of the route, in order of first trip: the stop_ids of each distinct stop sequence
+     * run by its trips.
+     */
+    @SuppressWarnings("unchecked")
+    public IList<IList<String>> getPatterns() {
+        IList<IList<String>> patterns = GamaListFactory.create(Types.LIST);
+        BitSet seen = new BitSet(feed.getPatternCount());
+        for (int i = feed.getRouteTripsStart(index); i < feed.getRouteTripsEnd(index); i++) {
+            int pattern = feed.getTripPattern(feed.getRouteTrip(i));
+            if (pattern == GTFSFeed.NONE || seen.get(pattern)) continue;
+            seen.set(pattern);
+            IList<String> stopIds = GamaListFactory.create(Types.STRING);
+            for (int p = feed.getPatternStopsStart(pattern); p < feed.getPatternStopsEnd(pattern); p++) {
+                stopIds.add(feed.getStopId(feed.getPatternStop(p)));
+            }
+            patterns.add(stopIds);
+        }
+        return patterns;
+    }
+
+    /** shape_ids used by the trips of the route, in order of first trip. */
+    @SuppressWarnings("unchecked")
+    public IList<String> getShapeIds() {
+        IList<String> shapeIds = GamaListFactory.create(Types.STRING);
+        BitSet seen = new BitSet(feed.getShapeIds().size());
+        for (int i = feed.getRouteTripsStart(index); i < feed.getRouteTripsEnd(index); i++) {
+            int shape = feed.getTripShape(feed.getRouteTrip(i));
+            if (shape == GTFSFeed.NONE || seen.get(shape)) continue;
+            seen.set(shape);
+            shapeIds.add(feed.getShapeIds().get(shape));
+        }
+        return shapeIds;
+    }
+
+    /** stop_ids served by the trips of the route, in order of first visit. */
+    @SuppressWarnings("unchecked")
+    public IList<String> getStopIds() {
+        IList<String> stopIds = GamaListFactory.create(Types.STRING);
+        BitSet seenPatterns = new BitSet(feed.getPatternCount());
+        BitSet seenStops = new BitSet(feed.getStopCount());
+        for (int i = feed.getRouteTripsStart(index); i < feed.getRouteTripsEnd(index); i++) {
+            int pattern = feed.getTripPattern(feed.getRouteTrip(i));
+            if (pattern == GTFSFeed.NONE || seenPatterns.get(pattern)) continue;
+            seenPatterns.set(pattern);
+            for (int p = feed.getPatternStopsStart(pattern); p < feed.getPatternStopsEnd(pattern); p++) {
+                int stop = feed.getPatternStop(p);
+                if (seenStops.get(stop)) continue;
+                seenStops.set(stop);
+                stopIds.add(feed.getStopId(stop));
+            }
+        }
+        return stopIds;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof TransportRoute other && other.feed == feed && other.index == index;
+    }
+
+    @Override
+    public int hashCode() {
+        return index;
     }
 
     // Method to display route information
     @Override
     public String toString() {
-        return "Route ID: " + routeId + ", Short Name: " + shortName + ", Long Name: " + longName + ", Type: " + type;
+        return "Route ID: " + getRouteId() + ", Short Name: " + getShortName() + ", Long Name: " + getLongName() + ", Type: " + getType();
     }
 
 }
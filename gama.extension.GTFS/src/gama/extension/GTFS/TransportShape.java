@@ -1,48 +1,204 @@
 package gama.extension.GTFS;
 
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
+
+import gama.core.common.geometry.GeometryUtils;
 import gama.core.metamodel.shape.GamaPoint;
+import gama.core.metamodel.shape.GamaShapeFactory;
 import gama.core.metamodel.shape.IShape;
 import gama.core.runtime.IScope;
-import gama.gaml.operators.spatial.SpatialCreation;
 import gama.core.util.GamaListFactory;
 import gama.core.util.IList;
+import gama.gaml.types.Types;
 import GamaGTFSUtils.SpatialUtils;
 
+/**
+ * Polyline of a shape, in the GAMA CRS. The points are packed in a coordinate array (x0, y0, x1, y1...)
+ * rather than held as one object each; GamaPoint lists and the geometry are built from it on demand.
+ *
+ * With -Dgtfs.shapes.compact=true (or setCompactStorage(true)), {@link #compact()} replaces the array by
+ * a delta/varint encoding of the coordinates rounded to the millimetre, decoded at each access.
+ *
+ * A shape created with {@link #TransportShape(String, String, TransportShape)} has the same points as
+ * another one (its canonical shape): it keeps its own shape_id, route and trip but shares the storage,
+ * the geometry and the distances of the canonical shape.
+ *
+ * The geometry is built once, on first request, and reused afterwards.
+ *
+ * Simplified variants of the geometry (topology-preserving Douglas-Peucker, one per tolerance of
+ * -Dgtfs.shapes.lod, in metres) are built together on the first request, for display at coarse scales.
+ */
 public class TransportShape {
+
+    // Opt-in compressed storage of the points, for very large feeds
+    private static volatile boolean compactStorage = Boolean.getBoolean("gtfs.shapes.compact");
+    private static final double COMPACT_SCALE = 1000.0;   // 1 mm in a metric CRS
+    // Tolerances of the simplified geometries, in GAMA CRS units (metres), increasing
+    private static volatile double[] lodTolerances = parseTolerances(System.getProperty("gtfs.shapes.lod", "5,20,100"));
+
 	private final String shapeId;
     private String routeId;
     private String tripId;
-    private final IList<GamaPoint> points; 
+    private final TransportShape canonical;          // shape whose points are shared, or null
+    private double[] coordinates;                    // x, y of each point (null once encoded)
+    private byte[] encoded;                          // delta/varint encoding (compact storage only)
+    private int pointCount = 0;
     private int routeType = -1;
+    private double[] cumulativeDistances;   // computed on first use
+    private volatile IShape geometry;        // built on first use
+    private IShape[] simplifiedGeometries;   // one per tolerance of simplifiedTolerances, built on first use
+    private double[] simplifiedTolerances;
 
     public TransportShape(String shapeId, String routeId) {
         this.shapeId = shapeId;
         this.routeId = routeId;
-        this.points = GamaListFactory.create();
+        this.canonical = null;
+        this.coordinates = new double[16];
+    }
+
+    /**
+     * A shape with the same points as another one: no point is stored, the geometry of the other shape
+     * is used.
+     */
+    public TransportShape(String shapeId, String routeId, TransportShape sameGeometry) {
+        this.shapeId = shapeId;
+        this.routeId = routeId;
+        this.canonical = sameGeometry.getCanonicalShape();
+    }
+
+    /** The shape that holds the points: this one, or the shape whose geometry it shares. */
+    public TransportShape getCanonicalShape() {
+        return canonical != null ? canonical : this;
+    }
+
+    public static boolean isCompactStorage() {
+        return compactStorage;
+    }
+
+    /** Enables or disables the compressed storage of the shapes created next. */
+    public static void setCompactStorage(boolean enabled) {
+        compactStorage = enabled;
+    }
+
+    public static double[] getLodTolerances() {
+        return lodTolerances.clone();
+    }
+
+    /** Sets the tolerances (in metres) of the simplified geometries, for the requests made next. */
+    public static void setLodTolerances(double... tolerances) {
+        double[] sorted = tolerances.clone();
+        Arrays.sort(sorted);
+        lodTolerances = sorted;
+    }
+
+    private static double[] parseTolerances(String value) {
+        try {
+            return Arrays.stream(value.split(",")).map(String::trim).filter(v -> !v.isEmpty())
+                .mapToDouble(Double::parseDouble).filter(t -> t > 0).sorted().toArray();
+        } catch (NumberFormatException e) {
+            GTFSLog.warning("[WARNING] Invalid gtfs.shapes.lod value '" + value + "', shapes are not simplified.");
+            return new double[0];
+        }
     }
 
     public void addPoint(double lat, double lon, IScope scope) {
-        points.add(SpatialUtils.toGamaCRS(scope, lat, lon));
+        addPoint(SpatialUtils.toGamaCRS(scope, lat, lon));
     }
 
-    public IShape generateShape(IScope scope) {
-        if (points.isEmpty()) {
-            return null;
+    /** Adds a point already projected in the GAMA CRS. */
+    public void addPoint(GamaPoint point) {
+        if (canonical != null) throw new IllegalStateException("Shape " + shapeId + " shares the points of " + canonical.shapeId);
+        if (coordinates == null) coordinates = decode();
+        if (2 * pointCount == coordinates.length) coordinates = Arrays.copyOf(coordinates, 4 * pointCount);
+        coordinates[2 * pointCount] = point.getX();
+        coordinates[2 * pointCount + 1] = point.getY();
+        pointCount++;
+        encoded = null;
+        cumulativeDistances = null;
+        geometry = null;
+        simplifiedGeometries = null;
+    }
+
+    /**
+     * Releases the unused capacity once all the points are added, and encodes them if the compact
+     * storage is enabled.
+     */
+    public void compact() {
+        if (canonical != null || coordinates == null) return;
+        if (compactStorage) {
+            encoded = encode(coordinates, pointCount);
+            coordinates = null;
+        } else if (coordinates.length > 2 * pointCount) {
+            coordinates = Arrays.copyOf(coordinates, 2 * pointCount);
         }
+    }
 
-        IList<IShape> shapePoints = GamaListFactory.create();
-        for (GamaPoint point : points) {
-            shapePoints.add(point);
+    public int getPointCount() {
+        if (canonical != null) return canonical.getPointCount();
+        return pointCount;
+    }
+
+    /**
+     * Coordinates of the points (x0, y0, x1, y1...), in the GAMA CRS. The array may be the one held by
+     * the shape: it must not be modified.
+     */
+    public double[] getCoordinates() {
+        if (canonical != null) return canonical.getCoordinates();
+        if (coordinates == null) return decode();
+        return coordinates.length == 2 * pointCount ? coordinates : Arrays.copyOf(coordinates, 2 * pointCount);
+    }
+
+    /**
+     * Distance of each point from the first one along the shape, in the GAMA CRS.
+     */
+    public double[] getCumulativeDistances() {
+        if (canonical != null) return canonical.getCumulativeDistances();
+        if (cumulativeDistances == null) {
+            double[] xy = getCoordinates();
+            double[] distances = new double[pointCount];
+            for (int i = 1; i < distances.length; i++) {
+                double dx = xy[2 * i] - xy[2 * i - 2];
+                double dy = xy[2 * i + 1] - xy[2 * i - 1];
+                distances[i] = distances[i - 1] + Math.hypot(dx, dy);
+            }
+            cumulativeDistances = distances;
         }
+        return cumulativeDistances;
+    }
 
-        return SpatialCreation.line(scope, shapePoints);
+    /**
+     * Builds a new polyline straight from the packed coordinates (see {@link #getGeometry(IScope)} for the
+     * cached one).
+     *
+     * @return The line, the point itself for a single point shape, or null if the shape has no point
+     */
+    public IShape generateShape(IScope scope) {
+        if (canonical != null) return canonical.generateShape(scope);
+        if (pointCount == 0) {
+            return null;
+        }
+        double[] xy = getCoordinates();
+        if (pointCount == 1) return new GamaPoint(xy[0], xy[1], 0.0);
+
+        GamaPoint[] points = new GamaPoint[pointCount];
+        for (int i = 0; i < pointCount; i++) points[i] = new GamaPoint(xy[2 * i], xy[2 * i + 1], 0.0);
+        return GamaShapeFactory.createFrom(GeometryUtils.GEOMETRY_FACTORY.createLineString(points));
     }
 
-    public String getShapeId() { 
-    	return shapeId; 
+    public String getShapeId() {
+    	return shapeId;
     	}
 
+    /** The points of the shape, as a new list. */
+    @SuppressWarnings("unchecked")
     public IList<GamaPoint> getPoints() {
+        if (canonical != null) return canonical.getPoints();
+        double[] xy = getCoordinates();
+        IList<GamaPoint> points = GamaListFactory.create(Types.POINT);
+        for (int i = 0; i < pointCount; i++) points.add(new GamaPoint(xy[2 * i], xy[2 * i + 1], 0.0));
         return points;
     }
 
@@ -62,21 +218,118 @@ public class TransportShape {
     public void setRouteType(int routeType) {
         this.routeType = routeType;
     }
-    
-    public String getTripId() { 
+
+    public String getTripId() {
     	        return tripId;
     }
 
     public void setTripId(String tripId) {
         this.tripId = tripId;
     }
-    
+
+    /**
+     * The polyline of the shape, built on the first call and then shared by all the callers (and agents):
+     * it must not be modified.
+     *
+     * @return The line, the point itself for a single point shape, or null if the shape has no point
+     */
     public IShape getGeometry(IScope scope) {
-        return generateShape(scope);
+        if (canonical != null) return canonical.getGeometry(scope);
+        IShape built = geometry;
+        if (built == null && pointCount > 0) {
+            synchronized (this) {
+                built = geometry;
+                if (built == null) geometry = built = generateShape(scope);
+            }
+        }
+        return built;
+    }
+
+    /**
+     * The coarsest simplified geometry whose tolerance does not exceed the given one, e.g. the size of a
+     * pixel at the current display scale.
+     *
+     * @param tolerance Maximal distance (GAMA CRS units, i.e. metres) between the returned line and the shape
+     * @return The simplified line, or the full geometry if no level is coarse enough
+     */
+    public IShape getSimplifiedGeometry(IScope scope, double tolerance) {
+        if (canonical != null) return canonical.getSimplifiedGeometry(scope, tolerance);
+        IShape full = getGeometry(scope);
+        if (full == null || pointCount < 3) return full;
+        IShape[] levels;
+        double[] tolerances;
+        synchronized (this) {
+            if (simplifiedGeometries == null || simplifiedTolerances != lodTolerances) {
+                simplifiedTolerances = lodTolerances;
+                simplifiedGeometries = new IShape[simplifiedTolerances.length];
+                for (int i = 0; i < simplifiedGeometries.length; i++) {
+                    simplifiedGeometries[i] = GamaShapeFactory.createFrom(
+                        TopologyPreservingSimplifier.simplify(full.getInnerGeometry(), simplifiedTolerances[i]));
+                }
+            }
+            levels = simplifiedGeometries;
+            tolerances = simplifiedTolerances;
+        }
+        IShape best = full;
+        for (int i = 0; i < tolerances.length && tolerances[i] <= tolerance; i++) best = levels[i];
+        return best;
+    }
+
+    // --- Encodage delta/varint : coordonnées arrondies au millimètre, écarts successifs en zigzag
+
+    private static byte[] encode(double[] xy, int count) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(count * 4 + 8);
+        long previousX = 0;
+        long previousY = 0;
+        for (int i = 0; i < count; i++) {
+            long x = Math.round(xy[2 * i] * COMPACT_SCALE);
+            long y = Math.round(xy[2 * i + 1] * COMPACT_SCALE);
+            writeVarLong(out, x - previousX);
+            writeVarLong(out, y - previousY);
+            previousX = x;
+            previousY = y;
+        }
+        return out.toByteArray();
+    }
+
+    private double[] decode() {
+        double[] xy = new double[2 * pointCount];
+        if (encoded == null) return xy;
+        int[] position = { 0 };
+        long x = 0;
+        long y = 0;
+        for (int i = 0; i < pointCount; i++) {
+            x += readVarLong(encoded, position);
+            y += readVarLong(encoded, position);
+            xy[2 * i] = x / COMPACT_SCALE;
+            xy[2 * i + 1] = y / COMPACT_SCALE;
+        }
+        return xy;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            out.write((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.write((int) zigzag);
+    }
+
+    private static long readVarLong(byte[] bytes, int[] position) {
+        long zigzag = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[position[0]++];
+            zigzag |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
     }
 
     @Override
     public String toString() {
-        return "Shape ID: " + shapeId + ", Route ID: " + routeId + ", Route Type: " + routeType + ", Points: " + points.size();
+        return "Shape ID: " + shapeId + ", Route ID: " + routeId + ", Route Type: " + routeType + ", Points: " + getPointCount();
     }
 }
@@ -2,6 +2,7 @@ package gama.extension.GTFS;
 
 import gama.core.metamodel.shape.GamaPoint;
 import gama.core.runtime.IScope;
+import gama.core.util.GamaListFactory;
 import gama.core.util.GamaMapFactory;
 import gama.core.util.GamaPair;
 import gama.core.util.IList;
@@ -10,77 +11,193 @@ import gama.core.util.IMap;
 import GamaGTFSUtils.SpatialUtils;
 import gama.gaml.types.Types;
 
+/**
+ * View over one stop of a {@link GTFSFeed}. Only the projected location and the values computed by
+ * GTFS_reader (routeType, departures) are held here: departureTripsInfo and tripShapeMap are built on
+ * demand from the feed columns.
+ *
+ * The integer departure times and the arrival times (departureStopsTimes, arrivalStopsTimes of the stop
+ * agents) are opt-in, with -Dgtfs.stops.intTimes=true (or setIntegerTimes(true)): each map holds the stop
+ * list of every trip starting here.
+ */
 public class TransportStop {
 
-    private String stopId;
-    private String stopName;
-    private double stopLat;   // Latitude originale du GTFS
-    private double stopLon;   // Longitude originale du GTFS
+    // Opt-in integer departure and arrival times of the stop agents
+    private static volatile boolean integerTimes = Boolean.getBoolean("gtfs.stops.intTimes");
+
+    private final GTFSFeed feed;
+    private final int index;
     private GamaPoint location;
     private int routeType = -1;
-    private int tripNumber = 0; 
-    private IMap<String, IList<GamaPair<String, String>>> departureTripsInfo;
-    private IMap<String, String> tripShapeMap;
-    private IMap<String, IList<Double>> departureShapeDistances;
+    private int tripNumber = 0;
+    private int[] departureTrips;   // trips starting here, sorted by departure time (null if none)
 
-    @SuppressWarnings("unchecked")
-    public TransportStop(String stopId, String stopName, double stopLat, double stopLon, IScope scope) {
-        this.stopId = stopId;
-        this.stopName = stopName;
-        this.stopLat = stopLat;
-        this.stopLon = stopLon;
+    public TransportStop(GTFSFeed feed, int index, IScope scope) {
         // Conversion pour la simulation GAMA (en CRS interne)
-        this.location = SpatialUtils.toGamaCRS(scope, stopLat, stopLon);
-        this.departureTripsInfo = null;
-        this.tripShapeMap = GamaMapFactory.create(Types.STRING, Types.STRING);
-        this.departureShapeDistances = GamaMapFactory.create(Types.STRING, Types.LIST);
-        //System.out.println("[TEST] Coordonnées projetées pour " + stopName + ": " + location);
+        this(feed, index, SpatialUtils.toGamaCRS(scope, feed.getStopLat(index), feed.getStopLon(index)));
+    }
+
+    /**
+     * @param location The location of the stop, already projected in the GAMA CRS
+     */
+    public TransportStop(GTFSFeed feed, int index, GamaPoint location) {
+        this.feed = feed;
+        this.index = index;
+        this.location = location;
+    }
+
+    public static boolean isIntegerTimes() {
+        return integerTimes;
+    }
+
+    /** Enables or disables the integer departure and arrival times of the stop agents created next. */
+    public static void setIntegerTimes(boolean enabled) {
+        integerTimes = enabled;
     }
 
     // --- ACCESSEURS classiques
-    public String getStopId() { return stopId; }
-    public String getStopName() { return stopName; }
+    public int getIndex() { return index; }
+    public String getStopId() { return feed.getStopId(index); }
+    public String getStopName() { return feed.getStopName(index); }
     public GamaPoint getLocation() { return location; }
     public int getRouteType() { return routeType; }
     public void setRouteType(int routeType) { this.routeType = routeType; }
 
-  
-    public double getStopLat() { return stopLat; }
-    public double getStopLon() { return stopLon; }
 
-    public IMap<String, IList<GamaPair<String, String>>> getDepartureTripsInfo() { return departureTripsInfo; }
+    public double getStopLat() { return feed.getStopLat(index); }
+    public double getStopLon() { return feed.getStopLon(index); }
 
-    public void addStopPairs(String tripId, IList<GamaPair<String, String>> stopPairs) {
-        departureTripsInfo.put(tripId, stopPairs);
+    /**
+     * Trips starting at this stop: trip id → list of (stop id, departure time in seconds).
+     *
+     * @return The map, or null if no trip starts here
+     */
+    @SuppressWarnings("unchecked")
+    public IMap<String, IList<GamaPair<String, String>>> getDepartureTripsInfo() {
+        if (departureTrips == null) return null;
+        IMap<String, IList<GamaPair<String, String>>> departureTripsInfo = GamaMapFactory.create(Types.STRING, Types.LIST);
+        for (int trip : departureTrips) {
+            IList<GamaPair<String, String>> stopPairs = GamaListFactory.create(Types.PAIR);
+            for (int row = feed.getStopTimesStart(trip); row < feed.getStopTimesEnd(trip); row++) {
+                String stopId = feed.getStopId(feed.getStopTimeStop(row));
+                int departure = Math.max(feed.getStopTimeDeparture(row), 0);
+                stopPairs.add(new GamaPair<>(stopId, String.valueOf(departure), Types.STRING, Types.STRING));
+            }
+            departureTripsInfo.put(feed.getTripId(trip), stopPairs);
+        }
+        return departureTripsInfo;
     }
 
-    public void setDepartureTripsInfo(IMap<String, IList<GamaPair<String, String>>> departureTripsInfo) {
-        this.departureTripsInfo = departureTripsInfo;
+    /**
+     * Trips starting at this stop: trip id → list of (stop id, departure time in seconds), as integers.
+     *
+     * @return The map, or null if no trip starts here
+     */
+    @SuppressWarnings("unchecked")
+    public IMap<String, IList<GamaPair<String, Integer>>> getDepartureTimesInfo() {
+        if (departureTrips == null) return null;
+        IMap<String, IList<GamaPair<String, Integer>>> departureTimesInfo = GamaMapFactory.create(Types.STRING, Types.LIST);
+        for (int trip : departureTrips) {
+            IList<GamaPair<String, Integer>> stopPairs = GamaListFactory.create(Types.PAIR);
+            for (int row = feed.getStopTimesStart(trip); row < feed.getStopTimesEnd(trip); row++) {
+                String stopId = feed.getStopId(feed.getStopTimeStop(row));
+                stopPairs.add(new GamaPair<>(stopId, Math.max(feed.getStopTimeDeparture(row), 0), Types.STRING, Types.INT));
+            }
+            departureTimesInfo.put(feed.getTripId(trip), stopPairs);
+        }
+        return departureTimesInfo;
     }
 
+    /**
+     * Arrival times of the trips starting at this stop: trip id → arrival time in seconds at each stop, in
+     * the order of {@link #getDepartureTimesInfo()}. A missing arrival_time is replaced by the departure time.
+     *
+     * @return The map, or null if no trip starts here
+     */
     @SuppressWarnings("unchecked")
-    public void ensureDepartureTripsInfo() {
-        if (this.departureTripsInfo == null) {
-            this.departureTripsInfo = GamaMapFactory.create(Types.STRING, Types.LIST);
+    public IMap<String, IList<Integer>> getArrivalTimesInfo() {
+        if (departureTrips == null) return null;
+        IMap<String, IList<Integer>> arrivalTimesInfo = GamaMapFactory.create(Types.STRING, Types.LIST);
+        for (int trip : departureTrips) {
+            IList<Integer> arrivals = GamaListFactory.create(Types.INT);
+            for (int row = feed.getStopTimesStart(trip); row < feed.getStopTimesEnd(trip); row++) {
+                int arrival = feed.getStopTimeArrival(row);
+                if (arrival == GTFSFeed.NO_TIME) arrival = feed.getStopTimeDeparture(row);
+                arrivals.add(Math.max(arrival, 0));
+            }
+            arrivalTimesInfo.put(feed.getTripId(trip), arrivals);
         }
+        return arrivalTimesInfo;
     }
 
-    public IMap<String, String> getTripShapeMap() { return tripShapeMap; }
+    public int[] getDepartureTrips() { return departureTrips; }
 
-    public void addTripShapePair(String tripId, String shapeId) { this.tripShapeMap.put(tripId, shapeId); }
-    
+    public void setDepartureTrips(int[] departureTrips) { this.departureTrips = departureTrips; }
+
+    /**
+     * Active trips serving this stop: trip id → shape id, in order of first visit in stop_times.txt.
+     *
+     * @return The map, empty if stop_times.txt could not be loaded
+     */
+    @SuppressWarnings("unchecked")
+    public IMap<String, String> getTripShapeMap() {
+        IMap<String, String> tripShapeMap = GamaMapFactory.create(Types.STRING, Types.STRING);
+        if (!feed.hasStopTimes()) return tripShapeMap;
+        for (int i = feed.getStopTripsStart(index); i < feed.getStopTripsEnd(index); i++) {
+            int trip = feed.getStopTrip(i);
+            if (feed.isTripActive(trip)) {
+                tripShapeMap.put(feed.getTripId(trip), feed.getShapeIds().get(feed.getTripShape(trip)));
+            }
+        }
+        return tripShapeMap;
+    }
+
+    /**
+     * shape_dist_traveled of the trips starting at this stop: trip id → distance at each stop, in the order
+     * of {@link #getDepartureTimesInfo()} and in the unit of the feed. Trips without any distance in
+     * stop_times.txt are left out; a missing value inside a trip is 0.0.
+     *
+     * @return The map, empty if no trip starts here
+     */
     public IMap<String, IList<Double>> getDepartureShapeDistances() {
-        return departureShapeDistances;
+        return getDepartureShapeDistances(null);
     }
 
-    public void addDepartureShapeDistances(String tripId, IList<Double> distances) {
-        departureShapeDistances.put(tripId, distances);
+    /**
+     * Same as {@link #getDepartureShapeDistances()}, the trips without shape_dist_traveled getting the
+     * distances of their stops along their shape (GAMA CRS) instead.
+     *
+     * @param referencing The positions of the stops along the shapes, or null to only use stop_times.txt
+     */
+    @SuppressWarnings("unchecked")
+    public IMap<String, IList<Double>> getDepartureShapeDistances(GTFSShapeReferencing referencing) {
+        IMap<String, IList<Double>> departureShapeDistances = GamaMapFactory.create(Types.STRING, Types.LIST);
+        if (departureTrips == null) return departureShapeDistances;
+        for (int trip : departureTrips) {
+            IList<Double> distances = GamaListFactory.create(Types.FLOAT);
+            boolean given = false;
+            for (int row = feed.getStopTimesStart(trip); row < feed.getStopTimesEnd(trip); row++) {
+                double distance = feed.getStopTimeDistance(row);
+                given |= !Double.isNaN(distance);
+                distances.add(Double.isNaN(distance) ? 0.0 : distance);
+            }
+            if (!given && referencing != null) {
+                double[] projected = referencing.getStopDistances(trip);
+                if (projected != null) {
+                    distances.clear();
+                    for (double distance : projected) distances.add(distance);
+                    given = true;
+                }
+            }
+            if (given) departureShapeDistances.put(feed.getTripId(trip), distances);
+        }
+        return departureShapeDistances;
     }
-    
+
     public int getTripNumber() {
         return tripNumber;
     }
-    
+
     public void setTripNumber(int tripNumber) {
         this.tripNumber = tripNumber;
     }
@@ -90,10 +207,10 @@ public class TransportStop {
         String locationStr = (location != null)
                 ? String.format("x=%.2f, y=%.2f", location.getX(), location.getY())
                 : "null";
-        return "TransportStop{id='" + stopId + "', name='" + stopName
+        return "TransportStop{id='" + getStopId() + "', name='" + getStopName()
                 + "', location={" + locationStr + "}, "
                 + "routeType=" + routeType + ", "
-                + "tripShapeMap=" + tripShapeMap + "}";
+                + "tripShapeMap=" + getTripShapeMap() + "}";
     }
 
     public GamaPoint getGeometry() {
@@ -7,122 +7,120 @@ import gama.core.util.GamaMapFactory;
 import gama.core.util.IList;
 import gama.core.util.IMap;
 
+/**
+ * View over one trip of a {@link GTFSFeed}. The stop list and the stop details are built on demand
+ * from the stop_times columns of the feed and are only exposed for active trips.
+ */
 public class TransportTrip {
 
-    private String routeId; 
-    private String serviceId; 
-    private String tripId;
-    private String shapeId;
-    private int routeType = -1;
-    private IList<String> stopIdsInOrder; 
-    private IList<IMap<String, Object>> stopDetails; 
+    private final GTFSFeed feed;
+    private final int index;
 
     // Constructor
-    public TransportTrip(String routeId, String serviceId, String tripId, int directionId, String shapeId) {
-        this.routeId = routeId;
-        this.serviceId = serviceId;
-        this.tripId = tripId;
-        this.shapeId = shapeId;
-        this.stopIdsInOrder = GamaListFactory.create();
-        this.stopDetails = GamaListFactory.create();
-    }
-    
-    public int getRouteType() {  
-        return routeType;
-    }
-
-    public void setRouteType(int routeType) {
-        this.routeType = routeType;
+    public TransportTrip(GTFSFeed feed, int index) {
+        this.feed = feed;
+        this.index = index;
     }
 
-    // Add a stop_id in sequence order
-    public void addStop(String stopId) {
-        stopIdsInOrder.add(stopId);
+    public int getIndex() {
+        return index;
     }
 
-    // Add stop details (stopId and departureTime)
-    public void addStopDetail(String stopId, String departureTime, double shapeDistTraveled) {
-        @SuppressWarnings("unchecked")
-		IMap<String, Object> stopDetail = GamaMapFactory.create();
-        stopDetail.put("stopId", stopId);
-        stopDetail.put("departureTime", departureTime);
-        stopDetail.put("shapeDistTraveled", shapeDistTraveled); // 🔥 ajoute la distance
-        stopDetails.add(stopDetail);
+    public int getRouteType() {
+        return feed.getTripRouteType(index);
     }
 
-
-    // Set stop details
-    public void setStopDetails(IList<IMap<String, Object>> stopDetails) {
-        this.stopDetails = stopDetails;
+    public void setRouteType(int routeType) {
+        feed.setTripRouteType(index, routeType);
     }
 
-    // Get stop details
+    // Get stop details (stopId, arrivalTime, departureTime, shapeDistTraveled)
+    // shapeDistTraveled is in the unit of the feed, 0.0 when stop_times.txt does not give it
+    @SuppressWarnings("unchecked")
     public IList<IMap<String, Object>> getStopDetails() {
+        IList<IMap<String, Object>> stopDetails = GamaListFactory.create();
+        if (!feed.isTripActive(index)) return stopDetails;
+        for (int row = feed.getStopTimesStart(index); row < feed.getStopTimesEnd(index); row++) {
+            IMap<String, Object> stopDetail = GamaMapFactory.create();
+            stopDetail.put("stopId", feed.getStopId(feed.getStopTimeStop(row)));
+            int arrival = feed.getStopTimeArrival(row);
+            stopDetail.put("arrivalTime", GTFSFeed.formatTime(arrival == GTFSFeed.NO_TIME ? feed.getStopTimeDeparture(row) : arrival));
+            stopDetail.put("departureTime", GTFSFeed.formatTime(feed.getStopTimeDeparture(row)));
+            double distance = feed.getStopTimeDistance(row);
+            stopDetail.put("shapeDistTraveled", Double.isNaN(distance) ? 0.0 : distance);
+            stopDetails.add(stopDetail);
+        }
         return stopDetails;
     }
 
     // Get stops in order
     public IList<String> getStopsInOrder() {
+        IList<String> stopIdsInOrder = GamaListFactory.create();
+        int pattern = feed.getTripPattern(index);
+        if (!feed.isTripActive(index) || pattern == GTFSFeed.NONE) return stopIdsInOrder;
+        for (int i = feed.getPatternStopsStart(pattern); i < feed.getPatternStopsEnd(pattern); i++) {
+            stopIdsInOrder.add(feed.getStopId(feed.getPatternStop(i)));
+        }
         return stopIdsInOrder;
     }
 
-    // Set the entire list of stop_ids
-    public void setStopIdsInOrder(IList<String> stopIdsInOrder) {
-        this.stopIdsInOrder = stopIdsInOrder;
+    // Getters for trip attributes
+    /** Journey pattern of the trip (shared by the trips with the same stop sequence), or GTFSFeed.NONE. */
+    public int getPattern() {
+        return feed.getTripPattern(index);
     }
 
-    // Getters and Setters for trip attributes
     public String getRouteId() {
-        return routeId;
-    }
-
-    public void setRouteId(String routeId) {
-        this.routeId = routeId;
+        return feed.getRouteIds().get(feed.getTripRoute(index));
     }
 
     public String getServiceId() {
-        return serviceId;
-    }
-
-    public void setServiceId(String serviceId) {
-        this.serviceId = serviceId;
+        return feed.getServiceIds().get(feed.getTripService(index));
     }
 
 	public String getTripId() {
-		return tripId;
+		return feed.getTripId(index);
 	}
 
-    public void setTripId(String tripId) {
-        this.tripId = tripId;
-    }
-
+    public String getShapeId() { return feed.getShapeIds().get(feed.getTripShape(index)); }
 
-    public String getShapeId() { return shapeId; }
+    public void setShapeId(String shapeId) {
+        feed.setTripShape(index, shapeId == null ? GTFSFeed.NONE : feed.getShapeIds().intern(shapeId));
+    }
 
-    public void setShapeId(String shapeId) { this.shapeId = shapeId; }
-    
     /**
      * Returns a list of TransportStop objects corresponding to the stop IDs in this trip.
-     * 
+     *
      * @param stopsMap A map containing stop IDs and their corresponding TransportStop objects.
      * @return A list of TransportStop objects.
      */
     public IList<TransportStop> getStops(Map<String, TransportStop> stopsMap) {
         IList<TransportStop> stops = GamaListFactory.create();
-        for (String stopId : stopIdsInOrder) {
+        for (String stopId : getStopsInOrder()) {
             TransportStop stop = stopsMap.get(stopId);
             if (stop != null) {
                 stops.add(stop);
             } else {
-                System.err.println("[Warning] Stop ID not found in stopsMap: " + stopId);
+                GTFSLog.warning("[Warning] Stop ID not found in stopsMap: " + stopId);
             }
         }
         return stops;
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof TransportTrip other && other.feed == feed && other.index == index;
+    }
+
+    @Override
+    public int hashCode() {
+        return index;
+    }
+
     // Display trip information
     @Override
     public String toString() {
-        return "Trip ID: " + tripId + ", Route ID: " + routeId + ", Stops: " + stopIdsInOrder.size() + " stops.";
+        int stops = feed.isTripActive(index) ? feed.getStopTimeCount(index) : 0;
+        return "Trip ID: " + getTripId() + ", Route ID: " + getRouteId() + ", Stops: " + stops + " stops.";
     }
 }
@@ -6,6 +6,7 @@ import gama.core.util.GamaListFactory;
 import gama.core.util.IList;
 import gama.core.metamodel.agent.IAgent;
 import gama.core.metamodel.population.IPopulation;
+import gama.extension.GTFS.GTFSLog;
 import gama.extension.GTFS.GTFS_reader;
 
 import gama.gaml.expressions.IExpression;
@@ -50,7 +51,7 @@ public class CreateAgentsFromGTFS implements ICreateDelegate {
 
         IPopulation<? extends IAgent> population = scope.getSimulation().getPopulationFor(targetSpecies);
         if (population == null) {
-            System.err.println("[ERROR] Population not found for species: " + targetSpecies.getName());
+            GTFSLog.error("[ERROR] Population not found for species: " + targetSpecies.getName());
             return false;
         }
 
@@ -83,17 +84,17 @@ public class CreateAgentsFromGTFS implements ICreateDelegate {
     @Override
     public IList<? extends IAgent> createAgents(IScope scope, IPopulation<? extends IAgent> population, List<Map<String, Object>> inits, CreateStatement statement, RemoteSequence sequence) {
         if (inits.isEmpty()) {
-            System.out.println("[INFO] No agents to create.");
+            GTFSLog.info("[INFO] No agents to create.");
             return GamaListFactory.create(Types.AGENT); 
         }
         
-        System.out.println("[DEBUG] Checking trip inits before creating agents...");
+        GTFSLog.debug("[DEBUG] Checking trip inits before creating agents...");
         
         List<? extends IAgent> createdAgents = agentCreator.createAgents(scope, population, inits, statement, sequence);
         IList<IAgent> agentList = GamaListFactory.create(Types.AGENT);
         agentList.addAll(createdAgents); 
         
-        System.out.println("[DEBUG] Created " + agentList.size() + " agents.");
+        GTFSLog.debug("[DEBUG] Created " + agentList.size() + " agents.");
         
         return agentList;
     }
@@ -104,14 +105,19 @@ public class CreateAgentsFromGTFS implements ICreateDelegate {
 
     /**
      * Selects the appropriate agent creation handler based on the species type.
+     * The reader only loads the tables needed by the requested objects (shapes.txt for shapes only).
      */
     private GTFSAgentCreator getAgentCreator(IScope scope, ISpecies species, GTFS_reader gtfsReader) {
         if (species.implementsSkill("TransportStopSkill")) {
-            return new TransportStopCreator(gtfsReader != null ? gtfsReader.getStops() : null);
+            return gtfsReader != null
+                ? new TransportStopCreator(gtfsReader.getStops(scope), gtfsReader.getStopShapeReferencing(scope))
+                : new TransportStopCreator(null);
         } else if (species.implementsSkill("TransportShapeSkill")) {
             return new TransportShapeCreator(gtfsReader != null ? gtfsReader.getShapes(scope) : null);
         } else if (species.implementsSkill("TransportTripSkill")) {
-            return new TransportTripCreator(gtfsReader != null ? gtfsReader.getTrips() : null);
+            return new TransportTripCreator(gtfsReader != null ? gtfsReader.getTrips(scope) : null);
+        } else if (species.implementsSkill("TransportRouteSkill")) {
+            return new TransportRouteCreator(gtfsReader != null ? gtfsReader.getRoutes(scope) : null);
         }
         return null;
     }
@@ -0,0 +1,56 @@
+package gama.extension.GTFS.gaml;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import gama.core.metamodel.agent.IAgent;
+import gama.core.metamodel.population.IPopulation;
+import gama.core.runtime.IScope;
+import gama.core.util.IList;
+import gama.extension.GTFS.TransportRoute;
+import gama.gaml.statements.CreateStatement;
+import gama.gaml.statements.RemoteSequence;
+
+public class TransportRouteCreator implements GTFSAgentCreator {
+
+	private List<TransportRoute> routes;
+
+	public TransportRouteCreator(List<TransportRoute> routes) {
+		this.routes = (routes != null) ? routes : new ArrayList<>();
+	}
+
+	@Override
+	public void addInits(IScope scope, List<Map<String, Object>> inits, Integer max) {
+	    int limit = (max != null) ? Math.min(max, routes.size()) : routes.size();
+
+	    for (int i = 0; i < limit; i++) {
+	        TransportRoute route = routes.get(i);
+	        Map<String, Object> routeInit = new HashMap<>();
+	        routeInit.put("routeId", route.getRouteId());
+	        routeInit.put("shortName", route.getShortName());
+	        routeInit.put("longName", route.getLongName());
+	        routeInit.put("type", route.getType());
+	        routeInit.put("color", route.getColor());
+	        routeInit.put("tripIds", route.getTripIds());
+	        routeInit.put("patterns", route.getPatterns());
+	        routeInit.put("shapeIds", route.getShapeIds());
+	        routeInit.put("stopIds", route.getStopIds());
+	        routeInit.put("name", route.getShortName() != null ? route.getShortName() : route.getRouteId());
+	        inits.add(routeInit);
+	    }
+	}
+
+	@Override
+	public boolean handlesCreation() {
+		return true;
+	}
+
+	@Override
+	public IList<? extends IAgent> createAgents(IScope scope, IPopulation<? extends IAgent> population,
+			List<Map<String, Object>> inits, CreateStatement statement, RemoteSequence sequence) {
+		return population.createAgents(scope, inits.size(), inits, false, true);
+	}
+
+}
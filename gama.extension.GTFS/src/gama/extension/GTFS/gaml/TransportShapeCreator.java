@@ -2,16 +2,19 @@ package gama.extension.GTFS.gaml;
 
 import gama.core.metamodel.agent.IAgent;
 import gama.core.metamodel.population.IPopulation;
-import gama.core.metamodel.shape.IShape;
 import gama.core.runtime.IScope;
+import gama.core.util.GamaListFactory;
 import gama.core.util.IList;
+import gama.extension.GTFS.GTFSLog;
 import gama.extension.GTFS.TransportShape;
 import gama.gaml.statements.CreateStatement;
 import gama.gaml.statements.RemoteSequence;
+import gama.gaml.types.Types;
 import gama.core.common.interfaces.IKeyword;
 
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -30,22 +33,22 @@ public class TransportShapeCreator implements GTFSAgentCreator {
 
 	    for (int i = 0; i < limit; i++) {
 	        TransportShape shape = shapes.get(i);
-	        IShape polyline = shape.generateShape(scope);
-
-	        if (polyline == null) {
-	            System.err.println("[ERROR] Shape generation failed for Shape ID: " + shape.getShapeId());
+	        if (shape.getPointCount() == 0) {
+	            GTFSLog.error("[ERROR] Shape generation failed for Shape ID: " + shape.getShapeId());
 	            continue;
 	        }
 
-	        int routeType = shape.getRouteType();
-
-	        final Map<String, Object> map = polyline.getAttributes(true);
-	        polyline.setAttribute(IKeyword.SHAPE, polyline); 
+	        final Map<String, Object> map = new HashMap<>();
 	        map.put("shapeId", shape.getShapeId());
-	        map.put("routeType", routeType);
+	        map.put("routeType", shape.getRouteType());
 	        map.put("routeId", shape.getRouteId());
 	        map.put("tripId", shape.getTripId());
+
+	        map.put(IKeyword.SHAPE, shape.getGeometry(scope));
 	        map.put("shape_points", shape.getPoints());
+	        IList<Double> cumulativeDistances = GamaListFactory.create(Types.FLOAT);
+	        for (double distance : shape.getCumulativeDistances()) cumulativeDistances.add(distance);
+	        map.put("cumulativeDistances", cumulativeDistances);
 
 	        inits.add(map);
 	    }
@@ -8,6 +8,7 @@ import gama.core.util.GamaMapFactory;
 import gama.core.util.GamaPair;
 import gama.core.util.IList;
 import gama.core.util.IMap;
+import gama.extension.GTFS.GTFSShapeReferencing;
 import gama.extension.GTFS.TransportStop;
 import gama.gaml.statements.CreateStatement;
 import gama.gaml.statements.RemoteSequence;
@@ -20,14 +21,25 @@ import java.util.Map;
 public class TransportStopCreator implements GTFSAgentCreator {
     
     private List<TransportStop> stops;
+    private GTFSShapeReferencing shapeReferencing;
 
     public TransportStopCreator(List<TransportStop> stops) {
+        this(stops, null);
+    }
+
+    /**
+     * @param shapeReferencing Positions of the stops along the shapes, for the trips without
+     *        shape_dist_traveled (null to only use stop_times.txt)
+     */
+    public TransportStopCreator(List<TransportStop> stops, GTFSShapeReferencing shapeReferencing) {
         this.stops = stops;
+        this.shapeReferencing = shapeReferencing;
     }
 
     @Override
     public void addInits(IScope scope, List<Map<String, Object>> inits, Integer max) {
         int limit = (max != null) ? Math.min(max, stops.size()) : stops.size();
+        boolean integerTimes = TransportStop.isIntegerTimes();
 
         for (int i = 0; i < limit; i++) {
             TransportStop stop = stops.get(i);
@@ -37,6 +49,11 @@ public class TransportStopCreator implements GTFSAgentCreator {
             stopInit.put("location", stop.getLocation());
             stopInit.put("routeType", stop.getRouteType());
             stopInit.put("departureTripsInfo", stop.getDepartureTripsInfo());
+            if (integerTimes) {
+                stopInit.put("departureTimesInfo", stop.getDepartureTimesInfo());
+                stopInit.put("arrivalStopsTimes", stop.getArrivalTimesInfo());
+            }
+            stopInit.put("departureShapeDistances", stop.getDepartureShapeDistances(shapeReferencing));
             stopInit.put("tripShapeMap", stop.getTripShapeMap());
             stopInit.put("name", stop.getStopName());
             stopInit.put("tripNumber", stop.getTripNumber()); 
@@ -61,6 +78,13 @@ public class TransportStopCreator implements GTFSAgentCreator {
             IMap<String, IList<GamaPair<String, String>>> departureTripsInfo =
                     (IMap<String, IList<GamaPair<String, String>>>) agent.getAttribute("departureTripsInfo");
 
+            // Les maps intermédiaires (stop_id) ne restent pas sur l'agent une fois converties
+            agent.setAttribute("departureTripsInfo", null);
+            @SuppressWarnings("unchecked")
+            IMap<String, IList<GamaPair<String, Integer>>> departureTimesInfo =
+                    (IMap<String, IList<GamaPair<String, Integer>>>) agent.getAttribute("departureTimesInfo");
+            agent.setAttribute("departureTimesInfo", null);
+
             if (departureTripsInfo == null || departureTripsInfo.isEmpty()) {
                 continue;
             }
@@ -81,6 +105,26 @@ public class TransportStopCreator implements GTFSAgentCreator {
 
             agent.setAttribute("departureStopsInfo", departureStopsInfo);
 
+            // Même structure avec des heures entières (departureStopsTimes, opt-in), sans conversion côté GAML
+            if (departureTimesInfo == null) {
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            IMap<String, IList<GamaPair<IAgent, Integer>>> departureStopsTimes = GamaMapFactory.create(Types.STRING, Types.LIST);
+
+            for (Map.Entry<String, IList<GamaPair<String, Integer>>> entry : departureTimesInfo.entrySet()) {
+                IList<GamaPair<IAgent, Integer>> convertedStops = GamaListFactory.create(Types.PAIR);
+                for (GamaPair<String, Integer> pair : entry.getValue()) {
+                    IAgent stopAgent = stopIdToAgentMap.get(pair.first());
+                    if (stopAgent != null) {
+                        convertedStops.add(new GamaPair<>(stopAgent, pair.getValue(), Types.AGENT, Types.INT));
+                    }
+                }
+                departureStopsTimes.put(entry.getKey(), convertedStops);
+            }
+
+            agent.setAttribute("departureStopsTimes", departureStopsTimes);
+
             // 🔥 Important : departureShapeDistances n'a pas besoin de conversion, donc on le laisse comme il est
             // (déjà chargé dans addInits)
         }
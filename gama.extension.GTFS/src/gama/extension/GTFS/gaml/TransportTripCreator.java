@@ -9,7 +9,9 @@ import gama.core.metamodel.agent.IAgent;
 import gama.core.metamodel.population.IPopulation;
 import gama.core.runtime.IScope;
 import gama.core.util.IList;
+import gama.extension.GTFS.GTFSLog;
 import gama.extension.GTFS.TransportTrip;
+import gama.extension.GTFS.skills.TransportTripSkill;
 import gama.gaml.statements.CreateStatement;
 import gama.gaml.statements.RemoteSequence;
 
@@ -29,12 +31,16 @@ public class TransportTripCreator implements GTFSAgentCreator {
 
 	    for (int i = 0; i < limit; i++) {
 	        TransportTrip trip = trips.get(i);
-	        System.out.println("[DEBUG] Creating agent for tripId=" + trip.getTripId() + " with shapeId=" + trip.getShapeId());
+	        if (GTFSLog.isEnabled(GTFSLog.Level.DEBUG)) {
+	            GTFSLog.debug("[DEBUG] Creating agent for tripId=" + trip.getTripId() + " with shapeId=" + trip.getShapeId());
+	        }
 	        Map<String, Object> tripInit = new HashMap<>();
 	        tripInit.put("tripId", trip.getTripId());
 	        tripInit.put("routeId", trip.getRouteId());
 	        tripInit.put("shapeId", trip.getShapeId());
 	        tripInit.put("routeType", trip.getRouteType());
+	        // stopDetails (one map per stop_time) built on first access, see TransportTripSkill
+	        tripInit.put(TransportTripSkill.TRIP_HANDLE, trip);
 	        inits.add(tripInit);
 	    }
 	}
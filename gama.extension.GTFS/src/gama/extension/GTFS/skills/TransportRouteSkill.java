@@ -7,15 +7,21 @@ import gama.annotations.precompiler.GamlAnnotations.getter;
 import gama.annotations.precompiler.GamlAnnotations.setter;
 import gama.annotations.precompiler.GamlAnnotations.doc;
 import gama.core.metamodel.agent.IAgent;
+import gama.core.util.IList;
 import gama.gaml.skills.Skill;
 import gama.gaml.types.IType;
 
-@skill(name = "TransportRouteSkill", doc = @doc("Skill for agents that represent transport routes with attributes like routeId, shortName, longName, and type."))
+@skill(name = "TransportRouteSkill", doc = @doc("Skill for agents that represent transport routes with attributes like routeId, shortName, longName, type and color, and the trips, journey patterns, shapes and stops of the route."))
 @vars({
     @variable(name = "routeId", type = IType.STRING, doc = @doc("The ID of the transport route.")),
     @variable(name = "shortName", type = IType.STRING, doc = @doc("The short name of the transport route.")),
     @variable(name = "longName", type = IType.STRING, doc = @doc("The long name of the transport route.")),
-    @variable(name = "type", type = IType.INT, doc = @doc("The type of the transport route (e.g., bus, tram, etc.)."))
+    @variable(name = "type", type = IType.INT, doc = @doc("The type of the transport route (e.g., bus, tram, etc.).")),
+    @variable(name = "color", type = IType.STRING, doc = @doc("The route_color of routes.txt (hexadecimal, without '#'), nil if not given.")),
+    @variable(name = "tripIds", type = IType.LIST, doc = @doc("The trip_ids of the route, in trips.txt order.")),
+    @variable(name = "patterns", type = IType.LIST, doc = @doc("The journey patterns of the route: one list of stop_ids per distinct stop sequence of its trips.")),
+    @variable(name = "shapeIds", type = IType.LIST, doc = @doc("The shape_ids (of the transport_shape agents) used by the trips of the route.")),
+    @variable(name = "stopIds", type = IType.LIST, doc = @doc("The stop_ids served by the route, in order of first visit."))
 })
 public class TransportRouteSkill extends Skill {
 
@@ -58,4 +64,38 @@ public class TransportRouteSkill extends Skill {
     public void setType(final IAgent agent, final int type) {
         agent.setAttribute("type", type);
     }
+
+    @getter("color")
+    public String getColor(final IAgent agent) {
+        return (String) agent.getAttribute("color");
+    }
+
+    @setter("color")
+    public void setColor(final IAgent agent, final String color) {
+        agent.setAttribute("color", color);
+    }
+
+    @SuppressWarnings("unchecked")
+    @getter("tripIds")
+    public IList<String> getTripIds(final IAgent agent) {
+        return (IList<String>) agent.getAttribute("tripIds");
+    }
+
+    @SuppressWarnings("unchecked")
+    @getter("patterns")
+    public IList<IList<String>> getPatterns(final IAgent agent) {
+        return (IList<IList<String>>) agent.getAttribute("patterns");
+    }
+
+    @SuppressWarnings("unchecked")
+    @getter("shapeIds")
+    public IList<String> getShapeIds(final IAgent agent) {
+        return (IList<String>) agent.getAttribute("shapeIds");
+    }
+
+    @SuppressWarnings("unchecked")
+    @getter("stopIds")
+    public IList<String> getStopIds(final IAgent agent) {
+        return (IList<String>) agent.getAttribute("stopIds");
+    }
 }
@@ -12,6 +12,7 @@ import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.linearref.LengthIndexedLine;
 import gama.core.metamodel.agent.IAgent;
+import gama.core.util.IList;
 import gama.gaml.skills.Skill;
 import gama.gaml.types.IType;
 
@@ -23,7 +24,8 @@ import gama.gaml.types.IType;
     @variable(name = "shapeId",  type = IType.STRING, doc = @doc("The ID of the transport shape.")),
     @variable(name = "routeType", type = IType.INT,    doc = @doc("The transport type associated with this shape.")),
     @variable(name = "routeId",   type = IType.STRING, doc = @doc("The route ID associated with this shape.")),
-    @variable(name = "tripId",   type = IType.STRING,  doc = @doc("The trip ID associated with this shape."))
+    @variable(name = "tripId",   type = IType.STRING,  doc = @doc("The trip ID associated with this shape.")),
+    @variable(name = "cumulativeDistances", type = IType.LIST, doc = @doc("Distance of each point of the shape from its first point (float, GAMA CRS)."))
 })
 public class TransportShapeSkill extends Skill {
 
@@ -58,6 +60,11 @@ public class TransportShapeSkill extends Skill {
         agent.setAttribute("tripId", tripId);
     }
 
+    @SuppressWarnings("unchecked")
+    @getter("cumulativeDistances") public IList<Double> getCumulativeDistances(final IAgent agent) {
+        return (IList<Double>) agent.getAttribute("cumulativeDistances");
+    }
+
 
 
 }
\ No newline at end of file
@@ -10,6 +10,7 @@ import gama.core.metamodel.agent.IAgent;
 import gama.core.runtime.IScope;
 import gama.core.util.IMap;
 import gama.core.util.IList;
+import gama.extension.GTFS.GTFSLog;
 import gama.core.util.GamaListFactory;
 import gama.core.util.GamaPair;
 import gama.gaml.skills.Skill;
@@ -25,6 +26,9 @@ import gama.gaml.types.IType;
     @variable(name = "stopName", type = IType.STRING, doc = @doc("The name of the transport stop.")),
     @variable(name = "routeType", type = IType.INT, doc = @doc("The type of transport route associated with the stop.")),
     @variable(name = "departureStopsInfo", type = IType.MAP, doc = @doc("Map where keys are trip IDs and values are lists of GamaPair<IAgent, String> (stop agent and departure time).")),
+    @variable(name = "departureStopsTimes", type = IType.MAP, doc = @doc("Same as departureStopsInfo with integer departure times: lists of GamaPair<IAgent, int> (stop agent and departure time in seconds). Only filled with -Dgtfs.stops.intTimes=true.")),
+    @variable(name = "arrivalStopsTimes", type = IType.MAP, doc = @doc("Map where keys are trip IDs and values are the arrival times in seconds (int) at each stop, in the order of departureStopsTimes. Only filled with -Dgtfs.stops.intTimes=true.")),
+    @variable(name = "departureShapeDistances", type = IType.MAP, doc = @doc("Map where keys are trip IDs and values are the distances along the shape (float) at each stop, in the order of departureStopsTimes: shape_dist_traveled (unit of the feed) when stop_times.txt gives it, otherwise the position of the stop projected on the trip shape (GAMA CRS) if the shapes are already loaded (transport_shape agents created first) or with -Dgtfs.stops.shapeDistances=true; such trips are left out otherwise.")),
     @variable(name = "tripShapeMap", type = IType.MAP, doc = @doc("Map where keys are trip IDs and values are shape IDs.")),
     @variable(name = "tripNumber", type = IType.INT, doc = @doc("Number of trips starting from this stop."))
 })
@@ -55,6 +59,27 @@ public class TransportStopSkill extends Skill {
         return (IMap<String, IList<GamaPair<IAgent, String>>>) agent.getAttribute("departureStopsInfo");
     }
     
+    // Getter for departureStopsTimes
+    @SuppressWarnings("unchecked")
+    @getter("departureStopsTimes")
+    public IMap<String, IList<GamaPair<IAgent, Integer>>> getDepartureStopsTimes(final IAgent agent) {
+        return (IMap<String, IList<GamaPair<IAgent, Integer>>>) agent.getAttribute("departureStopsTimes");
+    }
+
+    // Getter for arrivalStopsTimes
+    @SuppressWarnings("unchecked")
+    @getter("arrivalStopsTimes")
+    public IMap<String, IList<Integer>> getArrivalStopsTimes(final IAgent agent) {
+        return (IMap<String, IList<Integer>>) agent.getAttribute("arrivalStopsTimes");
+    }
+
+    // Getter for departureShapeDistances
+    @SuppressWarnings("unchecked")
+    @getter("departureShapeDistances")
+    public IMap<String, IList<Double>> getDepartureShapeDistances(final IAgent agent) {
+        return (IMap<String, IList<Double>>) agent.getAttribute("departureShapeDistances");
+    }
+
     @getter("tripNumber")
     public int getTripNumber(final IAgent agent) {
         return (int) agent.getAttribute("tripNumber");
@@ -84,7 +109,7 @@ public class TransportStopSkill extends Skill {
     public IList<IAgent> getAgentsForTrip(final IAgent agent, final String tripId) {
         IMap<String, IList<GamaPair<IAgent, String>>> departureStopsInfo = getDepartureStopsInfo(agent);
         if (departureStopsInfo == null || !departureStopsInfo.containsKey(tripId)) {
-            System.err.println("[ERROR] No trip info found for tripId=" + tripId + " at stopId=" + getStopId(agent));
+            GTFSLog.error("[ERROR] No trip info found for tripId=" + tripId + " at stopId=" + getStopId(agent));
             return GamaListFactory.create();
         }
         IList<GamaPair<IAgent, String>> stopPairs = departureStopsInfo.get(tripId);
@@ -8,6 +8,9 @@ import gama.annotations.precompiler.GamlAnnotations.setter;
 import gama.annotations.precompiler.GamlAnnotations.doc;
 import gama.gaml.skills.Skill;
 import gama.core.metamodel.agent.IAgent;
+import gama.core.util.IList;
+import gama.core.util.IMap;
+import gama.extension.GTFS.TransportTrip;
 import gama.gaml.types.IType;
 
 /**
@@ -19,10 +22,14 @@ import gama.gaml.types.IType;
     @variable(name = "tripId", type = IType.INT, doc = @doc("The unique identifier of the transport trip.")),
     @variable(name = "routeId", type = IType.STRING, doc = @doc("The unique identifier of the route associated with the trip.")),
     @variable(name = "routeType", type = IType.INT, doc = @doc("The type of transport associated with this trip (bus, tram, metro, etc.).")),
-    @variable(name = "shapeId", type = IType.INT, doc = @doc("The unique indentifier of shape"))
+    @variable(name = "shapeId", type = IType.INT, doc = @doc("The unique indentifier of shape")),
+    @variable(name = "stopDetails", type = IType.LIST, doc = @doc("Stops of the trip in stop_sequence order, as maps with stopId, arrivalTime, departureTime and shapeDistTraveled. Built on first access."))
 })
 public class TransportTripSkill extends Skill {
 
+    /** Attribute holding the TransportTrip of an agent whose stopDetails are not built yet. */
+    public static final String TRIP_HANDLE = "gtfsTrip";
+
     // Getter and setter for tripId
     @getter("tripId")
     public int getTripId(final IAgent agent) {
@@ -66,4 +73,18 @@ public class TransportTripSkill extends Skill {
     public void setRouteType(final IAgent agent, final int routeType) {
         agent.setAttribute("routeType", routeType);
     }
+
+    // Getter for stopDetails
+    @SuppressWarnings("unchecked")
+    @getter("stopDetails")
+    public IList<IMap<String, Object>> getStopDetails(final IAgent agent) {
+        IList<IMap<String, Object>> stopDetails = (IList<IMap<String, Object>>) agent.getAttribute("stopDetails");
+        if (stopDetails == null && agent.getAttribute(TRIP_HANDLE) instanceof TransportTrip trip) {
+            // Première utilisation : une map par stop_time, construite depuis le feed
+            stopDetails = trip.getStopDetails();
+            agent.setAttribute("stopDetails", stopDetails);
+            agent.setAttribute(TRIP_HANDLE, null);
+        }
+        return stopDetails;
+    }
 }
@@ -11,6 +11,8 @@ import com.opencsv.CSVParserBuilder;
 import com.opencsv.CSVReaderBuilder;
 import com.opencsv.exceptions.CsvValidationException;
 
+import gama.extension.GTFS.GTFSSource;
+
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
@@ -19,8 +21,11 @@ import org.locationtech.jts.linearref.LengthIndexedLine;
 
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class GTFSFilter {
 	
@@ -36,29 +41,45 @@ public class GTFSFilter {
         "calendar_dates.txt"
     );
 
+    /**
+     * Filtre un GTFS sur l'emprise d'un fichier OSM.
+     *
+     * @param gtfsDirPath Répertoire GTFS ou archive .zip (lue sans extraction)
+     */
     public static void filter(String gtfsDirPath, String osmFilePath, String outputDirPath) throws Exception {
-        System.out.println("🔄 Début du filtrage GTFS...");
-
-        Envelope env = OSMUtils.extractEnvelope(osmFilePath);
-        System.out.println("✅ Enveloppe OSM extraite: " + env.toString());
-
-        File gtfsDir = new File(gtfsDirPath);
-        if (!gtfsDir.isDirectory()) {
-            throw new IllegalArgumentException("Répertoire GTFS invalide: " + gtfsDirPath);
+        GTFSSource source;
+        try {
+            source = GTFSSource.open(new File(gtfsDirPath));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Répertoire ou archive GTFS invalide: " + gtfsDirPath, e);
         }
-
-        File outDir = new File(outputDirPath);
-        if (!outDir.exists()) {
-            outDir.mkdirs();
-            System.out.println("📁 Répertoire de sortie créé: " + outputDirPath);
+        try (source) {
+            checkRequiredFiles(source);
+
+            // shapes.txt source ne dépend d'aucun autre fichier : lecture en parallèle du filtrage
+            CompletableFuture<Map<String, List<Coordinate>>> sourceShapesTask = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return readSourceShapes(source);
+                } catch (IOException | CsvValidationException e) {
+                    throw new CompletionException(e);
+                }
+            }, task -> Thread.ofVirtual().name("gtfs-filter-shapes").start(task));
+            try {
+                filter(source, sourceShapesTask, osmFilePath, outputDirPath);
+            } finally {
+                // La source est fermée ensuite : la lecture de shapes.txt doit être terminée, même si le
+                // filtrage a échoué avant d'en avoir besoin (l'erreur du filtrage est alors celle remontée)
+                sourceShapesTask.handle((shapes, e) -> null).join();
+            }
         }
+    }
 
-        // Vérification des fichiers GTFS requis
+    /** Vérification des fichiers GTFS requis (agency.txt peut être généré). */
+    private static void checkRequiredFiles(GTFSSource source) {
         List<String> missingFiles = new ArrayList<>();
         for (String requiredFile : REQUIRED_FILES) {
             if (!requiredFile.equals("agency.txt")) { // agency.txt peut être généré
-                File file = new File(gtfsDir, requiredFile);
-                if (!file.exists()) {
+                if (!source.has(requiredFile)) {
                     missingFiles.add(requiredFile);
                 }
             }
@@ -67,14 +88,28 @@ public class GTFSFilter {
             throw new IllegalArgumentException("Fichiers GTFS manquants: " + String.join(", ", missingFiles));
         }
         System.out.println("✅ Fichiers GTFS requis vérifiés");
+    }
+
+    private static void filter(GTFSSource source, CompletableFuture<Map<String, List<Coordinate>>> sourceShapesTask,
+            String osmFilePath, String outputDirPath) throws Exception {
+        System.out.println("🔄 Début du filtrage GTFS...");
+
+        Envelope env = OSMUtils.extractEnvelope(osmFilePath);
+        System.out.println("✅ Enveloppe OSM extraite: " + env.toString());
+
+        File outDir = new File(outputDirPath);
+        if (!outDir.exists()) {
+            outDir.mkdirs();
+            System.out.println("📁 Répertoire de sortie créé: " + outputDirPath);
+        }
 
         // --- agency.txt ---
-        handleAgencyFile(gtfsDir, outDir, osmFilePath);
+        handleAgencyFile(source, outDir, osmFilePath);
 
         // --- stops.txt ---
         Set<String> keptStopIds = new HashSet<>();
         System.out.println("🔄 Filtrage des arrêts (stops.txt)...");
-        filterAndWriteFile("stops.txt", gtfsDir, outDir, (header, row) -> {
+        filterAndWriteFile("stops.txt", source, outDir, (header, row) -> {
             int idxLat = header.getOrDefault("stop_lat", -1);
             int idxLon = header.getOrDefault("stop_lon", -1);
             int idxStopId = header.getOrDefault("stop_id", -1);
@@ -95,13 +130,13 @@ public class GTFSFilter {
 
      // --- stop_times.txt (TRI + RÉINDEX PAR TRIP) ---
         System.out.println("🔄 Filtrage/tri/réindex des horaires (stop_times.txt)...");
-        StopTimesResult stRes = filterSortRenumberStopTimes(gtfsDir, outDir, keptStopIds);
+        StopTimesResult stRes = filterSortRenumberStopTimes(source, outDir, keptStopIds);
         Set<String> keptTripIds = stRes.tripIds;                    // trips encore valides (>= 2 stops)
         Set<String> usedStopsAfter = stRes.stopIds;                 // stops réellement utilisés après réindex
         System.out.println("✅ stop_times.txt écrit. Trips gardés: " + keptTripIds.size());
         
      // ✅ Overwrite stops.txt to keep only stops that are still referenced after reindex
-        filterAndWriteFile("stops.txt", gtfsDir, outDir, (header, row) -> {
+        filterAndWriteFile("stops.txt", source, outDir, (header, row) -> {
             int idxStop = header.getOrDefault("stop_id", -1);
             if (idxStop < 0 || row.length <= idxStop) return false;
             return usedStopsAfter.contains(row[idxStop]);
@@ -113,7 +148,7 @@ public class GTFSFilter {
         Set<String> routesToKeep = new HashSet<>();
         Set<String> shapesToKeep = new HashSet<>();
         System.out.println("🔄 Filtrage des voyages (trips.txt)...");
-        filterAndWriteFile("trips.txt", gtfsDir, outDir, (header, row) -> {
+        filterAndWriteFile("trips.txt", source, outDir, (header, row) -> {
             int idxTripId = header.getOrDefault("trip_id", -1);
             int idxRouteId = header.getOrDefault("route_id", -1);
             int idxShapeId = header.getOrDefault("shape_id", -1);
@@ -132,7 +167,7 @@ public class GTFSFilter {
 
         // --- routes.txt ---
         System.out.println("🔄 Filtrage des routes (routes.txt)...");
-        filterAndWriteFile("routes.txt", gtfsDir, outDir, (header, row) -> {
+        filterAndWriteFile("routes.txt", source, outDir, (header, row) -> {
             int idxRouteId = header.getOrDefault("route_id", -1);
             if (row.length <= idxRouteId || idxRouteId < 0) return false;
             return routesToKeep.contains(row[idxRouteId]);
@@ -140,7 +175,6 @@ public class GTFSFilter {
 
        
      // --- shapes.txt : sous-shape par trip (clippée bbox) ---
-        File shapesSrc = new File(gtfsDir, "shapes.txt");
         GeometryFactory GF = new GeometryFactory();
 
         // 0) Index utilitaires à construire
@@ -235,52 +269,11 @@ public class GTFSFilter {
         }
 
         // 0.4 byShape: shape_id -> liste ordonnée de Coordinates (x=lon,y=lat) depuis shapes.txt source (si existe)
-        Map<String, List<Coordinate>> byShape = new HashMap<>();
-        if (shapesSrc.exists()) {
-            char sep = detectSeparator(shapesSrc);
-            try (CSVReader r = new CSVReaderBuilder(new FileReader(shapesSrc))
-                    .withCSVParser(new CSVParserBuilder().withSeparator(sep).build()).build()) {
-                String[] h = r.readNext();
-                if (h != null) {
-                    Map<String,Integer> idx = parseHeader(h);
-                    int iId  = idx.getOrDefault("shape_id", -1);
-                    int iLat = idx.getOrDefault("shape_pt_lat", -1);
-                    int iLon = idx.getOrDefault("shape_pt_lon", -1);
-                    int iSeq = idx.getOrDefault("shape_pt_sequence", -1);
-                    Map<String, List<String[]>> tmp = new HashMap<>();
-                    String[] row;
-                    while ((row = r.readNext()) != null) {
-                        if (iId<0 || iLat<0 || iLon<0) continue;
-                        String sid = row[iId];
-                        tmp.computeIfAbsent(sid, k -> new ArrayList<>()).add(row);
-                    }
-                    for (Map.Entry<String,List<String[]>> e : tmp.entrySet()) {
-                        List<String[]> rows = e.getValue();
-                        if (iSeq >= 0) {
-                            rows.sort((a,b) -> {
-                                try {
-                                    int sa = Integer.parseInt(a[iSeq].trim());
-                                    int sb = Integer.parseInt(b[iSeq].trim());
-                                    return Integer.compare(sa, sb);
-                                } catch (Exception ex) { return 0; }
-                            });
-                        }
-                        List<Coordinate> coords = new ArrayList<>();
-                        for (String[] rr : rows) {
-                            try {
-                                double lat = Double.parseDouble(rr[iLat]);
-                                double lon = Double.parseDouble(rr[iLon]);
-                                coords.add(new Coordinate(lon, lat));
-                            } catch (NumberFormatException ex) {
-                                System.err.println("Erreur parsing lat/lon pour shape " + e.getKey() + ": " + ex.getMessage());
-                            } catch (Exception ex) {
-                                System.err.println("Erreur inattendue shape " + e.getKey() + ": " + ex.getMessage());
-                            }
-                        }
-                        if (coords.size() >= 2) byShape.put(e.getKey(), coords);
-                    }
-                }
-            }
+        Map<String, List<Coordinate>> byShape;
+        try {
+            byShape = sourceShapesTask.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
         }
 
      // 1) Écrire la nouvelle shapes.txt (tous les tronçons internes à la bbox, ordonnés)
@@ -410,10 +403,11 @@ public class GTFSFilter {
         System.out.println("🔄 Copie des fichiers optionnels...");
         int optionalFilesCopied = 0;
         for (String filename : OPTIONAL_FILES) {
-            File src = new File(gtfsDir, filename);
-            if (src.exists()) {
-                Files.copy(src.toPath(), new File(outDir, filename).toPath(),
-                          java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+            if (source.has(filename)) {
+                try (InputStream in = source.open(filename)) {
+                    Files.copy(in, new File(outDir, filename).toPath(),
+                              java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                }
                 optionalFilesCopied++;
                 System.out.println("✅ " + filename + " copié");
             }
@@ -621,17 +615,69 @@ public class GTFSFilter {
     }
 
 
-    private static void handleAgencyFile(File gtfsDir, File outDir, String osmFilePath) throws IOException {
-        File agencySrc = new File(gtfsDir, "agency.txt");
+    /** shape_id -> liste ordonnée de Coordinates (x=lon,y=lat) depuis shapes.txt source (vide si absent). */
+    private static Map<String, List<Coordinate>> readSourceShapes(GTFSSource source) throws IOException, CsvValidationException {
+        Map<String, List<Coordinate>> byShape = new HashMap<>();
+        if (source.has("shapes.txt")) {
+            char sep = detectSeparator(source, "shapes.txt");
+            try (CSVReader r = new CSVReaderBuilder(openReader(source, "shapes.txt"))
+                    .withCSVParser(new CSVParserBuilder().withSeparator(sep).build()).build()) {
+                String[] h = r.readNext();
+                if (h != null) {
+                    Map<String,Integer> idx = parseHeader(h);
+                    int iId  = idx.getOrDefault("shape_id", -1);
+                    int iLat = idx.getOrDefault("shape_pt_lat", -1);
+                    int iLon = idx.getOrDefault("shape_pt_lon", -1);
+                    int iSeq = idx.getOrDefault("shape_pt_sequence", -1);
+                    Map<String, List<String[]>> tmp = new HashMap<>();
+                    String[] row;
+                    while ((row = r.readNext()) != null) {
+                        if (iId<0 || iLat<0 || iLon<0) continue;
+                        String sid = row[iId];
+                        tmp.computeIfAbsent(sid, k -> new ArrayList<>()).add(row);
+                    }
+                    for (Map.Entry<String,List<String[]>> e : tmp.entrySet()) {
+                        List<String[]> rows = e.getValue();
+                        if (iSeq >= 0) {
+                            rows.sort((a,b) -> {
+                                try {
+                                    int sa = Integer.parseInt(a[iSeq].trim());
+                                    int sb = Integer.parseInt(b[iSeq].trim());
+                                    return Integer.compare(sa, sb);
+                                } catch (Exception ex) { return 0; }
+                            });
+                        }
+                        List<Coordinate> coords = new ArrayList<>();
+                        for (String[] rr : rows) {
+                            try {
+                                double lat = Double.parseDouble(rr[iLat]);
+                                double lon = Double.parseDouble(rr[iLon]);
+                                coords.add(new Coordinate(lon, lat));
+                            } catch (NumberFormatException ex) {
+                                System.err.println("Erreur parsing lat/lon pour shape " + e.getKey() + ": " + ex.getMessage());
+                            } catch (Exception ex) {
+                                System.err.println("Erreur inattendue shape " + e.getKey() + ": " + ex.getMessage());
+                            }
+                        }
+                        if (coords.size() >= 2) byShape.put(e.getKey(), coords);
+                    }
+                }
+            }
+        }
+        return byShape;
+    }
+
+    private static void handleAgencyFile(GTFSSource source, File outDir, String osmFilePath) throws IOException {
         File agencyDest = new File(outDir, "agency.txt");
 
-        if (agencySrc.exists() && agencySrc.length() > 0) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(agencySrc))) {
+        if (source.has("agency.txt")) {
+            try (BufferedReader reader = openReader(source, "agency.txt")) {
                 String header = reader.readLine();
                 String firstLine = reader.readLine();
                 if (header != null && firstLine != null && !firstLine.trim().isEmpty()) {
-                    Files.copy(agencySrc.toPath(), agencyDest.toPath(),
-                              java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                    try (InputStream in = source.open("agency.txt")) {
+                        Files.copy(in, agencyDest.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                    }
                     System.out.println("✅ agency.txt copié depuis la source");
                     return;
                 }
@@ -847,20 +893,36 @@ public class GTFSFilter {
         }
     }
 
-    private static void filterAndWriteFile(String filename, File inDir, File outDir, RowPredicate keepRow)
+    private static char detectSeparator(GTFSSource source, String filename) throws IOException {
+        try (BufferedReader r = openReader(source, filename)) {
+            String line = r.readLine();
+            if (line == null) return ',';
+            if (line.contains(";")) return ';';
+            if (line.contains("\t")) return '\t';
+            return ',';
+        }
+    }
+
+    /** Ouvre une table du GTFS source (fichier du répertoire ou entrée de l'archive). */
+    private static BufferedReader openReader(GTFSSource source, String filename) throws IOException {
+        InputStream in = source.open(filename);
+        if (in == null) throw new FileNotFoundException(filename + " manquant");
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    private static void filterAndWriteFile(String filename, GTFSSource source, File outDir, RowPredicate keepRow)
             throws IOException, CsvValidationException {
-        File inFile = new File(inDir, filename);
-        if (!inFile.exists()) {
+        if (!source.has(filename)) {
             System.err.println("⚠️ Fichier source manquant: " + filename);
             return;
         }
 
-        char sep = detectSeparator(inFile);
+        char sep = detectSeparator(source, filename);
         int totalRows = 0;
         int keptRows = 0;
 
         try (
-            Reader reader = new BufferedReader(new FileReader(inFile));
+            Reader reader = openReader(source, filename);
             CSVReader csvReader = new CSVReaderBuilder(reader)
                 .withCSVParser(new CSVParserBuilder().withSeparator(sep).build()).build();
             BufferedWriter writer = Files.newBufferedWriter(new File(outDir, filename).toPath())
@@ -900,11 +962,10 @@ public class GTFSFilter {
         return m;
     }
     
-    private static StopTimesResult filterSortRenumberStopTimes(File gtfsDir, File outDir, Set<String> keptStopIds) throws Exception {
+    private static StopTimesResult filterSortRenumberStopTimes(GTFSSource source, File outDir, Set<String> keptStopIds) throws Exception {
         StopTimesResult res = new StopTimesResult();
-        File inFile = new File(gtfsDir, "stop_times.txt");
-        if (!inFile.exists()) throw new FileNotFoundException("stop_times.txt manquant");
-        char sep = detectSeparator(inFile);
+        if (!source.has("stop_times.txt")) throw new FileNotFoundException("stop_times.txt manquant");
+        char sep = detectSeparator(source, "stop_times.txt");
 
         // lecture
         Map<String, Integer> idx;
@@ -913,7 +974,7 @@ public class GTFSFilter {
           // On lit le header pour déterminer les index des colonnes
         String[] headerRow = null;
         
-        try (CSVReader r = new CSVReaderBuilder(new FileReader(inFile))
+        try (CSVReader r = new CSVReaderBuilder(openReader(source, "stop_times.txt"))
                 .withCSVParser(new CSVParserBuilder().withSeparator(sep).build()).build()) {
         	headerRow = r.readNext();
         	if (headerRow == null) throw new IOException("stop_times.txt vide");